@@ -0,0 +1,20 @@
+package cz.cuni.mff.d3s.buben.examples.device;
+
+public class Client
+{
+	public static void main(String[] args)
+	{
+		Device dev = new Device();
+
+		dev.enable('a');
+
+		dev.raiseLevel();
+		byte lvl = dev.raiseLevel();
+
+		System.out.println("enabled = " + dev.isEnabled() + ", mode = " + dev.getMode() + ", level = " + lvl);
+
+		dev.disable();
+
+		System.out.println("enabled = " + dev.isEnabled() + ", counter = " + dev.getCounter());
+	}
+}
@@ -0,0 +1,53 @@
+package cz.cuni.mff.d3s.buben.examples.device;
+
+public class Device
+{
+	private boolean enabled;
+	private char mode;
+	private byte level;
+	private short counter;
+
+	public Device()
+	{
+		enabled = false;
+		mode = 'o';
+		level = 0;
+		counter = 0;
+	}
+
+	public void enable(char m)
+	{
+		enabled = true;
+		mode = m;
+	}
+
+	public void disable()
+	{
+		enabled = false;
+		mode = 'o';
+	}
+
+	public byte raiseLevel()
+	{
+		if (level < 100) level++;
+
+		counter++;
+
+		return level;
+	}
+
+	public short getCounter()
+	{
+		return counter;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public char getMode()
+	{
+		return mode;
+	}
+}
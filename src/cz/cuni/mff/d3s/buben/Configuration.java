@@ -18,6 +18,12 @@ package cz.cuni.mff.d3s.buben;
 import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
+import cz.cuni.mff.d3s.buben.common.PrefixMatcher;
 
 
 public class Configuration
@@ -30,6 +36,18 @@ public class Configuration
 	// directory that contains Java classes in a binary format (compiled)
 	public static String targetClassPath;
 
+	// directory where transformed class files are saved (it must precede the original class path when the abstract program is executed)
+	// the value null means that original class files are overwritten
+	public static String transformOutputPath;
+
+	// directory where call graphs computed by static analysis are saved, so that later runs with the same input program can load them
+	// the value null means that the call graph is always built from scratch
+	public static String callGraphCachePath;
+
+	// algorithm used to construct the call graph: "cha", "rta", "0cfa", "01cfa", or "01containercfa"
+	// cheaper algorithms (CHA, RTA) need much less memory for large libraries, but the call graph is less precise
+	public static String callGraphAlgorithm;
+
 	// command-line arguments for the "main" method
 	public static List<String> runtimeCmdArgs;
 
@@ -51,6 +69,12 @@ public class Configuration
 	// it should be a sublist of "extaccessMethodPrefixes" (it is user's responsibility to specify both lists correctly)
 	public static List<String> extaccessClassPrefixes;
 	
+	// prefix lists compiled into tries when the configuration is loaded
+	public static PrefixMatcher libraryMethodMatcher;
+	public static PrefixMatcher applicationClassMatcher;
+	public static PrefixMatcher extaccessMethodMatcher;
+	public static PrefixMatcher extaccessClassMatcher;
+
 	// classes that represent unit tests for the application (extend particular superclass or properly annotated, can be executed using the JUnit API)
 	public static List<String> testClassNames;
 
@@ -60,62 +84,130 @@ public class Configuration
 	// maximal allowed number of possible return values from a library method
 	public static int maxReturnValues;
 	
+	// number of worker threads used for static analysis (symbolic interpretation of library methods, computation of summaries)
+	// the value 1 means sequential processing
+	public static int analysisThreads;
+
+	// number of worker threads that transform class files of the input program
+	// the value 1 means sequential processing
+	public static int transformThreads;
+
+	// technique used by the dynamic analysis that records inputs and outputs of intercepted methods
+	// the value "jdi" means breakpoints and watchpoints, the value "agent" means bytecode instrumentation inside the running program
+	public static String recorderMode;
+
+	// jar file with the recording agent (used only when the recorder mode is "agent")
+	public static String agentJarPath;
+
+	// number of target programs (JVMs) that are executed and recorded concurrently
+	// the value 1 means that all driver classes and unit tests are recorded one after another using the default port
+	public static int recordingSessions;
+	
 	public static String JDI_PORT = "45123";
+
+	// limits for attaching JDI to a starting target JVM (exponential back-off between attempts)
+	public static long JDI_ATTACH_INITIAL_DELAY_MS = 10;
+	public static long JDI_ATTACH_MAX_DELAY_MS = 500;
+	public static long JDI_ATTACH_TIMEOUT_MS = 60000;
+
+	// how many times a recording session starts the target JVM with a new port when the previous one could not be used
+	public static int JDI_PORT_ATTEMPTS = 3;
+
+	// how long we wait for the target JVM to terminate before we kill it
+	public static long PROCESS_EXIT_TIMEOUT_MS = 10000;
 	
 	public static String VERIFY_CLASS = "gov.nasa.jpf.vm.Verify";
 
 	public static int DEFAULT_MAX_RETURN_VALUES = 256;
 
+	public static int DEFAULT_ANALYSIS_THREADS = 1;
+
+	public static int DEFAULT_TRANSFORM_THREADS = 1;
+
+	public static String DEFAULT_CALL_GRAPH_ALGORITHM = "0cfa";
+
+	public static String DEFAULT_RECORDER_MODE = "jdi";
+
+	public static String DEFAULT_AGENT_JAR_PATH = "build/buben-agent.jar";
+
+	public static int DEFAULT_RECORDING_SESSIONS = 1;
+
 	// set of native methods that cannot be abstracted in any way
 	public static Set<String> nativeMethodsToIgnore;
 
+	// memoized results of classification for class names (queried repeatedly by JDI event handlers and summaries)
+	private static Map<String, Boolean> clsName2ExtAccess;
+	private static Map<String, Boolean> clsName2Library;
+
 
 	static
 	{
 		nativeMethodsToIgnore = new HashSet<String>();
 
+		// classification of class names may be queried by multiple threads
+		clsName2ExtAccess = new ConcurrentHashMap<String, Boolean>();
+		clsName2Library = new ConcurrentHashMap<String, Boolean>();
+
 		prepareListOfIgnoredNativeMethods();
 	}
 
 	
+	// classification of each method signature is computed only once and cached in the signature table
+
 	public static boolean isLibraryMethod(String methodSig)
 	{
-		if (Utils.isMethodSignatureWithPrefix(methodSig, libraryMethodPrefixes)) return true;
-		
-		return false;	
+		return SignatureTable.isLibraryMethod(SignatureTable.getID(methodSig));
 	}
 	
 	public static boolean isApplicationMethod(String methodSig)
 	{
-		boolean isAppCls = false;
-		
-		if (Utils.isMethodSignatureWithPrefix(methodSig, applicationClassPrefixes)) isAppCls = true;
-
-		if (isAppCls)
-		{
-			return ( ! isLibraryMethod(methodSig) );
-		}
-		
-		return false;	
+		return SignatureTable.isApplicationMethod(SignatureTable.getID(methodSig));
 	}
 	
+	public static void compilePrefixMatchers()
+	{
+		libraryMethodMatcher = new PrefixMatcher(libraryMethodPrefixes);
+		applicationClassMatcher = new PrefixMatcher(applicationClassPrefixes);
+		extaccessMethodMatcher = new PrefixMatcher(extaccessMethodPrefixes);
+		extaccessClassMatcher = new PrefixMatcher(extaccessClassPrefixes);
+
+		clsName2ExtAccess.clear();
+		clsName2Library.clear();
+	}
+
 	public static boolean isExternalAccessClass(String className)
 	{
-		return Utils.isClassNameWithPrefix(className, extaccessClassPrefixes);
+		Boolean res = clsName2ExtAccess.get(className);
+
+		if (res == null)
+		{
+			res = Boolean.valueOf(extaccessClassMatcher.matches(className));
+
+			clsName2ExtAccess.put(className, res);
+		}
+
+		return res.booleanValue();
 	}
 	
 	public static boolean isExternalAccessMethod(String methodSig)
 	{
-		if (Utils.isMethodSignatureWithPrefix(methodSig, extaccessMethodPrefixes)) return true;
-		
-		return false;	
+		return SignatureTable.isExternalAccessMethod(SignatureTable.getID(methodSig));
 	}
 
 	public static boolean isLibraryClass(String className)
 	{
-		boolean isAppCls = Utils.isClassNameWithPrefix(className, applicationClassPrefixes);
+		Boolean res = clsName2Library.get(className);
+
+		if (res == null)
+		{
+			boolean isAppCls = applicationClassMatcher.matches(className);
+
+			res = Boolean.valueOf( ! isAppCls );
+
+			clsName2Library.put(className, res);
+		}
 		
-		return ( ! isAppCls );
+		return res.booleanValue();
 	}
 
 	public static boolean isLibraryInnerClassName(String typeName)
@@ -25,6 +25,15 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Date;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sun.jdi.VirtualMachine;
+
+import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 
@@ -37,12 +46,18 @@ import cz.cuni.mff.d3s.buben.analysis.SynchronizedAccessAnalysis;
 import cz.cuni.mff.d3s.buben.analysis.SymbolicMethodLocationsCollector;
 import cz.cuni.mff.d3s.buben.analysis.SymbolicNewObjectsCollector;
 import cz.cuni.mff.d3s.buben.analysis.SymbolicNewArraysCollector;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.MultiplexExecutionVisitor;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.SymbolicByteCodeInterpreter;
 import cz.cuni.mff.d3s.buben.summaries.SideEffectSummaryGenAnalysis;
 import cz.cuni.mff.d3s.buben.dynamic.DynamicInputOutputCollector;
+import cz.cuni.mff.d3s.buben.dynamic.RecordedData;
 import cz.cuni.mff.d3s.buben.transform.LibraryMethodAbstractionGenerator;
 import cz.cuni.mff.d3s.buben.transform.NativeExternAbstractionGenerator;
 import cz.cuni.mff.d3s.buben.transform.ObjectTypesData;
+import cz.cuni.mff.d3s.buben.transform.ClassTransformationWorkers;
 import cz.cuni.mff.d3s.buben.wala.WALAUtils;
+import cz.cuni.mff.d3s.buben.wala.ProgramPointTable;
 import cz.cuni.mff.d3s.buben.jdi.JDIUtils;
 import cz.cuni.mff.d3s.buben.jpf.NativePeerGenerator;
 
@@ -146,6 +161,9 @@ public class Main
 		}
 		
 		Date finishRecording = new Date();
+
+		// canonical expressions of a finished stage are not kept alive by the factory
+		ExpressionFactory.startNewGeneration();
 		
 		System.out.println("[INFO] recording: time = " + printTimeDiff(startRecording, finishRecording) + " s");
 		System.out.println("");
@@ -171,6 +189,12 @@ public class Main
 		}
 		
 		Date finishSummaries = new Date();
+
+		// canonical expressions of a finished stage are not kept alive by the factory
+		ExpressionFactory.startNewGeneration();
+
+		// the symbolic interpreter is not used by later stages
+		ProgramPointTable.clear();
 		
 		long memorySummaries = (Runtime.getRuntime().totalMemory() >> 20);
   		
@@ -210,11 +234,13 @@ public class Main
 				if (prefixFound) mthIt.remove();
 			}
 
+			ClassTransformationWorkers.prepareOutputDirectory();
+
 			transformInputProgram(staCtx, nativeMethodsToReplace);
 
 			if (toolNativesUnsuppFileName != null)
 			{
-				createNativePeersForJPF(toolNativesUnsuppFileName, toolProfileDir);
+				createNativePeersForJPF(staCtx, toolNativesUnsuppFileName, toolProfileDir);
 			}
 		}
 		catch (Exception ex)
@@ -228,7 +254,9 @@ public class Main
 		
 		long memoryTransformation = (Runtime.getRuntime().totalMemory() >> 20);
   		
-		System.out.println("[INFO] transformation: time = " + printTimeDiff(startTransformation, finishTransformation) + " s, memory = " + memoryTransformation + " MB");
+		ClassTransformationWorkers.printStatistics();
+
+		System.out.println("[INFO] transformation: threads = " + Configuration.transformThreads + ", time = " + printTimeDiff(startTransformation, finishTransformation) + " s, memory = " + memoryTransformation + " MB");
 		System.out.println("");
 	}
 	
@@ -247,6 +275,12 @@ public class Main
 
 		// default can be overriden
 		Configuration.maxReturnValues = Configuration.DEFAULT_MAX_RETURN_VALUES;
+		Configuration.analysisThreads = Configuration.DEFAULT_ANALYSIS_THREADS;
+		Configuration.transformThreads = Configuration.DEFAULT_TRANSFORM_THREADS;
+		Configuration.callGraphAlgorithm = Configuration.DEFAULT_CALL_GRAPH_ALGORITHM;
+		Configuration.recorderMode = Configuration.DEFAULT_RECORDER_MODE;
+		Configuration.agentJarPath = Configuration.DEFAULT_AGENT_JAR_PATH;
+		Configuration.recordingSessions = Configuration.DEFAULT_RECORDING_SESSIONS;
 				
 		// process individual configuration entries (variables)
 		
@@ -264,6 +298,24 @@ public class Main
 				Configuration.targetClassPath = cfgLine.substring(10);
 			}
 		
+			if (cfgLine.startsWith("outputdir="))
+			{
+				// overlay directory for transformed classes (the original class path is left untouched)
+				Configuration.transformOutputPath = cfgLine.substring(10);
+			}
+
+			if (cfgLine.startsWith("callgraph="))
+			{
+				// algorithm for construction of the call graph ("cha", "rta", "0cfa", "01cfa", "01containercfa")
+				Configuration.callGraphAlgorithm = cfgLine.substring(10);
+			}
+
+			if (cfgLine.startsWith("cgcachedir="))
+			{
+				// call graphs are reused across runs until the class files, exclusions, or main class change
+				Configuration.callGraphCachePath = cfgLine.substring(11);
+			}
+
 			if (cfgLine.startsWith("runtimeargs="))
 			{
 				// extract strings that represent command-line arguments of the "main" method and put them into the list
@@ -323,7 +375,42 @@ public class Main
 				// extract custom bound for the number of possible return values from a library method
 				Configuration.maxReturnValues = Integer.parseInt(cfgLine.substring(14));
 			}
+
+			if (cfgLine.startsWith("analysisthreads="))
+			{
+				// number of worker threads for the symbolic interpretation of library methods and for the computation of summaries
+				Configuration.analysisThreads = Integer.parseInt(cfgLine.substring(16));
+			}
+
+			if (cfgLine.startsWith("transformthreads="))
+			{
+				// number of worker threads that read, transform, and write class files
+				Configuration.transformThreads = Integer.parseInt(cfgLine.substring(17));
+			}
+
+			if (cfgLine.startsWith("recorder="))
+			{
+				// technique used for recording of inputs and outputs ("jdi" or "agent")
+				Configuration.recorderMode = cfgLine.substring(9);
+			}
+
+			if (cfgLine.startsWith("agentjar="))
+			{
+				Configuration.agentJarPath = cfgLine.substring(9);
+			}
+
+			if (cfgLine.startsWith("recordingsessions="))
+			{
+				// number of driver classes and unit tests that are executed and recorded at the same time
+				Configuration.recordingSessions = Integer.parseInt(cfgLine.substring(18));
+			}
 		}
+
+		// prefix lists do not change anymore
+		Configuration.compilePrefixMatchers();
+
+		// the overlay directory must be separate from the class path
+		ClassTransformationWorkers.checkOutputDirectory();
 	}
 	
 	
@@ -387,6 +474,9 @@ public class Main
 		}
 
 		SymbolicMethodLocationsCollector.analyzeProgram(staCtx);
+
+		// watch only fields that intercepted methods can write
+		DynamicInputOutputCollector.prepareFieldWatchpoints(staCtx, interceptionTargetMethods);
 		
 		if (Configuration.DEBUG)
 		{
@@ -394,52 +484,14 @@ public class Main
 			SymbolicMethodLocationsCollector.printReturnLocations();
 		}
 		
+		// every execution of a driver class or unit test is an independent recording session
+		List<RecordingSessionTask> sessions = new ArrayList<RecordingSessionTask>();
+
 		// execute all driver classes with "main"
 		for (String driverClsName : Configuration.driverClassNames)
 		{
 			// each driver class has the "main" procedure and therefore it can be executed directly
-			
-			if (Configuration.DEBUG)
-			{
-				System.out.println("current driver class: " + driverClsName);
-			}
-
-			// prepare command-line arguments for the executable
-			List<String> processCmdArgs = new ArrayList<String>();
-			processCmdArgs.add("java");
-			processCmdArgs.add(JDIUtils.getAgentConfig());
-			processCmdArgs.add("-cp");
-			processCmdArgs.add(Configuration.targetClassPath);
-			processCmdArgs.add(driverClsName);
-			processCmdArgs.addAll(Configuration.runtimeCmdArgs);
-
-			// perform dynamic analysis (JDI) on the existing test program (driver class) to record information about every method in the given list (native methods and library methods that access external entities)
-
-			// record inputs (array content) and updates of heap object fields
-
-			if (Configuration.DEBUG)
-			{
-				System.err.println("recording inputs and field updates");
-			}
-
-			Process proc1 = startExternalProcess(processCmdArgs);
-
-			DynamicInputOutputCollector.collectInputsFieldUpdatesForMethods(proc1, driverClsName, interceptionTargetMethods, nativeMethodsAll);
-			
-			stopExternalProcess(proc1);
-
-			// record outputs (return value) and updates of array elements
-	
-			if (Configuration.DEBUG)
-			{
-				System.err.println("recording outputs and array updates");
-			}
-
-			Process proc2 = startExternalProcess(processCmdArgs);
-			
-			DynamicInputOutputCollector.collectOutputsArrayUpdatesForMethods(proc2, driverClsName, interceptionTargetMethods, nativeMethodsAll);
-			
-			stopExternalProcess(proc2);
+			sessions.add(new RecordingSessionTask(driverClsName, driverClsName, new ArrayList<String>(), interceptionTargetMethods, nativeMethodsAll));
 		}
 
 		// execute all unit tests and monitor them by JDI
@@ -447,39 +499,52 @@ public class Main
 		for (String testClsName : Configuration.testClassNames)
 		{
 			// each test class is a JUnit test (it extends particular superclass or has properly annotated methods)
-			
-			if (Configuration.DEBUG)
-			{
-				System.out.println("current test class: " + testClsName);
-			}
-			
 			// run the given test using the JUnit API
+			List<String> junitArgs = new ArrayList<String>();
+			junitArgs.add(testClsName);
 
-			// prepare command-line arguments for the executable
-			List<String> processCmdArgs = new ArrayList<String>();
-			processCmdArgs.add("java");
-			processCmdArgs.add(JDIUtils.getAgentConfig());
-			processCmdArgs.add("-cp");
-			processCmdArgs.add(Configuration.targetClassPath);
-			processCmdArgs.add("org.junit.runner.JUnitCore");
-			processCmdArgs.add(testClsName);
-			processCmdArgs.addAll(Configuration.runtimeCmdArgs);
-
-			// record inputs (array content) and updates of heap object fields
+			sessions.add(new RecordingSessionTask(testClsName, "org.junit.runner.JUnitCore", junitArgs, interceptionTargetMethods, nativeMethodsAll));
+		}
 
-			Process proc1 = startExternalProcess(processCmdArgs);
+		if (Configuration.recordingSessions <= 1)
+		{
+			for (RecordingSessionTask rst : sessions)
+			{
+				DynamicInputOutputCollector.mergeRecordedData(rst.call());
+			}
+		}
+		else
+		{
+			// several target JVMs are running at the same time (each of them listens on a different port)
+			ExecutorService workers = Executors.newFixedThreadPool(Configuration.recordingSessions);
 
-			DynamicInputOutputCollector.collectInputsFieldUpdatesForMethods(proc1, testClsName, interceptionTargetMethods, nativeMethodsAll);
-			
-			stopExternalProcess(proc1);
+			try
+			{
+				List<Future<RecordedData>> results = new ArrayList<Future<RecordedData>>();
 
-			// record outputs (return value) and updates of array elements
+				for (RecordingSessionTask rst : sessions)
+				{
+					results.add(workers.submit(rst));
+				}
 
-			Process proc2 = startExternalProcess(processCmdArgs);
-			
-			DynamicInputOutputCollector.collectOutputsArrayUpdatesForMethods(proc2, testClsName, interceptionTargetMethods, nativeMethodsAll);
-			
-			stopExternalProcess(proc2);
+				// we merge the recorded data in the order of sessions (and not in the order of their completion) to get the same results as in the sequential mode
+				for (Future<RecordedData> res : results)
+				{
+					try
+					{
+						DynamicInputOutputCollector.mergeRecordedData(res.get());
+					}
+					catch (ExecutionException ex)
+					{
+						if (ex.getCause() instanceof Exception) throw (Exception) ex.getCause();
+						throw ex;
+					}
+				}
+			}
+			finally
+			{
+				workers.shutdownNow();
+			}
 		}
 		
 		if (Configuration.DEBUG)
@@ -494,63 +559,49 @@ public class Main
 	private static void computeMethodSummaries(StaticAnalysisContext staCtx) throws Exception
 	{
 		// perform symbolic bytecode interpretation (analysis) to get all read and write access expressions (field access paths, array elements, local variables) and other necessary information (return values, new objects)
+			// each reachable library method is interpreted only once and all the collectors receive callbacks from the same pass
 		
-		SymbolicFieldArrayWriteAnalysis.analyzeProgram(staCtx, Configuration.libraryMethodPrefixes);
+		MultiplexExecutionVisitor allCollectors = new MultiplexExecutionVisitor();
 		
-		if (Configuration.DEBUG)
-		{
-			SymbolicFieldArrayWriteAnalysis.printSymbolicAssignments();
-		}
-	
-		SymbolicLocalVarWriteAnalysis.analyzeProgram(staCtx, Configuration.libraryMethodPrefixes);
+		allCollectors.addVisitor(SymbolicFieldArrayWriteAnalysis.createVisitor());
+		allCollectors.addVisitor(SymbolicLocalVarWriteAnalysis.createVisitor());
 		
-		if (Configuration.DEBUG)
-		{
-			SymbolicLocalVarWriteAnalysis.printSymbolicAssignments();
-		}
-	
 		// collect the list of symbolic actual arguments for each invoke instruction
-		
-		SymbolicInvokeArgumentsCollector.analyzeProgram(staCtx, Configuration.libraryMethodPrefixes);
-		
-		if (Configuration.DEBUG)
-		{
-			SymbolicInvokeArgumentsCollector.printMethodInvokeArguments();
-		}
+		allCollectors.addVisitor(SymbolicInvokeArgumentsCollector.createVisitor());
 		
 		// collect the list of symbolic return values for each program point that corresponds to a return instruction
+		allCollectors.addVisitor(SymbolicReturnValuesCollector.createVisitor());
 		
-		SymbolicReturnValuesCollector.analyzeProgram(staCtx, Configuration.libraryMethodPrefixes);
+		// gather symbolic assignments that are needed to compute the sets of may-aliased access paths
+		allCollectors.addVisitor(SymbolicAccessPathAliasAnalysis.createVisitor());
 		
-		if (Configuration.DEBUG)
-		{
-			SymbolicReturnValuesCollector.printMethodReturnValues();
-		}
-			
-		// create the sets of may-aliased access paths for local variables (especially method parameters)
+		// collect the symbolic new object expression for each program point that corresponds to a new object allocation instruction (new)
+		allCollectors.addVisitor(SymbolicNewObjectsCollector.createVisitor());
 		
-		SymbolicAccessPathAliasAnalysis.analyzeProgram(staCtx, Configuration.libraryMethodPrefixes);
+		// collect the symbolic new array expression for each program point that corresponds to a new array allocation instruction (newarray/anewarray)
+		allCollectors.addVisitor(SymbolicNewArraysCollector.createVisitor());
 		
-		if (Configuration.DEBUG)
-		{
-			SymbolicAccessPathAliasAnalysis.printLocalVarAliases();
-		}
+		Date startInterpretation = new Date();
 		
-		// collect the symbolic new object expression for each program point that corresponds to a new object allocation instruction (new)
+		SymbolicByteCodeInterpreter.processReachableMethods(staCtx, allCollectors, Configuration.libraryMethodPrefixes);
 		
-		SymbolicNewObjectsCollector.analyzeProgram(staCtx, Configuration.libraryMethodPrefixes);
+		Date finishInterpretation = new Date();
 		
-		if (Configuration.DEBUG)
-		{
-			SymbolicNewObjectsCollector.printNewObjects();
-		}
-
-		// collect the symbolic new array expression for each program point that corresponds to a new array allocation instruction (newarray/anewarray)
+		// reported in milliseconds because the interpretation of small programs takes only a few seconds (see the target "benchmark.interpretation" in build.xml)
+		System.out.println("[INFO] interpretation: time = " + (finishInterpretation.getTime() - startInterpretation.getTime()) + " ms");
+		
+		// create the sets of may-aliased access paths for local variables (especially method parameters)
 		
-		SymbolicNewArraysCollector.analyzeProgram(staCtx, Configuration.libraryMethodPrefixes);
+		SymbolicAccessPathAliasAnalysis.computeLocalVarAliases();
 		
 		if (Configuration.DEBUG)
 		{
+			SymbolicFieldArrayWriteAnalysis.printSymbolicAssignments();
+			SymbolicLocalVarWriteAnalysis.printSymbolicAssignments();
+			SymbolicInvokeArgumentsCollector.printMethodInvokeArguments();
+			SymbolicReturnValuesCollector.printMethodReturnValues();
+			SymbolicAccessPathAliasAnalysis.printLocalVarAliases();
+			SymbolicNewObjectsCollector.printNewObjects();
 			SymbolicNewArraysCollector.printNewArrays();
 		}
 	
@@ -566,8 +617,18 @@ public class Main
 		// compute summary for each pure Java method that is reachable in the call graph and does not belong to libraries (as defined by the list of prefixes)
 			// we use results of the dynamic analysis (recorded call parameters-result pairs, updated fields, and updated array elements) as side effect summaries for native methods in the static analysis
 		
+		Date startSummaryGen = new Date();
+		
 		SideEffectSummaryGenAnalysis.analyzeProgram(staCtx);
 		
+		Date finishSummaryGen = new Date();
+		
+		// the speedup of the parallel mode is obtained by comparing this time with a run where analysisthreads=1
+		System.out.println("[INFO] summary computation: threads = " + Configuration.analysisThreads + ", time = " + printTimeDiff(startSummaryGen, finishSummaryGen) + " s");
+		
+		// runs with different numbers of threads must report the same digest (see the target "check.summaries" in build.xml)
+		System.out.println("[INFO] summaries digest = " + SideEffectSummaryGenAnalysis.computeSummariesDigest());
+		
 		if (Configuration.DEBUG)
 		{
 			SideEffectSummaryGenAnalysis.printMethodSummaries();
@@ -593,44 +654,33 @@ public class Main
 			ObjectTypesData.addConstructorSignature(className, mthInitSig);
 		}
 
-		Set<String> interfaceNames = WALAUtils.collectInterfaces(staCtx);
-
-		ObjectTypesData.storeInterfaceTypeNames(interfaceNames);
-
-		if (Configuration.DEBUG)
-		{
-			System.err.println("IMPLEMENTATIONS FOR INTERFACES");
-			System.err.println("==============================");
-		}
-
-		for (String itfName : interfaceNames)
-		{
-			Set<String> implClassNames = WALAUtils.findImplementingClasses(staCtx, itfName);
-	
-			if (Configuration.DEBUG) System.err.println(itfName + " : " + implClassNames);
-
-			ObjectTypesData.storeImplementingClassesForInterface(itfName, implClassNames);
-		}
+		// implementing classes are found only for interfaces whose default values are actually needed by the transformation
+		ObjectTypesData.storeClassHierarchyIndex(WALAUtils.getClassHierarchyIndex(staCtx.cha));
 	
 		// generate abstractions of pure Java library methods that were identified by the user (configuration)
 
 		Set<String> libraryMethods = WALAUtils.collectMethodsWithPrefixes(staCtx, Configuration.libraryMethodPrefixes);
 
+		// library methods whose bytecode we replace (all methods of a given class are transformed together)
+		Set<String> transformedLibraryMethods = new TreeSet<String>();
+
 		for (String libMthSig : libraryMethods)
 		{
-			if (Configuration.DEBUG)
-			{
-				System.out.println("currently transformed library method: " + libMthSig);
-			}
-			
 			// skip methods defined in classes that belong to Java standard library
 				// we can safely ignore all side effects that are internal to such library methods (and their bytecode cannot be updated anyway)
 				// this also ensures that we keep only writes to fields and arrays defined in classes that belong to custom libraries
 			if (Utils.isJavaStandardLibraryMethod(libMthSig)) continue;
 			
-			LibraryMethodAbstractionGenerator.replaceMethodBytecode(libMthSig);
+			if (Configuration.DEBUG)
+			{
+				System.out.println("currently transformed library method: " + libMthSig);
+			}
+
+			transformedLibraryMethods.add(libMthSig);
 		}
 
+		LibraryMethodAbstractionGenerator.replaceMethodsBytecode(staCtx, transformedLibraryMethods);
+
 		// replace calls of native methods
 
 		if (Configuration.DEBUG)
@@ -657,7 +707,7 @@ public class Main
 		NativeExternAbstractionGenerator.replaceStatements(staCtx, extaccessMethods, Configuration.extaccessClassPrefixes);
 	}
 	
-	private static void createNativePeersForJPF(String unsuppNativesFileName, String jpfProfileDir) throws Exception
+	private static void createNativePeersForJPF(StaticAnalysisContext staCtx, String unsuppNativesFileName, String jpfProfileDir) throws Exception
 	{
 		List<String> nativeMths = Utils.loadTextFileAsStringPerLine(unsuppNativesFileName);
 
@@ -691,11 +741,66 @@ public class Main
 			String className = me.getKey();
 			Set<String> mthsPlainNameDesc = me.getValue();
 
-			NativePeerGenerator.createNativePeer(className, mthsPlainNameDesc, jpfProfileDir);
+			NativePeerGenerator.createNativePeer(staCtx, className, mthsPlainNameDesc, jpfProfileDir);
 		}
 	}
 
 
+	private static RecordedData recordInputOutputWithAgent(String mainClsName, List<String> mainArgs, Set<String> interceptionTargetMethods, Set<String> nativeMethodsAll) throws Exception
+	{
+		// files for the communication with the recording agent (settings and the recorded data)
+		File settingsFile = File.createTempFile("buben-agent", ".cfg");
+		File recordFile = File.createTempFile("buben-agent", ".rec");
+
+		DynamicInputOutputCollector.writeAgentSettings(settingsFile.getPath(), recordFile.getPath(), mainClsName, interceptionTargetMethods, nativeMethodsAll);
+
+		// prepare command-line arguments for the executable
+		List<String> processCmdArgs = new ArrayList<String>();
+		processCmdArgs.add("java");
+		processCmdArgs.add("-javaagent:" + Configuration.agentJarPath + "=" + settingsFile.getPath());
+		processCmdArgs.add("-cp");
+		processCmdArgs.add(Configuration.targetClassPath);
+		processCmdArgs.add(mainClsName);
+		processCmdArgs.addAll(mainArgs);
+		processCmdArgs.addAll(Configuration.runtimeCmdArgs);
+
+		ProcessBuilder pb = new ProcessBuilder(processCmdArgs);
+
+		// redirect to System.out and System.err of this process
+		pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+		pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		Process proc = pb.start();
+
+		// the agent writes all the recorded data when the program terminates
+		int exitCode = proc.waitFor();
+
+		// the record file is empty also when the agent failed to start (for example, ASM was not found next to the agent jar file)
+		if ((recordFile.length() == 0) && (exitCode != 0))
+		{
+			settingsFile.delete();
+			recordFile.delete();
+
+			throw new Exception("target program " + mainClsName + " with the recording agent terminated with exit code " + exitCode + " and nothing was recorded");
+		}
+
+		if (recordFile.length() == 0)
+		{
+			System.out.println("[WARNING] recording agent did not record anything for " + mainClsName);
+		}
+		else if (exitCode != 0)
+		{
+			System.out.println("[WARNING] target program " + mainClsName + " terminated with exit code " + exitCode + ", the recorded data may be incomplete");
+		}
+
+		RecordedData sessionData = DynamicInputOutputCollector.loadAgentRecording(recordFile.getPath());
+
+		settingsFile.delete();
+		recordFile.delete();
+
+		return sessionData;
+	}
+
 	private static Process startExternalProcess(List<String> cmdArgs) throws Exception
 	{
 		// run the target program in a new instance of JVM (using external process)
@@ -707,21 +812,16 @@ public class Main
 		pb.redirectError(ProcessBuilder.Redirect.INHERIT);
 
 		// we are not waiting here for the process to finish because we should receive something like the "VM death" event from JDI
+		// we also do not wait for the JVM to initialize (JDI attaches to it with repeated attempts)
 		Process proc = pb.start();
-			
-		// let the started process (JVM) properly initialize before we connect to it using JDI
-		Thread.sleep(500);
 
 		return proc;
 	}
 
 	private static void stopExternalProcess(Process proc) throws Exception
 	{
-		// just to be sure (there cannot remain any stale processes)
-		proc.destroyForcibly();
-
-		// give time (1000 ms) for cleaning after the old process
-		Thread.sleep(1000);
+		// wait until the old process really terminates (there cannot remain any stale processes)
+		JDIUtils.waitForTermination(proc);
 	}
 
 	private static String printTimeDiff(Date start, Date finish)
@@ -735,4 +835,124 @@ public class Main
 		
 		return String.valueOf(diffSeconds);
 	}
+
+	static class RecordingSessionTask implements Callable<RecordedData>
+	{
+		// class whose "main" procedure delimits the recording (driver class, unit test)
+		private String monitoredClsName;
+
+		// class that is actually executed by the JVM
+		private String launchClsName;
+
+		private List<String> launchArgs;
+
+		private Set<String> interceptionTargetMethods;
+
+		private Set<String> nativeMethodsAll;
+
+
+		public RecordingSessionTask(String monClsName, String lnchClsName, List<String> lnchArgs, Set<String> itMths, Set<String> natMths)
+		{
+			this.monitoredClsName = monClsName;
+			this.launchClsName = lnchClsName;
+			this.launchArgs = lnchArgs;
+			this.interceptionTargetMethods = itMths;
+			this.nativeMethodsAll = natMths;
+		}
+
+		public RecordedData call() throws Exception
+		{
+			if (Configuration.DEBUG)
+			{
+				System.out.println("current recorded class: " + monitoredClsName);
+			}
+
+			if (Configuration.recorderMode.equals("agent"))
+			{
+				// the agent records inputs, outputs, and all updates in a single run of the program
+				return recordInputOutputWithAgent(launchClsName, launchArgs, interceptionTargetMethods, nativeMethodsAll);
+			}
+
+			// perform dynamic analysis (JDI) on the existing test program (driver class, unit test) to record information about every method in the given list (native methods and library methods that access external entities)
+
+			// record inputs (array content), updates of heap object fields, outputs (return value), and updates of array elements in a single run
+
+			if (Configuration.DEBUG)
+			{
+				System.err.println("recording inputs, outputs, field updates, and array updates");
+			}
+
+			long startupBeginMS = System.currentTimeMillis();
+
+			Process proc = null;
+
+			long startupEndMS = 0;
+
+			long teardownBeginMS = 0;
+			long teardownEndMS = 0;
+
+			RecordedData sessionData = null;
+
+			try
+			{
+				VirtualMachine jdiVM = null;
+
+				for (int attempt = 1; jdiVM == null; attempt++)
+				{
+					// each concurrent session needs its own port for the connection between JDI and the target JVM
+					String jdiPort = Configuration.JDI_PORT;
+					if (Configuration.recordingSessions > 1) jdiPort = JDIUtils.findFreePort();
+
+					// prepare command-line arguments for the executable
+					List<String> processCmdArgs = new ArrayList<String>();
+					processCmdArgs.add("java");
+					processCmdArgs.add(JDIUtils.getAgentConfig(jdiPort));
+					processCmdArgs.add("-cp");
+					processCmdArgs.add(Configuration.targetClassPath);
+					processCmdArgs.add(launchClsName);
+					processCmdArgs.addAll(launchArgs);
+					processCmdArgs.addAll(Configuration.runtimeCmdArgs);
+
+					proc = startExternalProcess(processCmdArgs);
+
+					try
+					{
+						jdiVM = JDIUtils.connectToJVM(jdiPort, proc);
+					}
+					catch (java.io.IOException ex)
+					{
+						// the target JVM exited before we could attach to it, most likely because some other process took the free port in the meantime
+						// we can try another port only when it is not fixed (concurrent sessions)
+						if (proc.isAlive() || (Configuration.recordingSessions <= 1) || (attempt >= Configuration.JDI_PORT_ATTEMPTS)) throw ex;
+
+						stopExternalProcess(proc);
+
+						System.out.println("[WARNING] target JVM for " + monitoredClsName + " terminated before the debugger attached (port " + jdiPort + "), trying another port");
+					}
+				}
+
+				startupEndMS = System.currentTimeMillis();
+
+				sessionData = DynamicInputOutputCollector.collectInputsOutputsForMethods(jdiVM, monitoredClsName, interceptionTargetMethods, nativeMethodsAll);
+			}
+			finally
+			{
+				if (proc != null)
+				{
+					// the target JVM must not keep running when the recording failed (it might wait for the debugger forever)
+					if (sessionData == null) proc.destroyForcibly();
+
+					teardownBeginMS = System.currentTimeMillis();
+
+					stopExternalProcess(proc);
+
+					teardownEndMS = System.currentTimeMillis();
+				}
+			}
+
+			System.out.println("[INFO] recording session " + monitoredClsName + ": startup = " + (startupEndMS - startupBeginMS) + " ms, teardown = " + (teardownEndMS - teardownBeginMS) + " ms");
+
+			return sessionData;
+		}
+	}
 }
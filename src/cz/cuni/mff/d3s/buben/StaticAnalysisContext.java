@@ -31,6 +31,9 @@ public class StaticAnalysisContext
 	public AnalysisCache cache; 
 	
 	public IClassHierarchy cha;
+
+	// name of the algorithm that constructs the call graph
+	public String cgAlgorithm;
 	
 	public CallGraph clGraph;
 }
@@ -22,10 +22,12 @@ import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.TreeSet;
+import java.util.Collections;
 
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExecutionVisitor;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.LocalVarExpression;
@@ -36,6 +38,7 @@ import cz.cuni.mff.d3s.buben.bytecode.symbolic.NewArrayExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.SpecialExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.SymbolicByteCodeInterpreter;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.AssignmentStatement;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
 
 
 public class SymbolicAccessPathAliasAnalysis
@@ -43,13 +46,13 @@ public class SymbolicAccessPathAliasAnalysis
 	// for each method signature, this data structure maps local variables to sets of possibly may-aliased expressions
 	protected static Map<String, Map<LocalVarExpression, Set<Expression>>> mth2LocalVarAliases;
 	
-	// list of symbolic assignment statements for each method (signature)
-	protected static Map<String, List<AssignmentStatement>> mth2SymbAssignments; 
+	// list of symbolic assignment statements for each method (ID from the signature table)
+	protected static Map<Integer, List<AssignmentStatement>> mth2SymbAssignments; 
 	
 	static
 	{
 		mth2LocalVarAliases = new HashMap<String, Map<LocalVarExpression, Set<Expression>>>();
-		mth2SymbAssignments = new HashMap<String, List<AssignmentStatement>>();
+		mth2SymbAssignments = new HashMap<Integer, List<AssignmentStatement>>();
 	}
 	
 	
@@ -59,20 +62,28 @@ public class SymbolicAccessPathAliasAnalysis
 	
 		// step 1: first gather all symbolic assignment statements in each method
 		
-		AssignmentsCollector assignCollector = new AssignmentsCollector();
+		ExecutionVisitor assignCollector = createVisitor();
 		
 		SymbolicByteCodeInterpreter.processReachableMethods(staCtx, assignCollector, methodSigPrefixes);
-		
+
 		// step 2: for each local variable, compute the sets of possibly aliased symbolic expressions
-			// we iterate over the list of assignments and over the intermediate sets until a fixpoint is reached 
-		
-		Set<String> methodSigs = mth2SymbAssignments.keySet();
+
+		computeLocalVarAliases();
+	}
+
+	public static void computeLocalVarAliases()
+	{
+		// we iterate over the list of assignments (gathered by the visitor) and over the intermediate sets until a fixpoint is reached
+
+		Set<Integer> methodIDs = mth2SymbAssignments.keySet();
 		
-		for (String mthSig : methodSigs)
+		for (Integer mthID : methodIDs)
 		{
+			String mthSig = SignatureTable.getSignature(mthID);
+			
 			Map<LocalVarExpression, Set<Expression>> lv2AliasedExprs = new HashMap<LocalVarExpression, Set<Expression>>();
 			
-			List<AssignmentStatement> assignments = mth2SymbAssignments.get(mthSig);
+			List<AssignmentStatement> assignments = mth2SymbAssignments.get(mthID);
 			
 			// initialize facts based on direct assignments			
 			for (AssignmentStatement assignStmt : assignments)
@@ -162,25 +173,23 @@ public class SymbolicAccessPathAliasAnalysis
 		}
 	}
 	
+	public static ExecutionVisitor createVisitor()
+	{
+		return new AssignmentsCollector();
+	}
+	
 	public static Set<Expression> getAliasesForLocalVariable(String methodSig, LocalVarExpression lv)
 	{
+		// the maps are only read here (no lazy updates), so that queries can be safely performed by multiple threads
+
 		Map<LocalVarExpression, Set<Expression>> lv2AliasedExprs = mth2LocalVarAliases.get(methodSig);
 		
-		if (lv2AliasedExprs == null)
-		{
-			lv2AliasedExprs = new HashMap<LocalVarExpression, Set<Expression>>();
-			mth2LocalVarAliases.put(methodSig, lv2AliasedExprs);
-		}
+		if (lv2AliasedExprs == null) return Collections.emptySet();
 
 		Set<Expression> aliases = lv2AliasedExprs.get(lv);
 		
 		// there do not exist aliases for the local variable
-		// create an empty set for the purpose of future queries on this variable
-		if (aliases == null)
-		{
-			aliases = new HashSet<Expression>();
-			lv2AliasedExprs.put(lv, aliases);
-		}
+		if (aliases == null) return Collections.emptySet();
 		
 		return aliases;
 	}
@@ -234,9 +243,9 @@ public class SymbolicAccessPathAliasAnalysis
 		{
 			// save the assignment statement "array element access expression (destination) := possible new value (source access expression)"
 			
-			List<AssignmentStatement> assignments = getAssignListForMethod(pp.methodSig);
+			List<AssignmentStatement> assignments = getAssignListForMethod(pp.methodID);
 			
-			ArrayAccessExpression arrayElement = new ArrayAccessExpression(arrayObj, arrayClassName, elementIndex, elementType);
+			ArrayAccessExpression arrayElement = ExpressionFactory.createArrayAccess(arrayObj, arrayClassName, elementIndex, elementType);
 			AssignmentStatement symbAssign = new AssignmentStatement(newValue, arrayElement);
 			
 			assignments.add(symbAssign);
@@ -266,9 +275,9 @@ public class SymbolicAccessPathAliasAnalysis
 		{
 			// save the assignment statement "object field access expression (destination) := possible new value (source access expression)"
 			
-			List<AssignmentStatement> assignments = getAssignListForMethod(pp.methodSig);
+			List<AssignmentStatement> assignments = getAssignListForMethod(pp.methodID);
 			
-			FieldAccessExpression objField = new FieldAccessExpression(obj, className, fieldName, fieldType, isStatic);			
+			FieldAccessExpression objField = ExpressionFactory.createFieldAccess(obj, className, fieldName, fieldType, isStatic);			
 			AssignmentStatement symbAssign = new AssignmentStatement(newValue, objField);
 			
 			assignments.add(symbAssign);
@@ -282,21 +291,21 @@ public class SymbolicAccessPathAliasAnalysis
 		{
 			// save the assignment statement "local variable expression (destination) := possible new value (source access expression)"
 			
-			List<AssignmentStatement> assignments = getAssignListForMethod(pp.methodSig);
+			List<AssignmentStatement> assignments = getAssignListForMethod(pp.methodID);
 			
 			AssignmentStatement symbAssign = new AssignmentStatement(newValue, localVar);
 			
 			assignments.add(symbAssign);		
 		}
 		
-		private List<AssignmentStatement> getAssignListForMethod(String mthSig)
+		private List<AssignmentStatement> getAssignListForMethod(int mthID)
 		{
-			List<AssignmentStatement> assignments = mth2SymbAssignments.get(mthSig);
+			List<AssignmentStatement> assignments = mth2SymbAssignments.get(mthID);
 			
 			if (assignments == null)
 			{
 				assignments = new ArrayList<AssignmentStatement>();
-				mth2SymbAssignments.put(mthSig, assignments);				
+				mth2SymbAssignments.put(mthID, assignments);				
 			}
 			
 			return assignments;
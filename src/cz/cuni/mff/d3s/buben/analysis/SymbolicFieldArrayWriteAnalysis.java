@@ -16,6 +16,7 @@
 package cz.cuni.mff.d3s.buben.analysis;
 
 import java.util.Map;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.HashSet;
@@ -23,8 +24,8 @@ import java.util.TreeSet;
 import java.util.List;
 
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
-import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExecutionVisitor;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.FieldAccessExpression;
@@ -34,16 +35,21 @@ import cz.cuni.mff.d3s.buben.bytecode.symbolic.NewObjectExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.NewArrayExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.SymbolicByteCodeInterpreter;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.AssignmentStatement;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
 
 
 public class SymbolicFieldArrayWriteAnalysis
 {
 	// map from program points to objects that represent assignments (symbolic expressions for source and destination)
 	protected static Map<ProgramPoint, AssignmentStatement> pp2SymbAssign;
+
+	// the same assignments grouped by methods (ID of the method signature -> program points inside the method -> assignments)
+	protected static Map<Integer, Map<ProgramPoint, AssignmentStatement>> mthID2SymbAssigns;
 	
 	static
 	{
 		pp2SymbAssign = new LinkedHashMap<ProgramPoint, AssignmentStatement>();
+		mthID2SymbAssigns = new HashMap<Integer, Map<ProgramPoint, AssignmentStatement>>();
 	}
 	
 	
@@ -51,11 +57,16 @@ public class SymbolicFieldArrayWriteAnalysis
 	{
 		// for each program point that corresponds to field write or array element update, collect the symbolic access expressions that represent source and destination of the respective assignment
 		
-		AccessExpressionCollector exprCollector = new AccessExpressionCollector();
+		ExecutionVisitor exprCollector = createVisitor();
 		
 		SymbolicByteCodeInterpreter.processReachableMethods(staCtx, exprCollector, methodSigPrefixes);  
 	}
 	
+	public static ExecutionVisitor createVisitor()
+	{
+		return new AccessExpressionCollector();
+	}
+	
 	public static AssignmentStatement getSymbolicAssignmentForProgramPoint(ProgramPoint pp)
 	{
 		return pp2SymbAssign.get(pp);
@@ -65,18 +76,32 @@ public class SymbolicFieldArrayWriteAnalysis
 	{
 		Set<Expression> sources = new HashSet<Expression>();
 
-		for (ProgramPoint pp : pp2SymbAssign.keySet())
-		{
-			if (pp.methodSig.equals(tgtMthSig))
-			{
-				AssignmentStatement assignStmt = pp2SymbAssign.get(pp);
+		Map<ProgramPoint, AssignmentStatement> mthSymbAssigns = mthID2SymbAssigns.get(SignatureTable.getID(tgtMthSig));
+
+		if (mthSymbAssigns == null) return sources;
 
-				sources.add(assignStmt.source);
-			}
+		for (AssignmentStatement assignStmt : mthSymbAssigns.values())
+		{
+			sources.add(assignStmt.source);
 		}
 
 		return sources;
 	}
+
+	private static void recordSymbolicAssignment(ProgramPoint pp, AssignmentStatement symbAssign)
+	{
+		pp2SymbAssign.put(pp, symbAssign);
+
+		Map<ProgramPoint, AssignmentStatement> mthSymbAssigns = mthID2SymbAssigns.get(pp.methodID);
+
+		if (mthSymbAssigns == null)
+		{
+			mthSymbAssigns = new HashMap<ProgramPoint, AssignmentStatement>();
+			mthID2SymbAssigns.put(pp.methodID, mthSymbAssigns);
+		}
+
+		mthSymbAssigns.put(pp, symbAssign);
+	}
 	
 	public static void printSymbolicAssignments()
 	{
@@ -88,7 +113,7 @@ public class SymbolicFieldArrayWriteAnalysis
 		
 		for (ProgramPoint pp : progPoints)
 		{
-			if (Utils.isJavaStandardLibraryMethod(pp.methodSig)) continue;
+			if (SignatureTable.isJavaStandardLibraryMethod(pp.methodID)) continue;
 	
 			AssignmentStatement symbAssign = pp2SymbAssign.get(pp);
 
@@ -109,12 +134,12 @@ public class SymbolicFieldArrayWriteAnalysis
 		
 		public void visitArrayStoreInsn(ProgramPoint pp, Expression arrayObj, String arrayClassName, Expression elementIndex, String elementType, Expression newValue)
 		{
-			ArrayAccessExpression arrayElement = new ArrayAccessExpression(arrayObj, arrayClassName, elementIndex, elementType);
+			ArrayAccessExpression arrayElement = ExpressionFactory.createArrayAccess(arrayObj, arrayClassName, elementIndex, elementType);
 			
 			AssignmentStatement symbAssign = new AssignmentStatement(newValue, arrayElement);
 			
 			// save the array element access expression (destination) and possible new value (source access expression)			
-			pp2SymbAssign.put(pp, symbAssign);
+			recordSymbolicAssignment(pp, symbAssign);
 		}
 		
 		public void visitGetInsn(ProgramPoint pp, Expression obj, String className, String fieldName, String fieldType, boolean isStatic)
@@ -139,12 +164,12 @@ public class SymbolicFieldArrayWriteAnalysis
 	
 		public void visitPutInsn(ProgramPoint pp, Expression obj, String className, String fieldName, String fieldType, boolean isStatic, Expression newValue)
 		{
-			FieldAccessExpression objField = new FieldAccessExpression(obj, className, fieldName, fieldType, isStatic);
+			FieldAccessExpression objField = ExpressionFactory.createFieldAccess(obj, className, fieldName, fieldType, isStatic);
 			
 			AssignmentStatement symbAssign = new AssignmentStatement(newValue, objField);
 			
 			// save the object field access expression (destination) and possible new value (source access expression)			
-			pp2SymbAssign.put(pp, symbAssign);
+			recordSymbolicAssignment(pp, symbAssign);
 		}
 		
 		public void visitReturnInsn(ProgramPoint pp, Expression retValue)
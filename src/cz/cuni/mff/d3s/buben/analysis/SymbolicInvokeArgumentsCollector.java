@@ -24,8 +24,8 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
-import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExecutionVisitor;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.LocalVarExpression;
@@ -49,11 +49,16 @@ public class SymbolicInvokeArgumentsCollector implements ExecutionVisitor
 	{
 		// for each program point that corresponds to method invocation, collect the list of symbolic expressions that represent actual arguments
 		
-		SymbolicInvokeArgumentsCollector argsCollector = new SymbolicInvokeArgumentsCollector();
+		ExecutionVisitor argsCollector = createVisitor();
 		
 		SymbolicByteCodeInterpreter.processReachableMethods(staCtx, argsCollector, methodSigPrefixes);  
 	}
 	
+	public static ExecutionVisitor createVisitor()
+	{
+		return new SymbolicInvokeArgumentsCollector();
+	}
+	
 	public static Expression getArgumentForInvokePoint(ProgramPoint pp, int argIndex)
 	{
 		List<Expression> invokeArgs = pp2InvokeArgs.get(pp);
@@ -72,7 +77,7 @@ public class SymbolicInvokeArgumentsCollector implements ExecutionVisitor
 		
 		for (ProgramPoint pp : progPoints)
 		{
-			if (Utils.isJavaStandardLibraryMethod(pp.methodSig)) continue;
+			if (SignatureTable.isJavaStandardLibraryMethod(pp.methodID)) continue;
 			
 			List<Expression> arguments = pp2InvokeArgs.get(pp);
 
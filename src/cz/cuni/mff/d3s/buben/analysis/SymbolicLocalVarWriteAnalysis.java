@@ -16,6 +16,7 @@
 package cz.cuni.mff.d3s.buben.analysis;
 
 import java.util.Map;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.HashSet;
@@ -23,8 +24,8 @@ import java.util.TreeSet;
 import java.util.List;
 
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
-import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExecutionVisitor;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.FieldAccessExpression;
@@ -40,10 +41,14 @@ public class SymbolicLocalVarWriteAnalysis
 {
 	// map from program points to objects that represent assignments (symbolic expressions for source and destination)
 	protected static Map<ProgramPoint, AssignmentStatement> pp2SymbAssign;
+
+	// the same assignments grouped by methods (ID of the method signature -> program points inside the method -> assignments)
+	protected static Map<Integer, Map<ProgramPoint, AssignmentStatement>> mthID2SymbAssigns;
 	
 	static
 	{
 		pp2SymbAssign = new LinkedHashMap<ProgramPoint, AssignmentStatement>();
+		mthID2SymbAssigns = new HashMap<Integer, Map<ProgramPoint, AssignmentStatement>>();
 	}
 	
 	
@@ -51,11 +56,16 @@ public class SymbolicLocalVarWriteAnalysis
 	{
 		// for each program point that corresponds to local variable update, collect the destination local variable and the symbolic expression that represents source of the respective assignment
 		
-		AssignSourceDestinationCollector assignSrcDstCollector = new AssignSourceDestinationCollector();
+		ExecutionVisitor assignSrcDstCollector = createVisitor();
 		
 		SymbolicByteCodeInterpreter.processReachableMethods(staCtx, assignSrcDstCollector, methodSigPrefixes);
 	}
 	
+	public static ExecutionVisitor createVisitor()
+	{
+		return new AssignSourceDestinationCollector();
+	}
+	
 	public static AssignmentStatement getSymbolicAssignmentForProgramPoint(ProgramPoint pp)
 	{
 		return pp2SymbAssign.get(pp);
@@ -65,18 +75,32 @@ public class SymbolicLocalVarWriteAnalysis
 	{
 		Set<Expression> sources = new HashSet<Expression>();
 
-		for (ProgramPoint pp : pp2SymbAssign.keySet())
-		{
-			if (pp.methodSig.equals(tgtMthSig))
-			{
-				AssignmentStatement assignStmt = pp2SymbAssign.get(pp);
+		Map<ProgramPoint, AssignmentStatement> mthSymbAssigns = mthID2SymbAssigns.get(SignatureTable.getID(tgtMthSig));
+
+		if (mthSymbAssigns == null) return sources;
 
-				sources.add(assignStmt.source);
-			}
+		for (AssignmentStatement assignStmt : mthSymbAssigns.values())
+		{
+			sources.add(assignStmt.source);
 		}
 
 		return sources;
 	}
+
+	private static void recordSymbolicAssignment(ProgramPoint pp, AssignmentStatement symbAssign)
+	{
+		pp2SymbAssign.put(pp, symbAssign);
+
+		Map<ProgramPoint, AssignmentStatement> mthSymbAssigns = mthID2SymbAssigns.get(pp.methodID);
+
+		if (mthSymbAssigns == null)
+		{
+			mthSymbAssigns = new HashMap<ProgramPoint, AssignmentStatement>();
+			mthID2SymbAssigns.put(pp.methodID, mthSymbAssigns);
+		}
+
+		mthSymbAssigns.put(pp, symbAssign);
+	}
 	
 	public static void printSymbolicAssignments()
 	{
@@ -88,7 +112,7 @@ public class SymbolicLocalVarWriteAnalysis
 		
 		for (ProgramPoint pp : progPoints)
 		{
-			if (Utils.isJavaStandardLibraryMethod(pp.methodSig)) continue;
+			if (SignatureTable.isJavaStandardLibraryMethod(pp.methodID)) continue;
 	
 			AssignmentStatement symbAssign = pp2SymbAssign.get(pp);
 
@@ -144,7 +168,7 @@ public class SymbolicLocalVarWriteAnalysis
 			AssignmentStatement symbAssign = new AssignmentStatement(newValue, localVar);
 			
 			// save the local variable expression (destination) and possible new value (source access expression)			
-			pp2SymbAssign.put(pp, symbAssign);
+			recordSymbolicAssignment(pp, symbAssign);
 		}
 	}
 }
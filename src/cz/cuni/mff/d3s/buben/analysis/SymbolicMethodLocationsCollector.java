@@ -21,11 +21,13 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.TreeMap;
 
 import cz.cuni.mff.d3s.buben.Configuration;
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExecutionVisitor;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.LocalVarExpression;
@@ -39,13 +41,13 @@ public class SymbolicMethodLocationsCollector implements ExecutionVisitor
 	// map from method signature to a list of invoke locations (program points)
 	protected static Map<String, List<ProgramPoint>> mthSig2InvokeLocs;
 
-	// map from method signature to a list of return locations within its code
-	protected static Map<String, List<ProgramPoint>> mthSig2ReturnLocs;
+	// map from method ID (signature table) to a list of return locations within its code
+	protected static Map<Integer, List<ProgramPoint>> mthID2ReturnLocs;
 	
 	static
 	{
 		mthSig2InvokeLocs = new LinkedHashMap<String, List<ProgramPoint>>();
-		mthSig2ReturnLocs = new LinkedHashMap<String, List<ProgramPoint>>();
+		mthID2ReturnLocs = new LinkedHashMap<Integer, List<ProgramPoint>>();
 	}
 
 
@@ -73,7 +75,7 @@ public class SymbolicMethodLocationsCollector implements ExecutionVisitor
 	
 	public static List<ProgramPoint> getReturnLocationsForMethod(String methodSig)
 	{
-		List<ProgramPoint> locations = mthSig2ReturnLocs.get(methodSig);
+		List<ProgramPoint> locations = mthID2ReturnLocs.get(SignatureTable.getID(methodSig));
 		
 		// there should be at least one return location in every method
 
@@ -112,14 +114,16 @@ public class SymbolicMethodLocationsCollector implements ExecutionVisitor
 		System.out.println("================");
 
 		// sort the set of method signatures
-		Set<String> methodSigs = new TreeSet<String>();
-		methodSigs.addAll(mthSig2ReturnLocs.keySet());
+		Map<String, Integer> methodSigs2IDs = new TreeMap<String, Integer>();
+		for (Integer mthID : mthID2ReturnLocs.keySet()) methodSigs2IDs.put(SignatureTable.getSignature(mthID), mthID);
 		
-		for (String mthSig : methodSigs)
+		for (Map.Entry<String, Integer> meSig : methodSigs2IDs.entrySet())
 		{
-			if (Utils.isJavaStandardLibraryMethod(mthSig)) continue;
+			String mthSig = meSig.getKey();
+			
+			if (SignatureTable.isJavaStandardLibraryMethod(meSig.getValue())) continue;
 			
-			List<ProgramPoint> locations = mthSig2ReturnLocs.get(mthSig);
+			List<ProgramPoint> locations = mthID2ReturnLocs.get(meSig.getValue());
 
 			System.out.println(mthSig);
 			
@@ -176,12 +180,12 @@ public class SymbolicMethodLocationsCollector implements ExecutionVisitor
 	
 	public void visitReturnInsn(ProgramPoint pp, Expression retValue)
 	{
-		List<ProgramPoint> returnLocations = mthSig2ReturnLocs.get(pp.methodSig);
+		List<ProgramPoint> returnLocations = mthID2ReturnLocs.get(pp.methodID);
 		
 		if (returnLocations == null)
 		{
 			returnLocations = new ArrayList<ProgramPoint>();
-			mthSig2ReturnLocs.put(pp.methodSig, returnLocations);
+			mthID2ReturnLocs.put(pp.methodID, returnLocations);
 		}
 		
 		returnLocations.add(pp);
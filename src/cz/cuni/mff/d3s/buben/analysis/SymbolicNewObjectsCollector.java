@@ -22,8 +22,8 @@ import java.util.TreeSet;
 import java.util.List;
 
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
-import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExecutionVisitor;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.NewObjectExpression;
@@ -47,11 +47,16 @@ public class SymbolicNewObjectsCollector implements ExecutionVisitor
 	{
 		// for each program point that corresponds to new object allocation, we gather the symbolic expression that represents the new object
 		
-		SymbolicNewObjectsCollector objCollector = new SymbolicNewObjectsCollector();
+		ExecutionVisitor objCollector = createVisitor();
 		
 		SymbolicByteCodeInterpreter.processReachableMethods(staCtx, objCollector, methodSigPrefixes);  
 	}
 	
+	public static ExecutionVisitor createVisitor()
+	{
+		return new SymbolicNewObjectsCollector();
+	}
+	
 	public static NewObjectExpression getNewObjectForProgramPoint(ProgramPoint pp)
 	{
 		return pp2NewObj.get(pp);
@@ -67,7 +72,7 @@ public class SymbolicNewObjectsCollector implements ExecutionVisitor
 		
 		for (ProgramPoint pp : progPoints)
 		{
-			if (Utils.isJavaStandardLibraryMethod(pp.methodSig)) continue;
+			if (SignatureTable.isJavaStandardLibraryMethod(pp.methodID)) continue;
 	
 			NewObjectExpression newObj = pp2NewObj.get(pp);
 
@@ -24,8 +24,8 @@ import java.util.List;
 import java.util.LinkedHashMap;
 
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
-import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExecutionVisitor;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.LocalVarExpression;
@@ -49,11 +49,16 @@ public class SymbolicReturnValuesCollector implements ExecutionVisitor
 	{
 		// for each program point that corresponds to return instruction, collect the list of symbolic expressions that represent possibly returned values
 		
-		SymbolicReturnValuesCollector retvalCollector = new SymbolicReturnValuesCollector();
+		ExecutionVisitor retvalCollector = createVisitor();
 		
 		SymbolicByteCodeInterpreter.processReachableMethods(staCtx, retvalCollector, methodSigPrefixes);
 	}
 	
+	public static ExecutionVisitor createVisitor()
+	{
+		return new SymbolicReturnValuesCollector();
+	}
+	
 	public static Set<Expression> getValuesForReturnPoint(ProgramPoint pp)
 	{
 		return pp2ReturnValues.get(pp);
@@ -70,7 +75,7 @@ public class SymbolicReturnValuesCollector implements ExecutionVisitor
 		
 		for (ProgramPoint pp : progPoints)
 		{
-			if (Utils.isJavaStandardLibraryMethod(pp.methodSig)) continue;
+			if (SignatureTable.isJavaStandardLibraryMethod(pp.methodID)) continue;
 			
 			Set<Expression> values = pp2ReturnValues.get(pp);
 
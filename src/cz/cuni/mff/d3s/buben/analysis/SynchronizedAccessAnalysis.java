@@ -56,6 +56,7 @@ import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
 import cz.cuni.mff.d3s.buben.wala.WALAUtils;
+import cz.cuni.mff.d3s.buben.wala.ProgramPointTable;
 
 
 public class SynchronizedAccessAnalysis
@@ -94,7 +95,7 @@ public class SynchronizedAccessAnalysis
 			if (processedMethods.contains(mthSig)) continue;
 			processedMethods.add(mthSig);
 			
-			IR mthIR = cgn.getIR();
+			IR mthIR = WALAUtils.getMethodIR(staCtx, cgn);
 			
 			// create the intra-procedural control flow graph of the given method
 			ExplodedControlFlowGraph mthCFG = ExplodedControlFlowGraph.make(mthIR);
@@ -105,12 +106,12 @@ public class SynchronizedAccessAnalysis
 			// collect analysis results: all program points with some bit representing a lock set to '1'
 			
 			Set<ProgramPoint> lockedProgPoints = new HashSet<ProgramPoint>();
+
+			ProgramPointTable mthProgPoints = ProgramPointTable.getForMethod(mth, mthSig);
 			
 			for (IExplodedBasicBlock ebb : mthCFG) 
 			{
-				int insnPos = WALAUtils.getInsnBytecodePos(mth, ebb.getFirstInstructionIndex());
-			
-				ProgramPoint pp = new ProgramPoint(mthSig, ebb.getFirstInstructionIndex(), insnPos);
+				ProgramPoint pp = mthProgPoints.getProgramPoint(ebb.getFirstInstructionIndex());
 			
 				IntSet out = solverMLP.getOut(ebb).getValue();
 				if (out != null)
@@ -24,7 +24,8 @@ public class ArithmeticExpression extends Expression
 	private int hc;
 	
 	
-	public ArithmeticExpression(String op, Expression v1, Expression v2)
+	// instances are created only by the factory (see ExpressionFactory)
+	ArithmeticExpression(String op, Expression v1, Expression v2)
 	{
 		this.operator = op;
 		this.value1 = v1;
@@ -35,9 +36,14 @@ public class ArithmeticExpression extends Expression
 	{
 		if (obj == null) return false;
 		
+		if (obj == this) return true;
+		
 		if ( ! (obj instanceof ArithmeticExpression) ) return false;
 		
 		ArithmeticExpression other = (ArithmeticExpression) obj;
+
+		// structurally equal expressions share the canonical instance (identity was checked above)
+		if (this.isDistinctCanonical(other)) return false;
 		
 		if ( ! this.operator.equals(other.operator) ) return false;
 		if ( ! this.value1.equals(other.value1) ) return false;
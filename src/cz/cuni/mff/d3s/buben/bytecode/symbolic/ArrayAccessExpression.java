@@ -24,7 +24,8 @@ public class ArrayAccessExpression extends Expression
 	
 	private int hc;
 	
-	public ArrayAccessExpression(Expression arrayObj, String arrClsName, Expression idx, String type)
+	// instances are created only by the factory (see ExpressionFactory)
+	ArrayAccessExpression(Expression arrayObj, String arrClsName, Expression idx, String type)
 	{
 		this.targetArrayObj = arrayObj;
 		this.arrayClassName = arrClsName;
@@ -38,9 +39,14 @@ public class ArrayAccessExpression extends Expression
 	{
 		if (obj == null) return false;
 		
+		if (obj == this) return true;
+		
 		if ( ! (obj instanceof ArrayAccessExpression) ) return false;
 		
 		ArrayAccessExpression other = (ArrayAccessExpression) obj;
+
+		// structurally equal expressions share the canonical instance (identity was checked above)
+		if (this.isDistinctCanonical(other)) return false;
 		
 		if ( ! this.targetArrayObj.equals(other.targetArrayObj) ) return false;
 		if ( ! this.arrayClassName.equals(other.arrayClassName) ) return false;
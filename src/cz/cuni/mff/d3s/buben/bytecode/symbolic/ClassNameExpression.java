@@ -19,7 +19,8 @@ public class ClassNameExpression extends Expression
 {
 	public String className;
 	
-	public ClassNameExpression(String name)
+	// instances are created only by the factory (see ExpressionFactory)
+	ClassNameExpression(String name)
 	{
 		this.className = name;
 	}
@@ -28,9 +29,14 @@ public class ClassNameExpression extends Expression
 	{
 		if (obj == null) return false;
 		
+		if (obj == this) return true;
+		
 		if ( ! (obj instanceof ClassNameExpression) ) return false;
 		
 		ClassNameExpression other = (ClassNameExpression) obj;
+
+		// structurally equal expressions share the canonical instance (identity was checked above)
+		if (this.isDistinctCanonical(other)) return false;
 		
 		if ( ! this.className.equals(other.className) ) return false;
 		
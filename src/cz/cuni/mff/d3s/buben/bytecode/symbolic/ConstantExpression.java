@@ -19,7 +19,8 @@ public class ConstantExpression extends Expression
 {
 	public Object value;
 	
-	public ConstantExpression(Object val)
+	// instances are created only by the factory (see ExpressionFactory)
+	ConstantExpression(Object val)
 	{
 		this.value = val;
 	}
@@ -28,9 +29,14 @@ public class ConstantExpression extends Expression
 	{
 		if (obj == null) return false;
 		
+		if (obj == this) return true;
+		
 		if ( ! (obj instanceof ConstantExpression) ) return false;
 		
 		ConstantExpression other = (ConstantExpression) obj;
+
+		// structurally equal expressions share the canonical instance (identity was checked above)
+		if (this.isDistinctCanonical(other)) return false;
 		
 		if ( ! this.value.equals(other.value) ) return false;
 		
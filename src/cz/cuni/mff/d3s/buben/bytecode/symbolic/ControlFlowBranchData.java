@@ -16,7 +16,6 @@
 package cz.cuni.mff.d3s.buben.bytecode.symbolic;
 
 import java.util.List;
-import java.util.LinkedList;
 import java.util.ArrayList;
 
 
@@ -30,8 +29,8 @@ public class ControlFlowBranchData
 
 	// every branch has possibly several variants (distinct copies) of the expression stack that may appear at specific points during execution of the respective branch (at specific nodes in the CFG of a given procedure/method)
 
-	// several full variants of an expression stack
-	public List<LinkedList<Expression>> fullExprStacks;
+	// several full variants of an expression stack (stacks are immutable and they can be shared with other branches)
+	public List<ExpressionStack> fullExprStacks;
 
 	// position in the list of stacks
 	public int curStackNum;
@@ -44,7 +43,7 @@ public class ControlFlowBranchData
 		curInsnIndex = -1;
 		nextInsnIndex = -1;
 
-		fullExprStacks = new ArrayList<LinkedList<Expression>>();
+		fullExprStacks = new ArrayList<ExpressionStack>();
 
 		curStackNum = -1;
 	}
@@ -36,6 +36,7 @@ import cz.cuni.mff.d3s.buben.common.ProgramPoint;
 import cz.cuni.mff.d3s.buben.common.ClassName;
 import cz.cuni.mff.d3s.buben.common.AllocationSite;
 import cz.cuni.mff.d3s.buben.wala.WALAUtils;
+import cz.cuni.mff.d3s.buben.wala.ProgramPointTable;
 
 
 public class ExecutionSimulator
@@ -46,6 +47,9 @@ public class ExecutionSimulator
 
 		IInstruction[] mthInstructions = mth.getInstructions();
 
+		// canonical program points for all instructions of the method
+		ProgramPointTable mthProgPoints = ProgramPointTable.getForMethod(mth, mthSig);
+
 		// get positions (starting indexes) of exception handlers
 		Set<Integer> exceptionHandlersIndexes = new HashSet<Integer>();
 		ExceptionHandler[][] handlers = mth.getHandlers();
@@ -90,9 +94,7 @@ public class ExecutionSimulator
 
 			short insnOpcode = insn.getOpcode();
 			
-			int insnPos = WALAUtils.getInsnBytecodePos(mth, insnIndex);
-			
-			ProgramPoint insnPP = new ProgramPoint(mthSig, insnIndex, insnPos);
+			ProgramPoint insnPP = mthProgPoints.getProgramPoint(insnIndex);
 
 			if (Configuration.DEBUG)
 			{
@@ -113,7 +115,7 @@ public class ExecutionSimulator
 				
 				String arrayObjType = ExpressionUtils.getArrayExprTypeName(arrayObj);
 				
-				iptCtx.addExprToStack(new FieldAccessExpression(arrayObj, arrayObjType, "length", "int", false));				
+				iptCtx.addExprToStack(ExpressionFactory.createFieldAccess(arrayObj, arrayObjType, "length", "int", false));				
 				
 				execVisitor.visitGetInsn(insnPP, arrayObj, arrayObjType, "length", "int", false);
 			}
@@ -129,7 +131,7 @@ public class ExecutionSimulator
 				String elementType = Utils.getElementTypeFromArrayClassName(arrayClassName);
 				
 				// add "arrayObj[index]" to the stack
-				iptCtx.addExprToStack(new ArrayAccessExpression(arrayObj, arrayClassName, indexExpr, elementType));
+				iptCtx.addExprToStack(ExpressionFactory.createArrayAccess(arrayObj, arrayClassName, indexExpr, elementType));
 				
 				execVisitor.visitArrayLoadInsn(insnPP, arrayObj, arrayClassName, indexExpr, elementType);
 			}
@@ -190,7 +192,7 @@ public class ExecutionSimulator
 						arithmOp = "";
 				}
 				
-				iptCtx.addExprToStack(new ArithmeticExpression(arithmOp, value1, value2));
+				iptCtx.addExprToStack(ExpressionFactory.createArithmetic(arithmOp, value1, value2));
 			}
 			
 			if (insn instanceof ComparisonInstruction)
@@ -200,7 +202,7 @@ public class ExecutionSimulator
 				Expression value1 = iptCtx.removeExprFromStack();
 				
 				// we model this using subtraction
-				iptCtx.addExprToStack(new ArithmeticExpression("-", value1, value2));
+				iptCtx.addExprToStack(ExpressionFactory.createArithmetic("-", value1, value2));
 			}
 			
 			if (insn instanceof ConditionalBranchInstruction)
@@ -208,7 +210,7 @@ public class ExecutionSimulator
 				ConditionalBranchInstruction condbrInsn = (ConditionalBranchInstruction) insn;
 				
 				Expression value2 = null;
-				if ((insnOpcode >= 153) && (insnOpcode <= 158)) value2 = new ConstantExpression(new Integer(0));
+				if ((insnOpcode >= 153) && (insnOpcode <= 158)) value2 = ExpressionFactory.createConstant(new Integer(0));
 				else value2 = iptCtx.removeExprFromStack();
 								
 				Expression value1 = iptCtx.removeExprFromStack();
@@ -268,19 +270,19 @@ public class ExecutionSimulator
 					
 					String constValueClsName = Utils.getPlainTypeName(clsToken.getTypeName());
 
-					iptCtx.addExprToStack(new ConstantExpression(new ClassNameExpression(constValueClsName)));
+					iptCtx.addExprToStack(ExpressionFactory.createConstant(ExpressionFactory.createClassName(constValueClsName)));
 				}
 				else if (constInsn.getValue() instanceof String)
 				{
 					String constValueStr = (String) constInsn.getValue();
 					
-					iptCtx.addExprToStack(new ConstantExpression(constValueStr));
+					iptCtx.addExprToStack(ExpressionFactory.createConstant(constValueStr));
 				}
 				else // numeric constant
 				{
 					Object constValueNum = constInsn.getValue();
 					
-					iptCtx.addExprToStack(new ConstantExpression(constValueNum));
+					iptCtx.addExprToStack(ExpressionFactory.createConstant(constValueNum));
 				}
 			}
 			
@@ -361,7 +363,7 @@ public class ExecutionSimulator
 				
 				if (getInsn.isStatic())
 				{
-					obj = new ClassNameExpression(classNameStr);
+					obj = ExpressionFactory.createClassName(classNameStr);
 				}
 				else
 				{
@@ -369,7 +371,7 @@ public class ExecutionSimulator
 				}
 				
 				// put "obj.fieldname" to the stack
-				iptCtx.addExprToStack(new FieldAccessExpression(obj, classNameStr, fieldName, fieldTypeStr, getInsn.isStatic()));
+				iptCtx.addExprToStack(ExpressionFactory.createFieldAccess(obj, classNameStr, fieldName, fieldTypeStr, getInsn.isStatic()));
 				
 				execVisitor.visitGetInsn(insnPP, obj, classNameStr, fieldName, fieldTypeStr, getInsn.isStatic());
 			}
@@ -417,7 +419,7 @@ public class ExecutionSimulator
 				
 				// we model this with a constant value 1 (true) that represents a successful comparison
 				// we ignore the possibility of a negative result (0, false)
-				iptCtx.addExprToStack(new ConstantExpression(new Integer(1)));
+				iptCtx.addExprToStack(ExpressionFactory.createConstant(new Integer(1)));
 			}
 			
 			if (insn instanceof InvokeInstruction)
@@ -446,13 +448,13 @@ public class ExecutionSimulator
 				}
 				
 				Expression targetObj = null;
-				if (isStaticCall) targetObj = new ClassNameExpression(ownerClassNameStr);
+				if (isStaticCall) targetObj = ExpressionFactory.createClassName(ownerClassNameStr);
 				else targetObj = iptCtx.removeExprFromStack();
 				
 				if (WALAUtils.hasMethodReturnValue(tgtMethodSig, ownerClassNameStr, staCtx.cha))
 				{
 					// put the symbol "retval <method sig>" on the stack (indicates presence of a returned value)
-					Expression retVal = new ReturnValueExpression(tgtMethodSig);
+					Expression retVal = ExpressionFactory.createReturnValue(tgtMethodSig);
 					iptCtx.addExprToStack(retVal);
 				}
 
@@ -500,13 +502,13 @@ public class ExecutionSimulator
 				}
 				
 				Expression targetObj = null;
-				if (isStaticCall) targetObj = new ClassNameExpression(ownerClassNameStr);
+				if (isStaticCall) targetObj = ExpressionFactory.createClassName(ownerClassNameStr);
 				else targetObj = iptCtx.removeExprFromStack();
 				
 				if (WALAUtils.hasMethodReturnValue(tgtMethodSig, ownerClassNameStr, staCtx.cha))
 				{
 					// put the symbol "retval <method sig>" on the stack (indicates presence of a returned value)
-					Expression retVal = new ReturnValueExpression(tgtMethodSig);
+					Expression retVal = ExpressionFactory.createReturnValue(tgtMethodSig);
 					iptCtx.addExprToStack(retVal);
 				}
 
@@ -527,7 +529,7 @@ public class ExecutionSimulator
 
 				boolean isMthParam = varSlot <= WALAUtils.getMethodParamMaxSlot(mth);
 
-				LocalVarExpression varExpr = new LocalVarExpression(varSlot, varName, varTypeStr, isMthParam);
+				LocalVarExpression varExpr = ExpressionFactory.createLocalVar(varSlot, varName, varTypeStr, isMthParam);
 					
 				// add variable name to the stack
 				iptCtx.addExprToStack(varExpr);
@@ -601,7 +603,7 @@ public class ExecutionSimulator
 
 				if (putInsn.isStatic())
 				{					
-					obj = new ClassNameExpression(classNameStr);
+					obj = ExpressionFactory.createClassName(classNameStr);
 				}					
 				else
 				{
@@ -660,7 +662,7 @@ public class ExecutionSimulator
 						shiftOp = "";
 				}
 				
-				iptCtx.addExprToStack(new ArithmeticExpression(shiftOp, value1, value2));
+				iptCtx.addExprToStack(ExpressionFactory.createArithmetic(shiftOp, value1, value2));
 			}
 			
 			if (insn instanceof StoreInstruction)
@@ -698,7 +700,7 @@ public class ExecutionSimulator
 					
 					boolean isMthParam = varSlot <= WALAUtils.getMethodParamMaxSlot(mth);
 
-					LocalVarExpression varExpr = new LocalVarExpression(varSlot, varName, varTypeStr, isMthParam);
+					LocalVarExpression varExpr = ExpressionFactory.createLocalVar(varSlot, varName, varTypeStr, isMthParam);
 					
 					execVisitor.visitStoreInsn(insnPP, varExpr, newValue);
 				}
@@ -760,7 +762,7 @@ public class ExecutionSimulator
 				Expression value = iptCtx.removeExprFromStack();
 
 				// add expression "(0 - value)" to the stack 
-				iptCtx.addExprToStack(new ArithmeticExpression("-", new ConstantExpression(new Integer(0)), value));
+				iptCtx.addExprToStack(ExpressionFactory.createArithmetic("-", ExpressionFactory.createConstant(new Integer(0)), value));
 			}
 
 			if (Configuration.DEBUG)
@@ -23,4 +23,15 @@ import cz.cuni.mff.d3s.buben.common.SymbolicValue;
  */
 public abstract class Expression extends SymbolicValue
 {
+	// generation of the expression factory in which this is the canonical instance (0 for other expressions, negative while the expression is being interned)
+	int canonicalGen;
+
+
+	/**
+	 * Returns true when both expressions are distinct canonical instances from the same generation, which means they cannot be equal.
+	 */
+	boolean isDistinctCanonical(Expression other)
+	{
+		return (this.canonicalGen > 0) && (this.canonicalGen == other.canonicalGen);
+	}
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.bytecode.symbolic;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Creates symbolic expressions such that structurally equal expressions are represented by a single canonical instance (hash consing).
+ * Comparison of two canonical expressions then succeeds already on the identity check, and sub-expressions are shared.
+ * Expressions that are modified after creation (new objects, new arrays) are not interned.
+ * Two distinct canonical instances of the same generation are never equal, which makes also most failed comparisons cheap.
+ * The factory may be used concurrently by multiple threads.
+ */
+public class ExpressionFactory
+{
+	// canonical instances of the current generation (the whole table is replaced when the generation changes)
+	private static volatile InternTable curTable;
+
+	static
+	{
+		curTable = new InternTable(1);
+	}
+
+
+	/**
+	 * Drops the table of canonical instances, so that expressions of finished stages can be garbage collected.
+	 * Existing expressions remain valid, but expressions created later are interned separately (they belong to a new generation).
+	 */
+	public static synchronized void startNewGeneration()
+	{
+		curTable = new InternTable(curTable.generation + 1);
+	}
+
+	public static FieldAccessExpression createFieldAccess(Expression obj, String cname, String fname, String ftype, boolean st)
+	{
+		return intern(new FieldAccessExpression(obj, cname, fname, ftype, st), isUnknown(obj) || (cname == null) || (fname == null) || (ftype == null));
+	}
+
+	public static ArrayAccessExpression createArrayAccess(Expression arrayObj, String arrClsName, Expression idx, String type)
+	{
+		return intern(new ArrayAccessExpression(arrayObj, arrClsName, idx, type), isUnknown(arrayObj) || (arrClsName == null) || isUnknown(idx) || (type == null));
+	}
+
+	public static LocalVarExpression createLocalVar(int slot, String name, String type, boolean param)
+	{
+		return intern(new LocalVarExpression(slot, name, type, param), (name == null) || (type == null));
+	}
+
+	public static ConstantExpression createConstant(Object val)
+	{
+		return intern(new ConstantExpression(val), (val == null) || ((val instanceof Expression) && isUnknown((Expression) val)));
+	}
+
+	public static ArithmeticExpression createArithmetic(String op, Expression v1, Expression v2)
+	{
+		return intern(new ArithmeticExpression(op, v1, v2), (op == null) || isUnknown(v1) || isUnknown(v2));
+	}
+
+	public static ClassNameExpression createClassName(String name)
+	{
+		return intern(new ClassNameExpression(name), (name == null));
+	}
+
+	public static HeapReferenceExpression createHeapReference(long objID, String desc)
+	{
+		return intern(new HeapReferenceExpression(objID, desc), (desc == null));
+	}
+
+	public static ReturnValueExpression createReturnValue(String mthSig)
+	{
+		return intern(new ReturnValueExpression(mthSig), (mthSig == null));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Expression> T intern(T expr, boolean hasUnknownParts)
+	{
+		// expressions with some missing parts (null) cannot be hashed, and therefore they are never shared
+		if (hasUnknownParts) return expr;
+
+		InternTable table = curTable;
+
+		// the mark must be set before the expression becomes visible to other threads through the table
+			// it is negative during the lookup, so that the comparison with existing canonical instances is not short-circuited
+			// threads that still see the negative mark after publication just compare the expression structurally
+		expr.canonicalGen = -table.generation;
+
+		Expression canonicalExpr = table.canonicalExprs.putIfAbsent(expr, expr);
+
+		// the given expression is the first one with this structure
+		if (canonicalExpr == null)
+		{
+			expr.canonicalGen = table.generation;
+			return expr;
+		}
+
+		// the given expression was not published anywhere
+		expr.canonicalGen = 0;
+
+		return (T) canonicalExpr;
+	}
+
+	static boolean isUnknown(Expression subExpr)
+	{
+		if (subExpr == null) return true;
+
+		// we do not intern new objects, new arrays, and special symbols, but they can be hashed
+		if ((subExpr instanceof NewObjectExpression) || (subExpr instanceof NewArrayExpression) || (subExpr instanceof SpecialExpression)) return false;
+
+		// sub-expression created by the factory that has some missing parts
+		return (subExpr.canonicalGen == 0);
+	}
+
+
+	static class InternTable
+	{
+		// map from each expression to its canonical instance
+		public final ConcurrentHashMap<Expression, Expression> canonicalExprs;
+
+		public final int generation;
+
+
+		public InternTable(int gen)
+		{
+			this.canonicalExprs = new ConcurrentHashMap<Expression, Expression>();
+			this.generation = gen;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.bytecode.symbolic;
+
+import java.util.NoSuchElementException;
+
+
+/**
+ * Immutable stack of symbolic expressions represented as a linked list of cells (the top expression is in the first cell).
+ * Each modification creates new cells only for the changed prefix, and the rest is shared with the original stack.
+ * Control-flow branches can therefore use the same stack without copying it.
+ * Removing or reading the top of the empty stack throws NoSuchElementException, so that stack underflow is never hidden.
+ */
+public class ExpressionStack
+{
+	public static final ExpressionStack EMPTY = new ExpressionStack(null, null);
+
+	private Expression top;
+	private ExpressionStack rest;
+
+	private int size;
+
+	// hash code is cached only if the whole stack contains immutable expressions
+	// new objects and new arrays can be updated when they are already on the stack
+	private boolean stableHash;
+	private int hc;
+
+
+	private ExpressionStack(Expression expr, ExpressionStack rest)
+	{
+		this.top = expr;
+		this.rest = rest;
+
+		if (rest == null)
+		{
+			// the empty stack
+			this.size = 0;
+			this.stableHash = true;
+			this.hc = 1;
+			return;
+		}
+
+		this.size = rest.size + 1;
+
+		this.stableHash = rest.stableHash && ( ! (expr instanceof NewObjectExpression) ) && ( ! (expr instanceof NewArrayExpression) );
+
+		if (this.stableHash) this.hc = computeHashCode();
+	}
+
+	public ExpressionStack push(Expression expr)
+	{
+		return new ExpressionStack(expr, this);
+	}
+
+	public ExpressionStack pop()
+	{
+		if (size == 0) throw new NoSuchElementException("pop on the empty stack");
+
+		return rest;
+	}
+
+	public Expression peek()
+	{
+		if (size == 0) throw new NoSuchElementException("peek on the empty stack");
+
+		return top;
+	}
+
+	public Expression get(int offset)
+	{
+		if ((offset < 0) || (offset >= size)) throw new IndexOutOfBoundsException("offset " + offset + " in the stack of size " + size);
+
+		ExpressionStack cell = this;
+
+		for (int i = 0; i < offset; i++) cell = cell.rest;
+
+		return cell.top;
+	}
+
+	public ExpressionStack insert(Expression expr, int depth)
+	{
+		if ((depth < 0) || (depth > size)) throw new IndexOutOfBoundsException("depth " + depth + " in the stack of size " + size);
+
+		if (depth == 0) return push(expr);
+
+		// the part of the stack below the insertion point is shared
+		return rest.insert(expr, depth - 1).push(top);
+	}
+
+	public boolean isEmpty()
+	{
+		return (size == 0);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean equals(Object obj)
+	{
+		if (obj == null) return false;
+
+		if ( ! (obj instanceof ExpressionStack) ) return false;
+
+		ExpressionStack cell1 = this;
+		ExpressionStack cell2 = (ExpressionStack) obj;
+
+		if (cell1.size != cell2.size) return false;
+
+		if (cell1.stableHash && cell2.stableHash && (cell1.hc != cell2.hc)) return false;
+
+		// stop as soon as we reach the shared part of both stacks
+		while (cell1 != cell2)
+		{
+			if (cell1.top != cell2.top)
+			{
+				if (cell1.top == null) return false;
+				if ( ! cell1.top.equals(cell2.top) ) return false;
+			}
+
+			cell1 = cell1.rest;
+			cell2 = cell2.rest;
+		}
+
+		return true;
+	}
+
+	public int hashCode()
+	{
+		if (stableHash) return hc;
+
+		return computeHashCode();
+	}
+
+	private int computeHashCode()
+	{
+		// expressions with some missing parts cannot be hashed
+		int topHC = ExpressionFactory.isUnknown(top) ? 0 : top.hashCode();
+
+		return rest.hashCode() * 31 + topHC;
+	}
+
+	public String toString()
+	{
+		StringBuffer strbuf = new StringBuffer();
+
+		strbuf.append("[");
+
+		for (ExpressionStack cell = this; cell.size > 0; cell = cell.rest)
+		{
+			if (cell != this) strbuf.append(", ");
+
+			strbuf.append(cell.top);
+		}
+
+		strbuf.append("]");
+
+		return strbuf.toString();
+	}
+}
@@ -102,7 +102,7 @@ public class ExpressionUtils
 			newTargetObj = replaceRootObjectAccessPath((ArrayAccessExpression) fieldExpr.targetObj, newRootExpr);
 		}
 		
-		return new FieldAccessExpression(newTargetObj, fieldExpr.className, fieldExpr.fieldName, fieldExpr.fieldType, fieldExpr.isStatic);
+		return ExpressionFactory.createFieldAccess(newTargetObj, fieldExpr.className, fieldExpr.fieldName, fieldExpr.fieldType, fieldExpr.isStatic);
 	}
 	
 	public static ArrayAccessExpression replaceRootObjectAccessPath(ArrayAccessExpression arrayExpr, Expression newRootExpr)
@@ -120,7 +120,7 @@ public class ExpressionUtils
 			newTargetArrayObj = replaceRootObjectAccessPath((ArrayAccessExpression) arrayExpr.targetArrayObj, newRootExpr);
 		}
 		
-		return new ArrayAccessExpression(newTargetArrayObj, arrayExpr.arrayClassName, arrayExpr.elementIndex, arrayExpr.elementType);	
+		return ExpressionFactory.createArrayAccess(newTargetArrayObj, arrayExpr.arrayClassName, arrayExpr.elementIndex, arrayExpr.elementType);	
 	}
 	
 	public static void dropLocalVarsNotParams(Set<Expression> expressions)
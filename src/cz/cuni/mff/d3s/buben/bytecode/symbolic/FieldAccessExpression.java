@@ -25,7 +25,8 @@ public class FieldAccessExpression extends Expression
 	
 	private int hc;
 	
-	public FieldAccessExpression(Expression obj, String cname, String fname, String ftype, boolean st)
+	// instances are created only by the factory (see ExpressionFactory)
+	FieldAccessExpression(Expression obj, String cname, String fname, String ftype, boolean st)
 	{
 		this.targetObj = obj;
 		this.className = cname;
@@ -40,9 +41,14 @@ public class FieldAccessExpression extends Expression
 	{
 		if (obj == null) return false;
 		
+		if (obj == this) return true;
+		
 		if ( ! (obj instanceof FieldAccessExpression) ) return false;
 		
 		FieldAccessExpression other = (FieldAccessExpression) obj;
+
+		// structurally equal expressions share the canonical instance (identity was checked above)
+		if (this.isDistinctCanonical(other)) return false;
 		
 		if ( ! this.targetObj.equals(other.targetObj) ) return false;
 		if ( ! this.className.equals(other.className) ) return false;
@@ -20,7 +20,8 @@ public class HeapReferenceExpression extends Expression
 	public long objectID;
 	public String descriptor;
 	
-	public HeapReferenceExpression(long objID, String desc)
+	// instances are created only by the factory (see ExpressionFactory)
+	HeapReferenceExpression(long objID, String desc)
 	{
 		this.objectID = objID;
 		this.descriptor = desc;
@@ -30,9 +31,14 @@ public class HeapReferenceExpression extends Expression
 	{
 		if (obj == null) return false;
 		
+		if (obj == this) return true;
+		
 		if ( ! (obj instanceof HeapReferenceExpression) ) return false;
 		
 		HeapReferenceExpression other = (HeapReferenceExpression) obj;
+
+		// structurally equal expressions share the canonical instance (identity was checked above)
+		if (this.isDistinctCanonical(other)) return false;
 		
 		if (this.objectID != other.objectID) return false;
 		if ( ! this.descriptor.equals(other.descriptor) ) return false;
@@ -16,27 +16,36 @@
 package cz.cuni.mff.d3s.buben.bytecode.symbolic;
 
 import java.util.List;
-import java.util.LinkedList;
 import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.HashSet;
 
 import java.io.PrintStream;
 
 
 public class InterpretationContext
 {
-	// mapping from bytecode instruction indexes to the lists of control-flow branches that resume (again becomes active) at the given location
+	// lists of control-flow branches that resume (again becomes active) at the given location, indexed by bytecode instruction indexes
 	// control-flow branch resumes at a bytecode position (index) that is the target of a forward jump
 	// branch can be suspended at the position of a conditional branch instruction or a goto instruction
-	TreeMap<Integer, List<ControlFlowBranchData>> insnIndex2ActiveBranches;
+	// the lists are allocated once and reused for all methods processed with this context
+	private List<List<ControlFlowBranchData>> insnIndex2ActiveBranches = new ArrayList<List<ControlFlowBranchData>>();
+
+	// number of entries used by the current method
+	private int usedInsnIndexes = 0;
 
 	// there can always be at most one active branch
 	private ControlFlowBranchData activeBranch = null;
 
 
-	public void reset()
+	public void reset(int mthInsnCount)
 	{
-		insnIndex2ActiveBranches = new TreeMap<Integer, List<ControlFlowBranchData>>();
+		// drop branches left from the previous method (e.g., those scheduled at targets of backward jumps)
+		for (int i = 0; i < usedInsnIndexes; i++) insnIndex2ActiveBranches.get(i).clear();
+
+		usedInsnIndexes = 0;
+
+		ensureInsnIndexes(mthInsnCount);
 
 		ControlFlowBranchData initialBranch = new ControlFlowBranchData();
 
@@ -45,7 +54,7 @@ public class InterpretationContext
 		initialBranch.curInsnIndex = 0;
 		initialBranch.nextInsnIndex = 1;
 
-		initialBranch.fullExprStacks.add(new LinkedList<Expression>());
+		initialBranch.fullExprStacks.add(ExpressionStack.EMPTY);
 
 		initialBranch.curStackNum = 0;
 
@@ -107,42 +116,44 @@ public class InterpretationContext
 
 	public void addExprToStack(Expression expr)
 	{
-		LinkedList<Expression> exprStack = getCurrentExprStack();
+		ExpressionStack exprStack = getCurrentExprStack();
 
-		exprStack.addFirst(expr);
+		setCurrentExprStack(exprStack.push(expr));
 	}
 
 	public void insertExprToStack(Expression expr, int depth)
 	{
-		LinkedList<Expression> exprStack = getCurrentExprStack();
+		ExpressionStack exprStack = getCurrentExprStack();
 
-		exprStack.add(depth, expr);
+		setCurrentExprStack(exprStack.insert(expr, depth));
 	}
 
 	public Expression removeExprFromStack()
 	{
-		LinkedList<Expression> exprStack = getCurrentExprStack();
+		ExpressionStack exprStack = getCurrentExprStack();
 
-		return exprStack.removeFirst();
+		setCurrentExprStack(exprStack.pop());
+
+		return exprStack.peek();
 	}
 
 	public Expression getExprFromStack()
 	{
-		LinkedList<Expression> exprStack = getCurrentExprStack();
+		ExpressionStack exprStack = getCurrentExprStack();
 
-		return exprStack.getFirst();
+		return exprStack.peek();
 	}
 
 	public Expression getExprFromStack(int offset)
 	{
-		LinkedList<Expression> exprStack = getCurrentExprStack();
+		ExpressionStack exprStack = getCurrentExprStack();
 
 		return exprStack.get(offset);
 	}
 
 	public void printExprStack(String prefix)
 	{
-		LinkedList<Expression> exprStack = getCurrentExprStack();
+		ExpressionStack exprStack = getCurrentExprStack();
 
 		System.out.println(prefix);
 		
@@ -156,43 +167,48 @@ public class InterpretationContext
 		}
 	}
 
-	private LinkedList<Expression> getCurrentExprStack()
+	private ExpressionStack getCurrentExprStack()
 	{
 		return activeBranch.fullExprStacks.get(activeBranch.curStackNum);
 	}
+
+	private void setCurrentExprStack(ExpressionStack exprStack)
+	{
+		activeBranch.fullExprStacks.set(activeBranch.curStackNum, exprStack);
+	}
 	
 	public void mergeIdenticalExprStacks()
 	{
-		List<LinkedList<Expression>> stacks = activeBranch.fullExprStacks;
+		List<ExpressionStack> stacks = activeBranch.fullExprStacks;
 
-		int pos = 0;
+		// we keep the first occurrence of each distinct stack (in the original order)
 
-		while (pos < stacks.size())
-		{
-			int i = pos + 1;
-			while (i < stacks.size())
-			{
-				if (stacks.get(pos).equals(stacks.get(i))) stacks.remove(i);
-				else i++;
-			}
+		List<ExpressionStack> uniqueStacks = new ArrayList<ExpressionStack>(stacks.size());
+
+		Set<ExpressionStack> seenStacks = new HashSet<ExpressionStack>();
 
-			pos++;
+		for (ExpressionStack stack : stacks)
+		{
+			if (seenStacks.add(stack)) uniqueStacks.add(stack);
 		}
 
-		if (activeBranch.curStackNum >= stacks.size()) activeBranch.curStackNum = stacks.size();
+		activeBranch.fullExprStacks = uniqueStacks;
+
+		if (activeBranch.curStackNum >= uniqueStacks.size()) activeBranch.curStackNum = uniqueStacks.size();
 	}
 
-	private void addFutureActiveBranch(int resumeInsnIndex, ControlFlowBranchData branchData)
+	private void ensureInsnIndexes(int count)
 	{
-		List<ControlFlowBranchData> branches = insnIndex2ActiveBranches.get(resumeInsnIndex);
+		while (insnIndex2ActiveBranches.size() < count) insnIndex2ActiveBranches.add(new ArrayList<ControlFlowBranchData>());
 
-		if (branches == null)
-		{
-			branches = new ArrayList<ControlFlowBranchData>();
-			insnIndex2ActiveBranches.put(resumeInsnIndex, branches);
-		}
+		if (usedInsnIndexes < count) usedInsnIndexes = count;
+	}
 
-		branches.add(branchData);
+	private void addFutureActiveBranch(int resumeInsnIndex, ControlFlowBranchData branchData)
+	{
+		ensureInsnIndexes(resumeInsnIndex + 1);
+
+		insnIndex2ActiveBranches.get(resumeInsnIndex).add(branchData);
 	}
 
 	public void startNewControlFlowBranch(int jumpTarget, boolean suspendCurrentBranch)
@@ -208,15 +224,8 @@ public class InterpretationContext
 
 			newBranch.resumeInsnIndex = activeBranch.nextInsnIndex;
 
-			// fresh copy of the full expression stack from the currently active branch
-			// we need to make "deep" copies here because lists are mutable
-
-			for (LinkedList<Expression> stack : activeBranch.fullExprStacks)
-			{
-				LinkedList<Expression> stackCopy = new LinkedList<Expression>(stack);
-
-				newBranch.fullExprStacks.add(stackCopy);
-			}
+			// the new branch shares all expression stacks with the currently active branch (they are immutable)
+			newBranch.fullExprStacks.addAll(activeBranch.fullExprStacks);
 
 			newBranch.curStackNum = 0;
 
@@ -236,15 +245,8 @@ public class InterpretationContext
 
 		newBranch.resumeInsnIndex = startInsnIndex;
 
-		// fresh copy of the full expression stack from the currently active branch
-		// we need to make "deep" copies here because lists are mutable
-
-		for (LinkedList<Expression> stack : activeBranch.fullExprStacks)
-		{
-			LinkedList<Expression> stackCopy = new LinkedList<Expression>(stack);
-
-			newBranch.fullExprStacks.add(stackCopy);
-		}
+		// expression stacks of the currently active branch are shared
+		newBranch.fullExprStacks.addAll(activeBranch.fullExprStacks);
 
 		newBranch.curStackNum = 0;
 
@@ -255,10 +257,12 @@ public class InterpretationContext
 	{
 		// load all active branches for the current instruction and merge them
 
-		List<ControlFlowBranchData> scheduledBranches = insnIndex2ActiveBranches.remove(activeBranch.curInsnIndex);
-
 		// nothing will happen (i.e., active branches will not change)
-		if ((scheduledBranches == null) || scheduledBranches.isEmpty()) return;
+		if (activeBranch.curInsnIndex >= usedInsnIndexes) return;
+
+		List<ControlFlowBranchData> scheduledBranches = insnIndex2ActiveBranches.get(activeBranch.curInsnIndex);
+
+		if (scheduledBranches.isEmpty()) return;
 
 		// if there are multiple branches scheduled to become active at the current bytecode position then we merge them all
 
@@ -274,32 +278,30 @@ public class InterpretationContext
 		// when multiple control-flow branches are merged/joined, we just make a union of their lists of expression stacks
 		// if multiple variants of an expression stack in the new active branch have the same content, they are merged in order to avoid blow-up
 
+		Set<ExpressionStack> joinedStacks = new HashSet<ExpressionStack>();
+
 		for (ControlFlowBranchData cfbd : scheduledBranches)
 		{
-			for (LinkedList<Expression> stack : cfbd.fullExprStacks)
+			for (ExpressionStack stack : cfbd.fullExprStacks)
 			{
 				// ignore empty stacks (if there are some non-empty)
 				if (stack.isEmpty()) continue;
 
-				if ( ! newActiveBranch.fullExprStacks.contains(stack) )
-				{
-					// we need to make "deep" copies here because lists are mutable
-
-					LinkedList<Expression> stackCopy = new LinkedList<Expression>(stack);
-						
-					newActiveBranch.fullExprStacks.add(stackCopy);
-				}
+				if (joinedStacks.add(stack)) newActiveBranch.fullExprStacks.add(stack);
 			}
 		}
 
 		// make sure at least one stack exists
 		if (newActiveBranch.fullExprStacks.isEmpty())
 		{
-			newActiveBranch.fullExprStacks.add(new LinkedList<Expression>());
+			newActiveBranch.fullExprStacks.add(ExpressionStack.EMPTY);
 		}
 
 		newActiveBranch.curStackNum = 0;
 
+		// the list is reused later (for another method)
+		scheduledBranches.clear();
+
 		// set the new active branch
 		activeBranch = newActiveBranch;
 	}
@@ -24,7 +24,8 @@ public class LocalVarExpression extends Expression
 	public boolean isMthParam;
 
 	
-	public LocalVarExpression(int slot, String name, String type, boolean param)
+	// instances are created only by the factory (see ExpressionFactory)
+	LocalVarExpression(int slot, String name, String type, boolean param)
 	{
 		this.varSlot = slot;
 		this.varName = name;
@@ -37,9 +38,14 @@ public class LocalVarExpression extends Expression
 	{
 		if (obj == null) return false;
 		
+		if (obj == this) return true;
+		
 		if ( ! (obj instanceof LocalVarExpression) ) return false;
 		
 		LocalVarExpression other = (LocalVarExpression) obj;
+
+		// structurally equal expressions share the canonical instance (identity was checked above)
+		if (this.isDistinctCanonical(other)) return false;
 		
 		if (this.varSlot != other.varSlot) return false;
 		if ( ! this.varName.equals(other.varName) ) return false;
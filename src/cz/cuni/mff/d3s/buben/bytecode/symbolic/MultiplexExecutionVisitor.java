@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.bytecode.symbolic;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+
+
+/**
+ * Forwards every callback to all registered visitors, so that multiple analyses can share a single symbolic interpretation of each method.
+ * Visitors are notified in the order of their registration.
+ */
+public class MultiplexExecutionVisitor implements ExecutionVisitor
+{
+	private List<ExecutionVisitor> visitors;
+	
+	
+	public MultiplexExecutionVisitor()
+	{
+		this.visitors = new ArrayList<ExecutionVisitor>();
+	}
+	
+	public void addVisitor(ExecutionVisitor ev)
+	{
+		visitors.add(ev);
+	}
+	
+	public void visitArrayLoadInsn(ProgramPoint pp, Expression arrayObj, String arrayClassName, Expression elementIndex, String elementType)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitArrayLoadInsn(pp, arrayObj, arrayClassName, elementIndex, elementType);
+	}
+	
+	public void visitArrayStoreInsn(ProgramPoint pp, Expression arrayObj, String arrayClassName, Expression elementIndex, String elementType, Expression newValue)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitArrayStoreInsn(pp, arrayObj, arrayClassName, elementIndex, elementType, newValue);
+	}
+
+	public void visitGetInsn(ProgramPoint pp, Expression obj, String className, String fieldName, String fieldType, boolean isStatic)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitGetInsn(pp, obj, className, fieldName, fieldType, isStatic);
+	}
+
+	public void visitInvokeInsn(ProgramPoint pp, String methodSig, boolean isStaticCall, Expression obj, List<Expression> arguments)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitInvokeInsn(pp, methodSig, isStaticCall, obj, arguments);
+	}
+	
+	public void visitLoadInsn(ProgramPoint pp, LocalVarExpression localVar)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitLoadInsn(pp, localVar);
+	}
+	
+	public void visitNewObjectInsn(ProgramPoint pp, NewObjectExpression newObj)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitNewObjectInsn(pp, newObj);
+	}
+		
+	public void visitNewArrayInsn(ProgramPoint pp, NewArrayExpression newArray)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitNewArrayInsn(pp, newArray);
+	}
+	
+	public void visitPutInsn(ProgramPoint pp, Expression obj, String className, String fieldName, String fieldType, boolean isStatic, Expression newValue)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitPutInsn(pp, obj, className, fieldName, fieldType, isStatic, newValue);
+	}
+	
+	public void visitReturnInsn(ProgramPoint pp, Expression retValue)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitReturnInsn(pp, retValue);
+	}
+	
+	public void visitStoreInsn(ProgramPoint pp, LocalVarExpression localVar, Expression newValue)
+	{
+		for (ExecutionVisitor ev : visitors) ev.visitStoreInsn(pp, localVar, newValue);
+	}
+}
@@ -34,7 +34,7 @@ public class NewArrayExpression extends Expression
 		this.arrayClassName = acname;
 		this.allocSite = as;
 
-		this.arrayLength = new ConstantExpression(new Integer(0));
+		this.arrayLength = ExpressionFactory.createConstant(new Integer(0));
 	}
 	
 	public boolean equals(Object obj)
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.bytecode.symbolic;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+
+
+/**
+ * Stores all callbacks received during interpretation of a single method, so that they can be replayed later on a different thread.
+ * This allows worker threads to interpret methods in parallel, while the (not thread-safe) collectors receive callbacks sequentially in a deterministic order.
+ */
+public class RecordingExecutionVisitor implements ExecutionVisitor
+{
+	private List<VisitEvent> events;
+	
+	
+	public RecordingExecutionVisitor()
+	{
+		this.events = new ArrayList<VisitEvent>();
+	}
+	
+	public void replay(ExecutionVisitor ev)
+	{
+		for (VisitEvent e : events) e.dispatch(ev);
+	}
+	
+	public void visitArrayLoadInsn(final ProgramPoint pp, final Expression arrayObj, final String arrayClassName, final Expression elementIndex, final String elementType)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitArrayLoadInsn(pp, arrayObj, arrayClassName, elementIndex, elementType); }
+		});
+	}
+	
+	public void visitArrayStoreInsn(final ProgramPoint pp, final Expression arrayObj, final String arrayClassName, final Expression elementIndex, final String elementType, final Expression newValue)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitArrayStoreInsn(pp, arrayObj, arrayClassName, elementIndex, elementType, newValue); }
+		});
+	}
+
+	public void visitGetInsn(final ProgramPoint pp, final Expression obj, final String className, final String fieldName, final String fieldType, final boolean isStatic)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitGetInsn(pp, obj, className, fieldName, fieldType, isStatic); }
+		});
+	}
+
+	public void visitInvokeInsn(final ProgramPoint pp, final String methodSig, final boolean isStaticCall, final Expression obj, final List<Expression> arguments)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitInvokeInsn(pp, methodSig, isStaticCall, obj, arguments); }
+		});
+	}
+	
+	public void visitLoadInsn(final ProgramPoint pp, final LocalVarExpression localVar)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitLoadInsn(pp, localVar); }
+		});
+	}
+	
+	public void visitNewObjectInsn(final ProgramPoint pp, final NewObjectExpression newObj)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitNewObjectInsn(pp, newObj); }
+		});
+	}
+		
+	public void visitNewArrayInsn(final ProgramPoint pp, final NewArrayExpression newArray)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitNewArrayInsn(pp, newArray); }
+		});
+	}
+	
+	public void visitPutInsn(final ProgramPoint pp, final Expression obj, final String className, final String fieldName, final String fieldType, final boolean isStatic, final Expression newValue)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitPutInsn(pp, obj, className, fieldName, fieldType, isStatic, newValue); }
+		});
+	}
+	
+	public void visitReturnInsn(final ProgramPoint pp, final Expression retValue)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitReturnInsn(pp, retValue); }
+		});
+	}
+	
+	public void visitStoreInsn(final ProgramPoint pp, final LocalVarExpression localVar, final Expression newValue)
+	{
+		events.add(new VisitEvent() 
+		{
+			void dispatch(ExecutionVisitor ev) { ev.visitStoreInsn(pp, localVar, newValue); }
+		});
+	}
+	
+	
+	static abstract class VisitEvent
+	{
+		abstract void dispatch(ExecutionVisitor ev);
+	}
+}
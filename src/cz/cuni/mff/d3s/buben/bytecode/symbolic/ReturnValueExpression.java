@@ -21,7 +21,8 @@ public class ReturnValueExpression extends Expression
 	// method from which the program execution returned
 	public String methodSig;
 	
-	public ReturnValueExpression(String mthSig)
+	// instances are created only by the factory (see ExpressionFactory)
+	ReturnValueExpression(String mthSig)
 	{
 		this.methodSig = mthSig;
 	}
@@ -30,9 +31,14 @@ public class ReturnValueExpression extends Expression
 	{
 		if (obj == null) return false;
 		
+		if (obj == this) return true;
+		
 		if ( ! (obj instanceof ReturnValueExpression) ) return false;
 		
 		ReturnValueExpression other = (ReturnValueExpression) obj;
+
+		// structurally equal expressions share the canonical instance (identity was checked above)
+		if (this.isDistinctCanonical(other)) return false;
 		
 		if ( ! this.methodSig.equals(other.methodSig) ) return false;
 		
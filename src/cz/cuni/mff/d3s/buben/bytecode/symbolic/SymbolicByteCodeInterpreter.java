@@ -19,6 +19,13 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.CGNode;
@@ -34,6 +41,19 @@ import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 
 public class SymbolicByteCodeInterpreter
 {
+	// how many methods per worker thread can be interpreted (or wait for replay) at the same time
+	private static final int INFLIGHT_TASKS_PER_THREAD = 4;
+
+	// each worker thread uses its own interpretation context
+	private static ThreadLocal<InterpretationContext> threadIptCtx = new ThreadLocal<InterpretationContext>()
+	{
+		protected InterpretationContext initialValue()
+		{
+			return new InterpretationContext();
+		}
+	};
+
+
 	public static void processReachableMethods(StaticAnalysisContext staCtx, ExecutionVisitor execVisitor, List<String> methodSigPrefixes) throws Exception
 	{
 		if (Configuration.DEBUG)
@@ -41,10 +61,11 @@ public class SymbolicByteCodeInterpreter
 			System.out.println("symbolic bytecode analysis (interpretation): start");
 		}
 			
-		InterpretationContext iptCtx = new InterpretationContext();
-		
 		// method signatures
 		Set<String> processedMethods = new HashSet<String>();
+
+		// methods to be interpreted (in the order of call graph nodes)
+		List<IBytecodeMethod> targetMethods = new ArrayList<IBytecodeMethod>();
 		
 		// process methods reachable in the call graph
 		for (Iterator<CGNode> cgnIt = staCtx.clGraph.iterator(); cgnIt.hasNext(); )
@@ -67,15 +88,29 @@ public class SymbolicByteCodeInterpreter
 			if (processedMethods.contains(mthSig)) continue;
 			processedMethods.add(mthSig);
 			
-			iptCtx.reset();
+			targetMethods.add(bcMth);
+		}
+
+		if (Configuration.analysisThreads > 1)
+		{
+			processMethodsParallel(staCtx, execVisitor, targetMethods);
+		}
+		else
+		{
+			InterpretationContext iptCtx = new InterpretationContext();
 			
-			if (Configuration.DEBUG)
+			for (IBytecodeMethod bcMth : targetMethods)
 			{
-				System.out.println("current method signature: " + mthSig);
-			}
+				iptCtx.reset(bcMth.getInstructions().length);
+			
+				if (Configuration.DEBUG)
+				{
+					System.out.println("current method signature: " + bcMth.getSignature());
+				}
 			
-			// loop through all Shrike bytecode instructions and process each relevant one (some are ignored)
-			ExecutionSimulator.processMethod(bcMth, iptCtx, execVisitor, staCtx);
+				// loop through all Shrike bytecode instructions and process each relevant one (some are ignored)
+				ExecutionSimulator.processMethod(bcMth, iptCtx, execVisitor, staCtx);
+			}
 		}
 
 		if (Configuration.DEBUG)
@@ -83,5 +118,86 @@ public class SymbolicByteCodeInterpreter
 			System.out.println("symbolic bytecode analysis (interpretation): finish");
 			System.out.println("");
 		}		
-	}	
+	}
+
+	private static void processMethodsParallel(StaticAnalysisContext staCtx, ExecutionVisitor execVisitor, List<IBytecodeMethod> targetMethods) throws Exception
+	{
+		ForkJoinPool workers = new ForkJoinPool(Configuration.analysisThreads);
+
+		try
+		{
+			// methods are interpreted independently by worker threads, and callbacks for each method are recorded
+			// only a limited number of methods is in flight at any time, so that we do not keep recorded callbacks for the whole program in memory
+
+			int maxInFlight = Configuration.analysisThreads * INFLIGHT_TASKS_PER_THREAD;
+
+			Deque<Future<RecordingExecutionVisitor>> results = new ArrayDeque<Future<RecordingExecutionVisitor>>();
+
+			Iterator<IBytecodeMethod> mthIt = targetMethods.iterator();
+
+			while (mthIt.hasNext() && (results.size() < maxInFlight))
+			{
+				results.add(workers.submit(new MethodInterpretationTask(mthIt.next(), staCtx)));
+			}
+
+			// recorded callbacks are replayed in the original order of methods, so that the collected data (and their ordering) are the same as in the case of sequential processing
+			
+			while ( ! results.isEmpty() )
+			{
+				Future<RecordingExecutionVisitor> res = results.removeFirst();
+
+				RecordingExecutionVisitor mthRecorder;
+
+				try
+				{
+					mthRecorder = res.get();
+				}
+				catch (ExecutionException ex)
+				{
+					if (ex.getCause() instanceof Exception) throw (Exception) ex.getCause();
+					throw ex;
+				}
+
+				mthRecorder.replay(execVisitor);
+
+				// the slot of the replayed method is given to the next one
+				if (mthIt.hasNext()) results.add(workers.submit(new MethodInterpretationTask(mthIt.next(), staCtx)));
+			}
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+	}
+
+
+	static class MethodInterpretationTask implements Callable<RecordingExecutionVisitor>
+	{
+		private IBytecodeMethod bcMth;
+		private StaticAnalysisContext staCtx;
+
+		public MethodInterpretationTask(IBytecodeMethod mth, StaticAnalysisContext ctx)
+		{
+			this.bcMth = mth;
+			this.staCtx = ctx;
+		}
+
+		public RecordingExecutionVisitor call() throws Exception
+		{
+			InterpretationContext iptCtx = threadIptCtx.get();
+
+			iptCtx.reset(bcMth.getInstructions().length);
+
+			if (Configuration.DEBUG)
+			{
+				System.out.println("current method signature: " + bcMth.getSignature());
+			}
+
+			RecordingExecutionVisitor mthRecorder = new RecordingExecutionVisitor();
+
+			ExecutionSimulator.processMethod(bcMth, iptCtx, mthRecorder, staCtx);
+
+			return mthRecorder;
+		}
+	}
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.common;
+
+import java.util.List;
+
+
+/**
+ * Set of prefixes (e.g., of method signatures or class names) compiled into a trie.
+ * Checking whether a given string starts with some of the prefixes takes time proportional to the length of the matching prefix, independently of the number of prefixes.
+ * The trie is not modified after construction, and therefore it can be used concurrently by multiple threads.
+ */
+public class PrefixMatcher
+{
+	private Node root;
+
+
+	public PrefixMatcher(List<String> prefixes)
+	{
+		root = new Node();
+
+		if (prefixes == null) return;
+
+		for (String pf : prefixes) addPrefix(pf);
+	}
+
+	private void addPrefix(String prefix)
+	{
+		Node curNode = root;
+
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			// all strings with the shorter prefix match already
+			if (curNode.terminal) return;
+
+			curNode = curNode.getOrCreateChild(prefix.charAt(i));
+		}
+
+		curNode.terminal = true;
+
+		// longer prefixes are not needed anymore
+		curNode.labels = new char[0];
+		curNode.children = new Node[0];
+	}
+
+	public boolean matches(String str)
+	{
+		Node curNode = root;
+
+		if (curNode.terminal) return true;
+
+		for (int i = 0; i < str.length(); i++)
+		{
+			curNode = curNode.getChild(str.charAt(i));
+
+			if (curNode == null) return false;
+
+			if (curNode.terminal) return true;
+		}
+
+		return false;
+	}
+
+
+	static class Node
+	{
+		// whether some prefix ends in this node
+		public boolean terminal;
+
+		// outgoing edges (the number of children is typically very small)
+		public char[] labels;
+		public Node[] children;
+
+
+		public Node()
+		{
+			this.terminal = false;
+			this.labels = new char[0];
+			this.children = new Node[0];
+		}
+
+		public Node getChild(char c)
+		{
+			for (int i = 0; i < labels.length; i++)
+			{
+				if (labels[i] == c) return children[i];
+			}
+
+			return null;
+		}
+
+		public Node getOrCreateChild(char c)
+		{
+			Node child = getChild(c);
+
+			if (child != null) return child;
+
+			child = new Node();
+
+			char[] newLabels = new char[labels.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+
+			System.arraycopy(labels, 0, newLabels, 0, labels.length);
+			System.arraycopy(children, 0, newChildren, 0, children.length);
+
+			newLabels[labels.length] = c;
+			newChildren[children.length] = child;
+
+			labels = newLabels;
+			children = newChildren;
+
+			return child;
+		}
+	}
+}
@@ -17,7 +17,9 @@ package cz.cuni.mff.d3s.buben.common;
 
 public class ProgramPoint implements Comparable<ProgramPoint>
 {
+	// the signature is interned in the global table
 	public String methodSig;
+	public int methodID;
 	public int insnIndex;
 	public int insnPos;
 	
@@ -26,7 +28,8 @@ public class ProgramPoint implements Comparable<ProgramPoint>
 	
 	public ProgramPoint(String mthSig, int insnIndex, int insnPos)
 	{
-		this.methodSig = mthSig;
+		this.methodID = SignatureTable.getID(mthSig);
+		this.methodSig = SignatureTable.getSignature(this.methodID);
 		this.insnIndex = insnIndex;
 		this.insnPos = insnPos;
 
@@ -35,13 +38,16 @@ public class ProgramPoint implements Comparable<ProgramPoint>
 	
 	public boolean equals(Object obj)
 	{
+		// program points are mostly canonical (see ProgramPointTable)
+		if (obj == this) return true;
+
 		if (obj == null) return false;
 		
 		if ( ! (obj instanceof ProgramPoint) ) return false;
 		
 		ProgramPoint other = (ProgramPoint) obj;
 		
-		if ( ! this.methodSig.equals(other.methodSig) ) return false;
+		if (this.methodID != other.methodID) return false;
 		if (this.insnIndex != other.insnIndex) return false;
 		if (this.insnPos != other.insnPos) return false;
 		
@@ -66,8 +72,12 @@ public class ProgramPoint implements Comparable<ProgramPoint>
 		
 		int cmpRes = 0;
 		
-		cmpRes = this.methodSig.compareTo(other.methodSig);
-		if (cmpRes != 0) return cmpRes;
+		// we keep the ordering by signatures (not by IDs that depend on the order of processing)
+		if (this.methodID != other.methodID)
+		{
+			cmpRes = this.methodSig.compareTo(other.methodSig);
+			if (cmpRes != 0) return cmpRes;
+		}
 
 		if (this.insnIndex < other.insnIndex) return -1;
 		else if (this.insnIndex > other.insnIndex) return 1;
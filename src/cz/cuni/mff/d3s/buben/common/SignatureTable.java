@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.common;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import cz.cuni.mff.d3s.buben.Configuration;
+import cz.cuni.mff.d3s.buben.Utils;
+
+
+/**
+ * Global table of method signatures.
+ * Each signature is stored only once and gets a dense integer ID (0, 1, 2, ...) that analyses can use as a cheap key.
+ * Classification of the method (library, application, external access, native, Java standard library) is computed at most once for each signature.
+ * The table may be accessed concurrently by multiple threads.
+ */
+public class SignatureTable
+{
+	private static final int FLAG_CLASSIFIED = 1;
+	private static final int FLAG_LIBRARY = 2;
+	private static final int FLAG_APPLICATION = 4;
+	private static final int FLAG_EXTACCESS = 8;
+	private static final int FLAG_JDK = 16;
+	private static final int FLAG_NATIVE = 32;
+
+	private static ConcurrentHashMap<String, Entry> sig2Entry;
+
+	// entries indexed by their IDs (append-only)
+	// the array is replaced by a bigger copy when it is full, and readers use whatever array they see without locking
+	private static volatile Entry[] id2Entry;
+
+	private static volatile int entryCount;
+
+	// guards adding of new entries
+	private static final Object insertLock = new Object();
+
+	static
+	{
+		sig2Entry = new ConcurrentHashMap<String, Entry>();
+		id2Entry = new Entry[1024];
+		entryCount = 0;
+	}
+
+
+	public static int getID(String methodSig)
+	{
+		return getEntry(methodSig).id;
+	}
+
+	public static String intern(String methodSig)
+	{
+		return getEntry(methodSig).signature;
+	}
+
+	public static String getSignature(int mthID)
+	{
+		return getEntry(mthID).signature;
+	}
+
+	public static int size()
+	{
+		return entryCount;
+	}
+
+	private static Entry getEntry(String methodSig)
+	{
+		Entry ent = sig2Entry.get(methodSig);
+
+		if (ent != null) return ent;
+
+		synchronized (insertLock)
+		{
+			// another thread may have added the signature in the meantime
+			ent = sig2Entry.get(methodSig);
+
+			if (ent == null)
+			{
+				int newID = entryCount;
+
+				Entry[] entries = id2Entry;
+
+				if (newID == entries.length)
+				{
+					Entry[] newEntries = new Entry[2 * entries.length];
+					System.arraycopy(entries, 0, newEntries, 0, entries.length);
+
+					id2Entry = newEntries;
+					entries = newEntries;
+				}
+
+				ent = new Entry(methodSig, newID);
+
+				// the entry is stored in the array before its ID becomes visible to other threads (through the map)
+				entries[newID] = ent;
+
+				entryCount = newID + 1;
+
+				sig2Entry.put(methodSig, ent);
+			}
+		}
+
+		return ent;
+	}
+
+	private static Entry getEntry(int mthID)
+	{
+		// any ID obtained from this table refers to an entry that is already present in the current array (copies include all older entries)
+		return id2Entry[mthID];
+	}
+
+	private static int getFlags(Entry ent)
+	{
+		int flags = ent.flags;
+
+		if ((flags & FLAG_CLASSIFIED) != 0) return flags;
+
+		// the result does not depend on the thread, so we do not mind if two threads compute it concurrently
+
+		flags = FLAG_CLASSIFIED;
+
+		boolean isLibMth = Configuration.libraryMethodMatcher.matches(ent.signature);
+
+		if (isLibMth) flags |= FLAG_LIBRARY;
+
+		// library methods are never considered to be part of the application
+		if (( ! isLibMth ) && Configuration.applicationClassMatcher.matches(ent.signature)) flags |= FLAG_APPLICATION;
+
+		if (Configuration.extaccessMethodMatcher.matches(ent.signature)) flags |= FLAG_EXTACCESS;
+
+		if (Utils.isJavaStandardLibraryMethod(ent.signature)) flags |= FLAG_JDK;
+
+		synchronized (ent)
+		{
+			// keep the native flag that might have been set already
+			ent.flags = ent.flags | flags;
+
+			return ent.flags;
+		}
+	}
+
+	public static boolean isLibraryMethod(int mthID)
+	{
+		return (getFlags(getEntry(mthID)) & FLAG_LIBRARY) != 0;
+	}
+
+	public static boolean isApplicationMethod(int mthID)
+	{
+		return (getFlags(getEntry(mthID)) & FLAG_APPLICATION) != 0;
+	}
+
+	public static boolean isExternalAccessMethod(int mthID)
+	{
+		return (getFlags(getEntry(mthID)) & FLAG_EXTACCESS) != 0;
+	}
+
+	public static boolean isJavaStandardLibraryMethod(int mthID)
+	{
+		return (getFlags(getEntry(mthID)) & FLAG_JDK) != 0;
+	}
+
+	public static boolean isNativeMethod(int mthID)
+	{
+		return (getEntry(mthID).flags & FLAG_NATIVE) != 0;
+	}
+
+	public static void markNativeMethod(int mthID)
+	{
+		Entry ent = getEntry(mthID);
+
+		synchronized (ent)
+		{
+			ent.flags = ent.flags | FLAG_NATIVE;
+		}
+	}
+
+
+	static class Entry
+	{
+		public final String signature;
+		public final int id;
+
+		// classification bits (computed lazily)
+		public volatile int flags;
+
+
+		public Entry(String sig, int id)
+		{
+			this.signature = sig;
+			this.id = id;
+			this.flags = 0;
+		}
+	}
+}
@@ -26,6 +26,13 @@ import java.util.TreeSet;
 import java.util.Stack;
 import java.util.Iterator;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.FileInputStream;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.io.FileOutputStream;
+
 import com.sun.jdi.VirtualMachine;
 import com.sun.jdi.Location;
 import com.sun.jdi.Method;
@@ -57,8 +64,12 @@ import com.sun.jdi.request.ExceptionRequest;
 
 import cz.cuni.mff.d3s.buben.Configuration;
 import cz.cuni.mff.d3s.buben.Utils;
+import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.SpecialExpression;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
 import cz.cuni.mff.d3s.buben.jdi.JDIUtils;
 import cz.cuni.mff.d3s.buben.analysis.SymbolicMethodLocationsCollector;
 import cz.cuni.mff.d3s.buben.wala.WALAUtils;
@@ -67,6 +78,7 @@ import cz.cuni.mff.d3s.buben.wala.WALAUtils;
 public class DynamicInputOutputCollector
 {
 	// data structures for recorded method call results and side effects
+	// results of all recording sessions are eventually merged into these maps
 	
 	// map from method signature to a list of objects that contain return values 
 	protected static Map<String, Set<CallResultInfo>> mthSig2CallResult;
@@ -83,17 +95,39 @@ public class DynamicInputOutputCollector
 	// map from method signatures to (reference, hash code) pairs collected at method entry
 	protected static Map<String, Map<Long, Integer>> mthSig2EntryArraysHash;
 
+	// the maps above are the content of this object (used by the default recording session)
+	protected static RecordedData globalData;
+
+	// map from the full field name to names of classes with intercepted methods that write the field
+	// null means that the set of relevant fields is not known (watchpoints are created for all fields)
+	protected static Map<String, Set<String>> watchedField2WriterClasses = null;
+
 	static
 	{
-		mthSig2CallResult = new LinkedHashMap<String, Set<CallResultInfo>>();
-		mthSig2FieldWrites = new LinkedHashMap<String, Set<FieldWriteInfo>>();
-		mthSig2ArrayWrites = new LinkedHashMap<String, Set<ArrayWriteInfo>>();
+		globalData = new RecordedData();
+
+		mthSig2CallResult = globalData.mthSig2CallResult;
+		mthSig2FieldWrites = globalData.mthSig2FieldWrites;
+		mthSig2ArrayWrites = globalData.mthSig2ArrayWrites;
 
-		mthSig2EntryArraysFull = new LinkedHashMap<String, Map<Long, List<Expression>>>();
-		mthSig2EntryArraysHash = new LinkedHashMap<String, Map<Long, Integer>>();
+		mthSig2EntryArraysFull = globalData.mthSig2EntryArraysFull;
+		mthSig2EntryArraysHash = globalData.mthSig2EntryArraysHash;
 	}
 	
 	
+	public static void prepareFieldWatchpoints(StaticAnalysisContext staCtx, Set<String> interceptionTargetMethods) throws Exception
+	{
+		// we record field writes performed directly by intercepted methods (see the handler for watchpoint events)
+		// therefore it is sufficient to watch fields that are written by some intercepted method with bytecode
+		watchedField2WriterClasses = WALAUtils.collectFieldsWrittenByMethods(staCtx, interceptionTargetMethods);
+
+		if (Configuration.DEBUG)
+		{
+			if (watchedField2WriterClasses != null) System.out.println("[DEBUG] number of watched fields: " + watchedField2WriterClasses.size());
+			else System.out.println("[DEBUG] watching all fields");
+		}
+	}
+
 	public static Set<String> getInternallyTrackedMethods()
 	{
 		Set<String> methodSigs = new HashSet<String>();
@@ -102,14 +136,24 @@ public class DynamicInputOutputCollector
 	}
 
 
-	public static void collectInputsFieldUpdatesForMethods(Process suspendedProc, String mainClassName, Set<String> interceptionTargetMethods, Set<String> nativeMethods) throws Exception
+	public static RecordedData collectInputsOutputsForMethods(VirtualMachine jdiVM, String mainClassName, Set<String> interceptionTargetMethods, Set<String> nativeMethods) throws Exception
+	{
+		// the recording session has its own data, which must be merged later (see "mergeRecordedData")
+		// therefore many sessions (each connected to a different JVM) can run concurrently
+		RecordedData sessionData = new RecordedData();
+
+		collectForMethods(jdiVM, mainClassName, interceptionTargetMethods, nativeMethods, true, true, sessionData);
+
+		return sessionData;
+	}
+
+	private static void collectForMethods(VirtualMachine jdiVM, String mainClassName, Set<String> interceptionTargetMethods, Set<String> nativeMethods, boolean recordInputsFieldUpdates, boolean recordOutputsArrayUpdates, RecordedData data) throws Exception
 	{
 		long timeStart = System.currentTimeMillis();
 
-		// connect debugger (JDI) to the JVM instance that is running the given program/test (note that the JVM is right now suspended)
-		VirtualMachine jdiVM = JDIUtils.connectToJVM();
+		// the debugger (JDI) is connected to the JVM instance that is running the given program/test (note that the JVM is right now suspended)
 
-		// for every method in the given set, we must intercept the program execution (running test) at the method entry (first instruction)
+		// for every method in the given set, we must intercept the program execution (running test) at the method entry (first instruction) and at method exit
 		// native methods are handled in a bit special way: intercepting the program execution right before invocation (first instruction is not accessible to us)
 		// our approach: now set all breakpoints that we can (for already loaded classes) and create a list of breakpoints that we will define later (when each respective class is actually loaded)
 		
@@ -117,32 +161,48 @@ public class DynamicInputOutputCollector
 		// "rem" stands for "remaining"
 		Map<String, List<ProgramPoint>> remClsName2InvBreakLocs = new HashMap<String, List<ProgramPoint>>();
 		
-		for (String itMthSig : interceptionTargetMethods)
+		// breakpoints at entries of target methods and field watchpoints are needed only for recording of inputs and field updates
+		if (recordInputsFieldUpdates)
 		{
-			List<ProgramPoint> itMthInvokeLocs = SymbolicMethodLocationsCollector.getInvokeLocationsForMethod(itMthSig);
-
-			// native method and abstracted methods do not have any bytecode
-			if ( ( ! nativeMethods.contains(itMthSig) ) && ( ! WALAUtils.isMethodAbstractedInXML(itMthSig) ) ) 
-			{
-				// breakpoints are disabled now -> we will enable them at the entry to the procedure "main"
-				JDIUtils.setMethodEntryBreakpoint(jdiVM, Utils.extractClassName(itMthSig), Utils.extractPlainMethodName(itMthSig), Utils.extractMethodParamRetDescriptor(itMthSig), false);
-			}
-			else
+			for (String itMthSig : interceptionTargetMethods)
 			{
-				// breakpoints are disabled now -> we will enable them at the entry to the procedure "main"
-				Map<String, List<ProgramPoint>> itMthRemCN2InvBL = JDIUtils.setMethodInvokeBreakpoints(jdiVM, itMthInvokeLocs, false);
+				List<ProgramPoint> itMthInvokeLocs = SymbolicMethodLocationsCollector.getInvokeLocationsForMethod(itMthSig);
+
+				// native method and abstracted methods do not have any bytecode
+				if ( ( ! nativeMethods.contains(itMthSig) ) && ( ! WALAUtils.isMethodAbstractedInXML(itMthSig) ) ) 
+				{
+					// breakpoints are disabled now -> we will enable them at the entry to the procedure "main"
+					JDIUtils.setMethodEntryBreakpoint(jdiVM, Utils.extractClassName(itMthSig), Utils.extractPlainMethodName(itMthSig), Utils.extractMethodParamRetDescriptor(itMthSig), false);
+				}
+				else
+				{
+					// breakpoints are disabled now -> we will enable them at the entry to the procedure "main"
+					Map<String, List<ProgramPoint>> itMthRemCN2InvBL = JDIUtils.setMethodInvokeBreakpoints(jdiVM, itMthInvokeLocs, false);
 			
-				// save the remaining breakpoint locations at method invoke
-				addRemainingBreakpointLocationsForInterceptedMethod(remClsName2InvBreakLocs, itMthRemCN2InvBL);
+					// save the remaining breakpoint locations at method invoke
+					addRemainingBreakpointLocationsForInterceptedMethod(remClsName2InvBreakLocs, itMthRemCN2InvBL);
+				}
 			}
+
+			// create breakpoints at field writes in already loaded classes
+			// register modification watchpoints for relevant fields of every class
+			JDIUtils.createInitialFieldWriteBreakpoints(jdiVM, watchedField2WriterClasses);
+		}
+
+		// names of classes where method exits must be monitored
+		Set<String> exitMonitoredClassNames = new HashSet<String>();
+
+		if (recordOutputsArrayUpdates)
+		{
+			for (String itMthSig : interceptionTargetMethods) exitMonitoredClassNames.add(Utils.extractClassName(itMthSig));
+
+			exitMonitoredClassNames.add(mainClassName);
 		}
 
-		// create breakpoints at field writes in already loaded classes
-		// register modification watchpoints for every field of every class
-		JDIUtils.createInitialFieldWriteBreakpoints(jdiVM);
-		
 		// we must also wait for notifications about JVM termination
+		// the target JVM must not stay suspended at its death (we do not resume threads after this event), so that it can terminate on its own
 		VMDeathRequest vmDeathReq = jdiVM.eventRequestManager().createVMDeathRequest();
+		vmDeathReq.setSuspendPolicy(EventRequest.SUSPEND_NONE);
 		vmDeathReq.enable();
 		
 		// we have to monitor every new loaded class (to properly define breakpoints)
@@ -158,7 +218,7 @@ public class DynamicInputOutputCollector
 			System.out.println("dynamic analysis with interception: start");
 		}
 		
-		// resume the JVM and wait for events (method invocation, field write, etc)
+		// resume the JVM and wait for events (method invocation, field write, method exit/return, exception, etc)
 		
 		EventQueue jdiEvQueue = jdiVM.eventQueue();
 			
@@ -195,26 +255,29 @@ public class DynamicInputOutputCollector
 						JDIUtils.setMethodEntryBreakpoint(jdiVM, mainClassName, "main", "([Ljava/lang/String;)V", true);
 					}
 					
-					// set all breakpoints in the loaded class (method entry, before method invoke)
-						
-					for (String itMthSig : interceptionTargetMethods)
+					if (recordInputsFieldUpdates)
 					{
-						// such methods do not have any bytecode
-						if (nativeMethods.contains(itMthSig) || WALAUtils.isMethodAbstractedInXML(itMthSig)) continue;
+						// set all breakpoints in the loaded class (method entry, before method invoke)
 						
-						if (itMthSig.startsWith(clsName+"."))
+						for (String itMthSig : interceptionTargetMethods)
 						{
-							JDIUtils.setMethodEntryBreakpoint(jdiVM, clsName, Utils.extractPlainMethodName(itMthSig), Utils.extractMethodParamRetDescriptor(itMthSig), curState.isInsideMain());
+							// such methods do not have any bytecode
+							if (nativeMethods.contains(itMthSig) || WALAUtils.isMethodAbstractedInXML(itMthSig)) continue;
+						
+							if (itMthSig.startsWith(clsName+"."))
+							{
+								JDIUtils.setMethodEntryBreakpoint(jdiVM, clsName, Utils.extractPlainMethodName(itMthSig), Utils.extractMethodParamRetDescriptor(itMthSig), curState.isInsideMain());
+							}
 						}
-					}
 		
-					// we do not have to save the remaining breakpoint locations (as there should be none)
+						// we do not have to save the remaining breakpoint locations (as there should be none)
 			
-					List<ProgramPoint> clsInvBreakLocs = remClsName2InvBreakLocs.get(clsName);
-					JDIUtils.setMethodInvokeBreakpoints(jdiVM, clsInvBreakLocs, curState.isInsideMain());
+						List<ProgramPoint> clsInvBreakLocs = remClsName2InvBreakLocs.get(clsName);
+						JDIUtils.setMethodInvokeBreakpoints(jdiVM, clsInvBreakLocs, curState.isInsideMain());
 				
-					// register modification watchpoints for every field of the newly loaded class				
-					JDIUtils.addFieldWriteBreakpoints(jdiVM, clsRT, curState.isInsideMain());
+						// register modification watchpoints for relevant fields of the newly loaded class
+						JDIUtils.addFieldWriteBreakpoints(jdiVM, clsRT, watchedField2WriterClasses, curState.isInsideMain());
+					}
   				}
 				
 				if (ev instanceof BreakpointEvent)
@@ -248,8 +311,22 @@ public class DynamicInputOutputCollector
 						
 						curState.setInsideMain(true);
 	
-						// enable all field modification watchpoints for all threads
-						JDIUtils.enableFieldWriteBreakpoints(jdiVM);
+						if (recordInputsFieldUpdates)
+						{
+							// enable all field modification watchpoints for all threads
+							JDIUtils.enableFieldWriteBreakpoints(jdiVM);
+						}
+
+						if (recordOutputsArrayUpdates)
+						{
+							// enable monitoring of the method exit events
+								// we consider just native methods called directly from application classes (that means we ignore deeply nested calls of native methods)
+								// exits are monitored only in classes that declare some intercepted method and in the main class (to detect exit from "main")
+							JDIUtils.createMethodExitRequests(jdiVM, exitMonitoredClassNames, true);
+	
+							// we also have to monitor exceptions during the execution of intercepted methods (it is another way of method exit)
+							JDIUtils.createExceptionRequests(jdiVM, exitMonitoredClassNames, true);
+						}
 
 						continue;
 					}
@@ -259,7 +336,7 @@ public class DynamicInputOutputCollector
 					{
 						// we are at the entry point of some intercepted method (pure Java)
 
-						String methodSig = JDIUtils.getMethodSignature(bpEv.location().method());
+						String methodSig = SignatureTable.intern(JDIUtils.getMethodSignature(bpEv.location().method()));
 
 						// we are just at the entry of a target method (that we want to intercept)
 						if (interceptionTargetMethods.contains(methodSig))
@@ -294,18 +371,18 @@ public class DynamicInputOutputCollector
 								}
 							}
 
-							Map<Long, List<Expression>> mthEntryArraysFull = mthSig2EntryArraysFull.get(methodSig);
+							Map<Long, List<Expression>> mthEntryArraysFull = data.mthSig2EntryArraysFull.get(methodSig);
 							if (mthEntryArraysFull == null)
 							{
 								mthEntryArraysFull = new HashMap<Long, List<Expression>>();
-								mthSig2EntryArraysFull.put(methodSig, mthEntryArraysFull);
+								data.mthSig2EntryArraysFull.put(methodSig, mthEntryArraysFull);
 							}
 	
-							Map<Long, Integer> mthEntryArraysHash = mthSig2EntryArraysHash.get(methodSig);
+							Map<Long, Integer> mthEntryArraysHash = data.mthSig2EntryArraysHash.get(methodSig);
 							if (mthEntryArraysHash == null)
 							{
 								mthEntryArraysHash = new HashMap<Long, Integer>();
-								mthSig2EntryArraysHash.put(methodSig, mthEntryArraysHash);
+								data.mthSig2EntryArraysHash.put(methodSig, mthEntryArraysHash);
 							}
 
 							Map<Long, List<Expression>> callEntryArraysFull = JDIUtils.saveArraysContentFull(jdiVM, curState.getTrackedArrays(threadID));
@@ -354,7 +431,7 @@ public class DynamicInputOutputCollector
 					
 					Location mwatchLoc = mwatchEv.thread().frame(0).location();
 						
-					String methodSig = JDIUtils.getMethodSignature(mwatchLoc.method());	
+					String methodSig = SignatureTable.intern(JDIUtils.getMethodSignature(mwatchLoc.method()));	
 					
 					// we need to record field writes only in the library methods that access external entities
 					if ( ! interceptionTargetMethods.contains(methodSig) ) continue;
@@ -410,149 +487,21 @@ public class DynamicInputOutputCollector
 						
 					FieldWriteInfo fwInfo = new FieldWriteInfo(className, objectRefID, fieldName, fieldType, isStaticField, newValue);
 						
-					Set<FieldWriteInfo> fwriteInfos = mthSig2FieldWrites.get(methodSig);
+					Set<FieldWriteInfo> fwriteInfos = data.mthSig2FieldWrites.get(methodSig);
 					if (fwriteInfos == null)
 					{
 						fwriteInfos = new HashSet<FieldWriteInfo>();
-						mthSig2FieldWrites.put(methodSig, fwriteInfos);
+						data.mthSig2FieldWrites.put(methodSig, fwriteInfos);
 					}
 						
 					fwriteInfos.add(fwInfo);
 				}
-			}
-			
-			// resume the suspended threads when all the received events are processed
-			if ( ! vmTerminated ) events.resume();
-		}
-		
-		// we do not have to clean (dispose) the JVM instance because it is already terminated (dead, disconnected) if we reached this point
-		// not needed: jdiVM.dispose();
-		
-		if (Configuration.DEBUG)
-		{
-			System.out.println("dynamic analysis with interception: finish");
-			System.out.println("");
-		}
-	}
-
-	public static void collectOutputsArrayUpdatesForMethods(Process suspendedProc, String mainClassName, Set<String> interceptionTargetMethods, Set<String> nativeMethods) throws Exception
-	{
-		long timeStart = System.currentTimeMillis();
-
-		// connect debugger (JDI) to the JVM instance that is running the given program/test (note that the JVM is right now suspended)
-		VirtualMachine jdiVM = JDIUtils.connectToJVM();
-
-		// for every method in the given set, we must intercept the program execution (running test) at method exit
-		
-		// we must also wait for notifications about JVM termination
-		VMDeathRequest vmDeathReq = jdiVM.eventRequestManager().createVMDeathRequest();
-		vmDeathReq.enable();
-		
-		// we have to monitor every new loaded class (to properly define breakpoints)
-		ClassPrepareRequest clsPrepReq = jdiVM.eventRequestManager().createClassPrepareRequest();
-		clsPrepReq.enable();
-
-		boolean vmTerminated = false;
-		
-		RunState curState = new RunState();
-
-		if (Configuration.DEBUG)
-		{
-			System.out.println("dynamic analysis with interception: start");
-		}
-		
-		// resume the JVM and wait for events (method exit/return, exception)
-		
-		EventQueue jdiEvQueue = jdiVM.eventQueue();
-			
-		jdiVM.resume();
-		
-		while ( ! vmTerminated )
-		{
-			// wait for some new events
-			EventSet events = jdiEvQueue.remove();
-	
-			for (Event ev : events)
-			{
-				if ((ev instanceof VMDeathEvent) || (ev instanceof VMDisconnectEvent))
-				{
-					vmTerminated = true;
-					break;
-				}
-				
-				if (ev instanceof ClassPrepareEvent)
-				{
-					ClassPrepareEvent cpEv = (ClassPrepareEvent) ev;
-
-					ReferenceType clsRT = cpEv.referenceType();
-					String clsName = clsRT.name();
-					
-					if (Configuration.DEBUG)
-					{
-						System.out.println("class initialized: name = " + clsName);
-					}
-					
-					if (clsName.equals(mainClassName))
-					{
-						// create breakpoint for entry to the procedure "main"
-						JDIUtils.setMethodEntryBreakpoint(jdiVM, mainClassName, "main", "([Ljava/lang/String;)V", true);
-					}
-					
-					// register modification watchpoints for every field of the newly loaded class				
-					JDIUtils.addFieldWriteBreakpoints(jdiVM, clsRT, curState.isInsideMain());
-  				}
-				
-				if (ev instanceof BreakpointEvent)
-				{
-					BreakpointEvent bpEv = (BreakpointEvent) ev;
-
-					long threadID = bpEv.thread().uniqueID();
-					ThreadReference threadRef = bpEv.thread();
-					
-					if (Configuration.DEBUG)
-					{
-						Location bpLoc = bpEv.location();
-						
-						System.err.println("breakpoint: location = " + JDIUtils.getMethodSignature(bpLoc.method()) + " [idx=" + bpLoc.codeIndex() + "]");
-					}
-					
-					boolean entryToMain = false;
-					
-					if ( ! curState.isInsideMain() )
-					{
-						// check if the breakpoint location is at the entry to "main"						
-						Method bpLocMth = bpEv.location().method();						
-						if (bpLocMth.declaringType().name().equals(mainClassName) && bpLocMth.name().equals("main")) entryToMain = true;
-					}
-					
-					if (entryToMain)
-					{
-						// we must enable all breakpoints at the entry to "main"
-						List<BreakpointRequest> allBpReqs = jdiVM.eventRequestManager().breakpointRequests();
-						for (BreakpointRequest br : allBpReqs) br.enable();
-						
-						curState.setInsideMain(true);
-
-						// enable monitoring of the method exit events
-							// we consider just native methods called directly from application classes (that means we ignore deeply nested calls of native methods)
-						MethodExitRequest mthExitReq = jdiVM.eventRequestManager().createMethodExitRequest();
-						mthExitReq.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
-						mthExitReq.enable();
-	
-						// we also have to monitor exceptions during the execution of intercepted methods (it is another way of method exit)
-						ExceptionRequest excReq = jdiVM.eventRequestManager().createExceptionRequest(null, true, true);
-						excReq.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
-						excReq.enable();
 
-						continue;
-					}
-				}
-				
 				if (ev instanceof MethodExitEvent)
 				{
 					MethodExitEvent mexitEv = (MethodExitEvent) ev;
 
-					String methodSig = JDIUtils.getMethodSignature(mexitEv.method());
+					String methodSig = SignatureTable.intern(JDIUtils.getMethodSignature(mexitEv.method()));
 
 					long threadID = mexitEv.thread().uniqueID();
 					ThreadReference threadRef = mexitEv.thread();
@@ -607,11 +556,11 @@ public class DynamicInputOutputCollector
 							curState.getTrackedArrays(threadID).add(retArray);
 						}
 						
-						Set<CallResultInfo> callrInfos = mthSig2CallResult.get(methodSig);
+						Set<CallResultInfo> callrInfos = data.mthSig2CallResult.get(methodSig);
 						if (callrInfos == null)
 						{
 							callrInfos = new HashSet<CallResultInfo>();
-							mthSig2CallResult.put(methodSig, callrInfos);
+							data.mthSig2CallResult.put(methodSig, callrInfos);
 						}
 					
 						// we have to respect the configured upper bound
@@ -627,8 +576,8 @@ public class DynamicInputOutputCollector
 
 						Map<Long, Integer> callExitArraysHash = JDIUtils.saveArraysContentHash(jdiVM, curState.getTrackedArrays(threadID));
 
-						Map<Long, List<Expression>> mthEntryArraysFull = mthSig2EntryArraysFull.get(methodSig);
-						Map<Long, Integer> mthEntryArraysHash = mthSig2EntryArraysHash.get(methodSig);
+						Map<Long, List<Expression>> mthEntryArraysFull = data.mthSig2EntryArraysFull.get(methodSig);
+						Map<Long, Integer> mthEntryArraysHash = data.mthSig2EntryArraysHash.get(methodSig);
 
 						// we ignore arrays that were not modified at all (when there is the same hash value for entry and exit)
 						for (Iterator<ArrayReference> taIt = curState.getTrackedArrays(threadID).iterator(); taIt.hasNext(); )
@@ -672,11 +621,11 @@ public class DynamicInputOutputCollector
 
 						// record all differences between arrays
 						
-						Set<ArrayWriteInfo> awriteInfos = mthSig2ArrayWrites.get(methodSig);
+						Set<ArrayWriteInfo> awriteInfos = data.mthSig2ArrayWrites.get(methodSig);
 						if (awriteInfos == null)
 						{
 							awriteInfos = new HashSet<ArrayWriteInfo>();
-							mthSig2ArrayWrites.put(methodSig, awriteInfos);
+							data.mthSig2ArrayWrites.put(methodSig, awriteInfos);
 						}
 						
 						awriteInfos.addAll(callArrayWrites);
@@ -734,6 +683,223 @@ public class DynamicInputOutputCollector
 		}
 	}
 	
+	public static void writeAgentSettings(String settingsFilePath, String outputFilePath, String mainClassName, Set<String> interceptionTargetMethods, Set<String> nativeMethods) throws Exception
+	{
+		// settings for the recording agent that runs inside the target program (see the package "dynamic.agent")
+		Writer out = new OutputStreamWriter(new FileOutputStream(settingsFilePath), "UTF-8");
+
+		out.write("output=" + outputFilePath + "\n");
+		out.write("mainclass=" + mainClassName + "\n");
+		out.write("maxreturnvals=" + Configuration.maxReturnValues + "\n");
+
+		for (String mthSig : interceptionTargetMethods)
+		{
+			out.write("target=" + mthSig + "\n");
+
+			// we cannot instrument the body of a native method and therefore its calls are intercepted
+			if (nativeMethods.contains(mthSig)) out.write("native=" + mthSig + "\n");
+		}
+
+		for (String appPrefix : Configuration.applicationClassPrefixes) out.write("appclass=" + appPrefix + "\n");
+
+		for (String libPrefix : Configuration.libraryMethodPrefixes) out.write("libmethod=" + libPrefix + "\n");
+
+		out.close();
+	}
+
+	public static RecordedData loadAgentRecording(String outputFilePath) throws Exception
+	{
+		RecordedData sessionData = new RecordedData();
+
+		// the agent records the same information as the dynamic analysis with JDI, just in a textual form
+		// each line has the form "R method return-value", "F method class object field type static new-value", or "A method array-type array index new-value"
+
+		BufferedReader recRd = new BufferedReader(new InputStreamReader(new FileInputStream(outputFilePath), "UTF-8"));
+
+		String line = null;
+		while ((line = recRd.readLine()) != null)
+		{
+			String[] items = line.split("\t", -1);
+
+			String methodSig = SignatureTable.intern(items[1]);
+
+			if (items[0].equals("R"))
+			{
+				CallResultInfo callRes = new CallResultInfo();
+				callRes.returnValue = decodeAgentValue(items[2]);
+
+				Set<CallResultInfo> callrInfos = sessionData.mthSig2CallResult.get(methodSig);
+				if (callrInfos == null)
+				{
+					callrInfos = new HashSet<CallResultInfo>();
+					sessionData.mthSig2CallResult.put(methodSig, callrInfos);
+				}
+
+				// we have to respect the configured upper bound
+				// except for java.lang.Object.clone() that is filtered later
+				if ((callrInfos.size() < Configuration.maxReturnValues) || methodSig.startsWith("java.lang.Object.clone"))
+				{
+					callrInfos.add(callRes);
+				}
+			}
+
+			if (items[0].equals("F"))
+			{
+				String className = items[2];
+				ReferenceID objectRefID = new ReferenceID(Long.parseLong(items[3]));
+				String fieldName = items[4];
+				String fieldType = Utils.getInternalTypeName(items[5]);
+				boolean isStaticField = items[6].equals("1");
+				Expression newValue = decodeAgentValue(items[7]);
+
+				FieldWriteInfo fwInfo = new FieldWriteInfo(className, objectRefID, fieldName, fieldType, isStaticField, newValue);
+
+				Set<FieldWriteInfo> fwriteInfos = sessionData.mthSig2FieldWrites.get(methodSig);
+				if (fwriteInfos == null)
+				{
+					fwriteInfos = new HashSet<FieldWriteInfo>();
+					sessionData.mthSig2FieldWrites.put(methodSig, fwriteInfos);
+				}
+
+				fwriteInfos.add(fwInfo);
+			}
+
+			if (items[0].equals("A"))
+			{
+				String arrayClsName = Utils.getPlainTypeName(items[2]);
+				ReferenceID arrayObjRefID = new ReferenceID(Long.parseLong(items[3]));
+				int elementIndex = Integer.parseInt(items[4]);
+				String elementTypeStr = Utils.getElementTypeFromArrayClassName(arrayClsName);
+				Expression newElement = decodeAgentValue(items[5]);
+
+				ArrayWriteInfo awInfo = new ArrayWriteInfo(arrayClsName, arrayObjRefID, elementIndex, elementTypeStr, newElement);
+
+				Set<ArrayWriteInfo> awriteInfos = sessionData.mthSig2ArrayWrites.get(methodSig);
+				if (awriteInfos == null)
+				{
+					awriteInfos = new HashSet<ArrayWriteInfo>();
+					sessionData.mthSig2ArrayWrites.put(methodSig, awriteInfos);
+				}
+
+				awriteInfos.add(awInfo);
+			}
+		}
+
+		recRd.close();
+
+		return sessionData;
+	}
+
+	public static synchronized void mergeRecordedData(RecordedData sessionData)
+	{
+		// we keep all the data recorded by all sessions (just like when the program is executed repeatedly in a single session)
+
+		for (Map.Entry<String, Set<CallResultInfo>> me : sessionData.mthSig2CallResult.entrySet())
+		{
+			String methodSig = me.getKey();
+
+			Set<CallResultInfo> callrInfos = mthSig2CallResult.get(methodSig);
+			if (callrInfos == null)
+			{
+				callrInfos = new HashSet<CallResultInfo>();
+				mthSig2CallResult.put(methodSig, callrInfos);
+			}
+
+			for (CallResultInfo callRes : me.getValue())
+			{
+				// we have to respect the configured upper bound also for the merged data
+				// except for java.lang.Object.clone() that is filtered later
+				if ((callrInfos.size() < Configuration.maxReturnValues) || methodSig.startsWith("java.lang.Object.clone"))
+				{
+					callrInfos.add(callRes);
+				}
+			}
+		}
+
+		for (Map.Entry<String, Set<FieldWriteInfo>> me : sessionData.mthSig2FieldWrites.entrySet())
+		{
+			Set<FieldWriteInfo> fwriteInfos = mthSig2FieldWrites.get(me.getKey());
+			if (fwriteInfos == null)
+			{
+				fwriteInfos = new HashSet<FieldWriteInfo>();
+				mthSig2FieldWrites.put(me.getKey(), fwriteInfos);
+			}
+
+			fwriteInfos.addAll(me.getValue());
+		}
+
+		for (Map.Entry<String, Set<ArrayWriteInfo>> me : sessionData.mthSig2ArrayWrites.entrySet())
+		{
+			Set<ArrayWriteInfo> awriteInfos = mthSig2ArrayWrites.get(me.getKey());
+			if (awriteInfos == null)
+			{
+				awriteInfos = new HashSet<ArrayWriteInfo>();
+				mthSig2ArrayWrites.put(me.getKey(), awriteInfos);
+			}
+
+			awriteInfos.addAll(me.getValue());
+		}
+
+		// entry arrays are needed only within the recording session
+	}
+
+	private static Expression decodeAgentValue(String valueStr)
+	{
+		// null value is used for methods that return nothing (i.e., void)
+		if (valueStr.equals("V")) return null;
+
+		if (valueStr.equals("N")) return SpecialExpression.NULL;
+
+		char kind = valueStr.charAt(0);
+		String data = valueStr.substring(2);
+
+		if (kind == 'I') return ExpressionFactory.createConstant(new Integer(Integer.parseInt(data)));
+		if (kind == 'J') return ExpressionFactory.createConstant(new Long(Long.parseLong(data)));
+		if (kind == 'F') return ExpressionFactory.createConstant(new Float(Float.parseFloat(data)));
+		if (kind == 'D') return ExpressionFactory.createConstant(new Double(Double.parseDouble(data)));
+
+		if (kind == 'S') return ExpressionFactory.createConstant(unescapeAgentString(data));
+
+		// heap objects and arrays have the form "ID:type" and "ID:component-type:length"
+		int k1 = data.indexOf(':');
+		long objID = Long.parseLong(data.substring(0, k1));
+
+		if (kind == 'A')
+		{
+			int k2 = data.lastIndexOf(':');
+			return ExpressionFactory.createHeapReference(objID, Utils.createArrayObjectDescriptor(data.substring(k1 + 1, k2), Integer.parseInt(data.substring(k2 + 1))));
+		}
+
+		return ExpressionFactory.createHeapReference(objID, data.substring(k1 + 1));
+	}
+
+	private static String unescapeAgentString(String str)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < str.length(); i++)
+		{
+			char c = str.charAt(i);
+
+			if ((c == '\\') && (i + 1 < str.length()))
+			{
+				i++;
+				char e = str.charAt(i);
+
+				if (e == 't') sb.append('\t');
+				else if (e == 'n') sb.append('\n');
+				else if (e == 'r') sb.append('\r');
+				else sb.append(e);
+			}
+			else
+			{
+				sb.append(c);
+			}
+		}
+
+		return sb.toString();
+	}
+	
 	public static Set<CallResultInfo> getCallResultsForMethod(String methodSig)
 	{
 		Set<CallResultInfo> callRes = mthSig2CallResult.get(methodSig);
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.dynamic;
+
+import java.util.List;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
+
+
+/**
+ * Method call results and side effects recorded during one or more executions of the program.
+ * Each recording session has its own instance, so that several sessions can run at the same time.
+ */
+public class RecordedData
+{
+	// map from method signature to a list of objects that contain return values
+	public Map<String, Set<CallResultInfo>> mthSig2CallResult;
+
+	// map from method signatures to a set of modified object fields
+	public Map<String, Set<FieldWriteInfo>> mthSig2FieldWrites;
+
+	// map from method signatures to a set of modified array elements
+	public Map<String, Set<ArrayWriteInfo>> mthSig2ArrayWrites;
+
+	// map from method signatures to (reference, array content) pairs collected at method entry
+	public Map<String, Map<Long, List<Expression>>> mthSig2EntryArraysFull;
+
+	// map from method signatures to (reference, hash code) pairs collected at method entry
+	public Map<String, Map<Long, Integer>> mthSig2EntryArraysHash;
+
+
+	public RecordedData()
+	{
+		mthSig2CallResult = new LinkedHashMap<String, Set<CallResultInfo>>();
+		mthSig2FieldWrites = new LinkedHashMap<String, Set<FieldWriteInfo>>();
+		mthSig2ArrayWrites = new LinkedHashMap<String, Set<ArrayWriteInfo>>();
+
+		mthSig2EntryArraysFull = new LinkedHashMap<String, Map<Long, List<Expression>>>();
+		mthSig2EntryArraysHash = new LinkedHashMap<String, Map<Long, Integer>>();
+	}
+}
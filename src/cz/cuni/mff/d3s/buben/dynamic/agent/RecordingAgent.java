@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.dynamic.agent;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Collections;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.FileInputStream;
+
+import java.lang.instrument.Instrumentation;
+
+
+/**
+ * Java agent that records inputs and outputs of target methods within the running program.
+ * It is an alternative to the dynamic analysis based on JDI (breakpoints and watchpoints).
+ * The agent argument is the path to a settings file with lines "key=value".
+ */
+public class RecordingAgent
+{
+	// path to the file where all records are saved
+	public static String outputFilePath;
+
+	// name of the class with the procedure "main" (recording is active only inside "main")
+	public static String mainClassName;
+
+	public static int maxReturnValues = Integer.MAX_VALUE;
+
+	// signatures of all methods that we should intercept
+	public static Set<String> targetMethodSigs;
+
+	// signatures of native methods (their calls are intercepted in application classes)
+	public static Set<String> nativeMethodSigs;
+
+	// names of classes that declare some intercepted method with bytecode
+	public static Set<String> targetClassNames;
+
+	public static List<String> applicationClassPrefixes;
+
+	public static List<String> libraryMethodPrefixes;
+
+
+	public static void premain(String agentArgs, Instrumentation inst) throws Exception
+	{
+		loadSettings(agentArgs);
+
+		RecordingRuntime.initialize(outputFilePath, maxReturnValues);
+
+		addModuleReads(inst);
+
+		inst.addTransformer(new RecordingTransformer(), true);
+
+		// some classes with target methods are already loaded at this point (e.g., from the package "java.io")
+		List<Class<?>> loadedTargetClasses = new ArrayList<Class<?>>();
+
+		for (Class<?> cls : inst.getAllLoadedClasses())
+		{
+			if (targetClassNames.contains(cls.getName()) && inst.isModifiableClass(cls)) loadedTargetClasses.add(cls);
+		}
+
+		for (Class<?> cls : loadedTargetClasses)
+		{
+			try
+			{
+				inst.retransformClasses(cls);
+			}
+			catch (Throwable ex)
+			{
+				System.err.println("[WARNING] recording agent cannot retransform the class " + cls.getName());
+			}
+		}
+	}
+
+	private static void addModuleReads(Instrumentation inst)
+	{
+		// on Java 9 and later, instrumented classes in named modules (e.g., "java.base") must be able to call the runtime
+		// we use reflection here so that the agent can be still compiled and used with Java 8
+		try
+		{
+			Class<?> moduleCls = Class.forName("java.lang.Module");
+			Class<?> layerCls = Class.forName("java.lang.ModuleLayer");
+
+			Object runtimeModule = Class.class.getMethod("getModule").invoke(RecordingRuntime.class);
+
+			Object bootLayer = layerCls.getMethod("boot").invoke(null);
+			Set<?> bootModules = (Set<?>) layerCls.getMethod("modules").invoke(bootLayer);
+
+			java.lang.reflect.Method redefineMth = Instrumentation.class.getMethod("redefineModule", moduleCls, Set.class, java.util.Map.class, java.util.Map.class, Set.class, java.util.Map.class);
+
+			for (Object mod : bootModules)
+			{
+				redefineMth.invoke(inst, mod, Collections.singleton(runtimeModule), Collections.emptyMap(), Collections.emptyMap(), Collections.emptySet(), Collections.emptyMap());
+			}
+		}
+		catch (ClassNotFoundException ex)
+		{
+			// Java 8 does not have modules
+		}
+		catch (Exception ex)
+		{
+			System.err.println("[WARNING] recording agent cannot update reads of modules");
+		}
+	}
+
+	private static void loadSettings(String settingsFilePath) throws Exception
+	{
+		targetMethodSigs = new HashSet<String>();
+		nativeMethodSigs = new HashSet<String>();
+		targetClassNames = new HashSet<String>();
+		applicationClassPrefixes = new ArrayList<String>();
+		libraryMethodPrefixes = new ArrayList<String>();
+
+		BufferedReader settingsRd = new BufferedReader(new InputStreamReader(new FileInputStream(settingsFilePath), "UTF-8"));
+
+		String line = null;
+		while ((line = settingsRd.readLine()) != null)
+		{
+			if (line.startsWith("output=")) outputFilePath = line.substring(7);
+			if (line.startsWith("mainclass=")) mainClassName = line.substring(10);
+			if (line.startsWith("maxreturnvals=")) maxReturnValues = Integer.parseInt(line.substring(14));
+			if (line.startsWith("target=")) targetMethodSigs.add(line.substring(7));
+			if (line.startsWith("native=")) nativeMethodSigs.add(line.substring(7));
+			if (line.startsWith("appclass=")) applicationClassPrefixes.add(line.substring(9));
+			if (line.startsWith("libmethod=")) libraryMethodPrefixes.add(line.substring(10));
+		}
+
+		settingsRd.close();
+
+		for (String mthSig : targetMethodSigs)
+		{
+			if (nativeMethodSigs.contains(mthSig)) continue;
+
+			targetClassNames.add(getClassName(mthSig));
+		}
+	}
+
+	public static String getClassName(String methodSig)
+	{
+		int k = methodSig.indexOf('(');
+
+		return methodSig.substring(0, methodSig.lastIndexOf('.', k));
+	}
+
+	public static boolean isApplicationMethod(String methodSig)
+	{
+		boolean isAppCls = false;
+
+		for (String appPrefix : applicationClassPrefixes)
+		{
+			if (methodSig.startsWith(appPrefix)) isAppCls = true;
+		}
+
+		if ( ! isAppCls ) return false;
+
+		for (String libPrefix : libraryMethodPrefixes)
+		{
+			if (methodSig.startsWith(libPrefix)) return false;
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.dynamic.agent;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.lang.instrument.Instrumentation;
+
+
+/**
+ * Entry point of the recording agent.
+ * The agent itself (transformer) and ASM are loaded by a separate class loader, so that the ASM classes are not visible to the target program.
+ * Only RecordingRuntime is on the boot class path, because instrumented classes (including the JDK classes) must be able to call it.
+ */
+public class RecordingAgentLoader
+{
+	public static final String ASM_JAR_NAME = "asm-debug-all-5.2.jar";
+
+
+	public static void premain(String agentArgs, Instrumentation inst) throws Exception
+	{
+		// ASM is expected in the same directory as the jar file of the agent
+		File agentJarFile = new File(RecordingAgentLoader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+		File asmJarFile = new File(agentJarFile.getParentFile(), ASM_JAR_NAME);
+
+		// the parent is the bootstrap class loader, which provides RecordingRuntime
+		ClassLoader agentLoader = new URLClassLoader(new URL[] { agentJarFile.toURI().toURL(), asmJarFile.toURI().toURL() }, null);
+
+		Class<?> agentCls = Class.forName(RecordingAgentLoader.class.getPackage().getName() + ".RecordingAgent", true, agentLoader);
+
+		agentCls.getMethod("premain", String.class, Instrumentation.class).invoke(null, agentArgs, inst);
+	}
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.dynamic.agent;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.LinkedHashSet;
+
+import java.lang.ref.WeakReference;
+import java.lang.ref.ReferenceQueue;
+
+import java.io.Writer;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.FileOutputStream;
+
+
+/**
+ * Methods of this class are called from the instrumented bytecode of the target program.
+ * Everything is recorded in memory and written into the output file when the JVM terminates.
+ * The class must not depend on other classes of Buben, because it is loaded by the bootstrap class loader.
+ */
+public class RecordingRuntime
+{
+	// flag saying whether program execution already reached the entry to the procedure "main"
+	private static volatile boolean insideMain = false;
+
+	// upper bound on the number of recorded return values for each method
+	private static int maxReturnValues = Integer.MAX_VALUE;
+
+	// all the records in the order of their creation (duplicates are dropped)
+	private static Set<String> records;
+
+	// map from method signatures to the number of recorded return values
+	private static Map<String, Integer> mthSig2ReturnCount;
+
+	// unique identifiers of heap objects (we must not use hash codes and equals defined by the program)
+	// objects are referenced weakly so that we do not keep them alive, and identifiers are never reused
+	private static Map<IdentityWeakReference, Long> object2ID;
+	private static ReferenceQueue<Object> collectedObjects;
+	private static long nextObjectID;
+
+	// stack of active calls of target methods for each thread
+	private static ThreadLocal<ThreadState> threadStates;
+
+	static
+	{
+		records = new LinkedHashSet<String>();
+		mthSig2ReturnCount = new HashMap<String, Integer>();
+
+		object2ID = new HashMap<IdentityWeakReference, Long>();
+		collectedObjects = new ReferenceQueue<Object>();
+		nextObjectID = 1;
+
+		threadStates = new ThreadLocal<ThreadState>();
+	}
+
+
+	public static void initialize(String outputFilePath, int maxRetVals)
+	{
+		maxReturnValues = maxRetVals;
+
+		// we write all the records when the program terminates
+		Runtime.getRuntime().addShutdownHook(new Thread(new OutputWriter(outputFilePath)));
+	}
+
+	public static void enterMain()
+	{
+		insideMain = true;
+	}
+
+	public static void exitMain()
+	{
+		insideMain = false;
+	}
+
+	public static void methodEntry(String methodSig, Object[] args)
+	{
+		if ( ! insideMain ) return;
+
+		ThreadState ts = getThreadState();
+
+		// we ignore calls of target methods from within this class (e.g., when encoding some value)
+		if (ts.busy) return;
+
+		ts.busy = true;
+
+		try
+		{
+			// arguments of the array type are subjects for detecting changes of their content
+			List<Object> argArrays = new ArrayList<Object>();
+
+			for (Object arg : args)
+			{
+				if ((arg != null) && arg.getClass().isArray()) argArrays.add(arg);
+			}
+
+			// content of the arrays at method entry is kept only until the call finishes
+			List<List<String>> entryContents = new ArrayList<List<String>>();
+
+			if ( ! argArrays.isEmpty() )
+			{
+				synchronized (records)
+				{
+					for (Object arr : argArrays)
+					{
+						entryContents.add(encodeArrayContent(arr));
+					}
+				}
+			}
+
+			ts.activeCalls.add(new ActiveCall(methodSig, argArrays, entryContents));
+		}
+		finally
+		{
+			ts.busy = false;
+		}
+	}
+
+	public static void methodExit(Object retValue, String methodSig, String retTypeDesc)
+	{
+		if ( ! insideMain ) return;
+
+		ThreadState ts = getThreadState();
+
+		if (ts.busy) return;
+
+		ts.busy = true;
+
+		try
+		{
+			// find the matching call (some calls might have been terminated by an exception)
+			ActiveCall call = null;
+
+			while ( ! ts.activeCalls.isEmpty() )
+			{
+				ActiveCall topCall = ts.activeCalls.remove(ts.activeCalls.size() - 1);
+
+				if (topCall.methodSig.equals(methodSig))
+				{
+					call = topCall;
+					break;
+				}
+			}
+
+			List<Object> trackedArrays = new ArrayList<Object>();
+			if (call != null) trackedArrays.addAll(call.argArrays);
+
+			if ((retValue != null) && retValue.getClass().isArray()) trackedArrays.add(retValue);
+
+			synchronized (records)
+			{
+				// save result of the method (its return value)
+
+				Integer retCount = mthSig2ReturnCount.get(methodSig);
+				if (retCount == null) retCount = 0;
+
+				// we have to respect the configured upper bound
+				// except for java.lang.Object.clone() that is filtered later
+				if ((retCount.intValue() < maxReturnValues) || methodSig.startsWith("java.lang.Object.clone"))
+				{
+					String retValueStr = retTypeDesc.equals("V") ? "V" : encodeValue(retValue, retTypeDesc.charAt(0));
+
+					if (records.add("R\t" + methodSig + "\t" + retValueStr)) mthSig2ReturnCount.put(methodSig, retCount + 1);
+				}
+
+				// identify differences between arrays at method entry and exit
+
+				for (Object arr : trackedArrays)
+				{
+					long arrID = getObjectID(arr);
+
+					List<String> exitContent = encodeArrayContent(arr);
+
+					List<String> entryContent = null;
+					if (call != null) entryContent = call.getEntryContent(arr);
+
+					// we ignore arrays that were not modified at all
+					if (exitContent.equals(entryContent)) continue;
+
+					for (int i = 0; i < exitContent.size(); i++)
+					{
+						if ((entryContent == null) || (i >= entryContent.size()) || ( ! exitContent.get(i).equals(entryContent.get(i)) ))
+						{
+							records.add("A\t" + methodSig + "\t" + arr.getClass().getName() + "\t" + arrID + "\t" + i + "\t" + exitContent.get(i));
+						}
+					}
+				}
+			}
+		}
+		finally
+		{
+			ts.busy = false;
+		}
+	}
+
+	public static int fieldWrite(Object obj, int newValue, String methodSig, String ownerClassName, String fieldName, String fieldDesc)
+	{
+		recordFieldWrite(obj, Integer.valueOf(newValue), methodSig, ownerClassName, fieldName, fieldDesc);
+		return newValue;
+	}
+
+	public static long fieldWrite(Object obj, long newValue, String methodSig, String ownerClassName, String fieldName, String fieldDesc)
+	{
+		recordFieldWrite(obj, Long.valueOf(newValue), methodSig, ownerClassName, fieldName, fieldDesc);
+		return newValue;
+	}
+
+	public static float fieldWrite(Object obj, float newValue, String methodSig, String ownerClassName, String fieldName, String fieldDesc)
+	{
+		recordFieldWrite(obj, Float.valueOf(newValue), methodSig, ownerClassName, fieldName, fieldDesc);
+		return newValue;
+	}
+
+	public static double fieldWrite(Object obj, double newValue, String methodSig, String ownerClassName, String fieldName, String fieldDesc)
+	{
+		recordFieldWrite(obj, Double.valueOf(newValue), methodSig, ownerClassName, fieldName, fieldDesc);
+		return newValue;
+	}
+
+	public static Object fieldWrite(Object obj, Object newValue, String methodSig, String ownerClassName, String fieldName, String fieldDesc)
+	{
+		recordFieldWrite(obj, newValue, methodSig, ownerClassName, fieldName, fieldDesc);
+		return newValue;
+	}
+
+	private static void recordFieldWrite(Object obj, Object newValue, String methodSig, String ownerClassName, String fieldName, String fieldDesc)
+	{
+		if ( ! insideMain ) return;
+
+		ThreadState ts = getThreadState();
+
+		if (ts.busy) return;
+
+		ts.busy = true;
+
+		try
+		{
+			synchronized (records)
+			{
+				String className = null;
+				long objectID = 0;
+
+				if (obj != null)
+				{
+					// instance field
+					className = obj.getClass().getName();
+					objectID = getObjectID(obj);
+				}
+				else
+				{
+					// static field (identified by the class object)
+					className = ownerClassName;
+					objectID = getObjectID(findClass(ownerClassName));
+				}
+
+				String isStaticStr = (obj == null) ? "1" : "0";
+
+				records.add("F\t" + methodSig + "\t" + className + "\t" + objectID + "\t" + fieldName + "\t" + fieldDesc + "\t" + isStaticStr + "\t" + encodeValue(newValue, fieldDesc.charAt(0)));
+			}
+		}
+		finally
+		{
+			ts.busy = false;
+		}
+	}
+
+	private static ThreadState getThreadState()
+	{
+		ThreadState ts = threadStates.get();
+
+		if (ts == null)
+		{
+			ts = new ThreadState();
+			threadStates.set(ts);
+		}
+
+		return ts;
+	}
+
+	private static long getObjectID(Object obj)
+	{
+		// the caller must hold the lock on records
+
+		// drop entries for objects that were garbage collected
+		for (Object ref = collectedObjects.poll(); ref != null; ref = collectedObjects.poll())
+		{
+			object2ID.remove(ref);
+		}
+
+		Long id = object2ID.get(new IdentityWeakReference(obj, null));
+
+		if (id == null)
+		{
+			id = nextObjectID++;
+			object2ID.put(new IdentityWeakReference(obj, collectedObjects), id);
+		}
+
+		return id;
+	}
+
+	private static Object findClass(String className)
+	{
+		try
+		{
+			return Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+		}
+		catch (Throwable ex)
+		{
+			// the class name itself still identifies the static field
+			return className.intern();
+		}
+	}
+
+	private static List<String> encodeArrayContent(Object arr)
+	{
+		char elementTypeChar = getTypeDescriptorChar(arr.getClass().getComponentType());
+
+		int length = java.lang.reflect.Array.getLength(arr);
+
+		List<String> content = new ArrayList<String>(length);
+
+		for (int i = 0; i < length; i++)
+		{
+			content.add(encodeValue(java.lang.reflect.Array.get(arr, i), elementTypeChar));
+		}
+
+		return content;
+	}
+
+	private static String encodeValue(Object val, char typeDescChar)
+	{
+		// we use the static type (descriptor) for primitive values because they are boxed here
+			// field write hooks pass boolean and char values as Integer (see "fieldWrite(Object, int, ...)"), while reflection gives Boolean and Character
+		switch (typeDescChar)
+		{
+			case 'Z':
+				if (val instanceof Boolean) return "I:" + (((Boolean) val).booleanValue() ? 1 : 0);
+				return "I:" + ((Number) val).intValue();
+			case 'C':
+				if (val instanceof Character) return "I:" + ((int) ((Character) val).charValue());
+				return "I:" + ((Number) val).intValue();
+			case 'B':
+			case 'S':
+			case 'I':
+				return "I:" + ((Number) val).intValue();
+			case 'J':
+				return "J:" + ((Number) val).longValue();
+			case 'F':
+				return "F:" + ((Number) val).floatValue();
+			case 'D':
+				return "D:" + ((Number) val).doubleValue();
+			default:
+				break;
+		}
+
+		if (val == null) return "N";
+
+		if (val instanceof String) return "S:" + escape((String) val);
+
+		if (val.getClass().isArray())
+		{
+			return "A:" + getObjectID(val) + ":" + getTypeName(val.getClass().getComponentType()) + ":" + java.lang.reflect.Array.getLength(val);
+		}
+
+		return "H:" + getObjectID(val) + ":" + val.getClass().getName();
+	}
+
+	private static char getTypeDescriptorChar(Class<?> cls)
+	{
+		if (cls == Boolean.TYPE) return 'Z';
+		if (cls == Character.TYPE) return 'C';
+		if (cls == Byte.TYPE) return 'B';
+		if (cls == Short.TYPE) return 'S';
+		if (cls == Integer.TYPE) return 'I';
+		if (cls == Long.TYPE) return 'J';
+		if (cls == Float.TYPE) return 'F';
+		if (cls == Double.TYPE) return 'D';
+
+		return 'L';
+	}
+
+	private static String getTypeName(Class<?> cls)
+	{
+		// same format as type names provided by JDI ("int[]" instead of "[I")
+		if (cls.isArray()) return getTypeName(cls.getComponentType()) + "[]";
+
+		return cls.getName();
+	}
+
+	private static String escape(String str)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < str.length(); i++)
+		{
+			char c = str.charAt(i);
+
+			if (c == '\\') sb.append("\\\\");
+			else if (c == '\t') sb.append("\\t");
+			else if (c == '\n') sb.append("\\n");
+			else if (c == '\r') sb.append("\\r");
+			else sb.append(c);
+		}
+
+		return sb.toString();
+	}
+
+
+	static class ThreadState
+	{
+		// calls of target methods that did not finish yet
+		public List<ActiveCall> activeCalls;
+
+		// flag saying whether the thread currently executes some code of this class
+		public boolean busy;
+
+
+		public ThreadState()
+		{
+			activeCalls = new ArrayList<ActiveCall>();
+			busy = false;
+		}
+	}
+
+	static class ActiveCall
+	{
+		public String methodSig;
+
+		// array objects passed as arguments
+		public List<Object> argArrays;
+
+		// encoded content of the argument arrays at method entry (at the same positions)
+		public List<List<String>> entryContents;
+
+
+		public ActiveCall(String mthSig, List<Object> arrays, List<List<String>> contents)
+		{
+			this.methodSig = mthSig;
+			this.argArrays = arrays;
+			this.entryContents = contents;
+		}
+
+		public List<String> getEntryContent(Object arr)
+		{
+			for (int i = 0; i < argArrays.size(); i++)
+			{
+				if (argArrays.get(i) == arr) return entryContents.get(i);
+			}
+
+			return null;
+		}
+	}
+
+	static class IdentityWeakReference extends WeakReference<Object>
+	{
+		private int hc;
+
+
+		public IdentityWeakReference(Object obj, ReferenceQueue<Object> queue)
+		{
+			super(obj, queue);
+
+			this.hc = System.identityHashCode(obj);
+		}
+
+		public boolean equals(Object other)
+		{
+			if (other == this) return true;
+
+			if ( ! (other instanceof IdentityWeakReference) ) return false;
+
+			Object referent = get();
+
+			// cleared references are equal only to themselves
+			return (referent != null) && (referent == ((IdentityWeakReference) other).get());
+		}
+
+		public int hashCode()
+		{
+			return hc;
+		}
+	}
+
+	static class OutputWriter implements Runnable
+	{
+		private String outputFilePath;
+
+
+		public OutputWriter(String outFilePath)
+		{
+			this.outputFilePath = outFilePath;
+		}
+
+		public void run()
+		{
+			insideMain = false;
+
+			try
+			{
+				Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFilePath), "UTF-8"));
+
+				synchronized (records)
+				{
+					for (String rec : records)
+					{
+						out.write(rec);
+						out.write("\n");
+					}
+				}
+
+				out.close();
+			}
+			catch (Exception ex)
+			{
+				System.err.println("[ERROR] recording agent cannot write the output file " + outputFilePath);
+				ex.printStackTrace();
+			}
+		}
+	}
+}
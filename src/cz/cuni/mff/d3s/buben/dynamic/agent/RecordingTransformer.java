@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.dynamic.agent;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+
+/**
+ * Inserts calls of the methods defined in RecordingRuntime into the bytecode of loaded classes.
+ * Bodies of target methods are instrumented at the entry, at each return, and at each field write.
+ * Calls of native target methods are instrumented in the application classes (through generated wrapper methods).
+ */
+public class RecordingTransformer implements ClassFileTransformer
+{
+	private static final String RUNTIME_CLASS = "cz/cuni/mff/d3s/buben/dynamic/agent/RecordingRuntime";
+
+	private static final Type RUNTIME_TYPE = Type.getObjectType(RUNTIME_CLASS);
+
+	private static final Method ENTRY_HOOK = Method.getMethod("void methodEntry(String, Object[])");
+
+	private static final Method EXIT_HOOK = Method.getMethod("void methodExit(Object, String, String)");
+
+
+	public byte[] transform(ClassLoader loader, String internalClassName, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer)
+	{
+		// hidden and anonymous classes do not have names
+		if (internalClassName == null) return null;
+
+		// we must not instrument the agent itself and the libraries that it uses
+		if (internalClassName.startsWith("cz/cuni/mff/d3s/buben/dynamic/agent/")) return null;
+		if (internalClassName.startsWith("org/objectweb/asm/")) return null;
+
+		String className = internalClassName.replace('/', '.');
+
+		boolean hasTargetMethods = RecordingAgent.targetClassNames.contains(className);
+
+		boolean isMainClass = className.equals(RecordingAgent.mainClassName);
+
+		// new methods (wrappers) cannot be added when the class is retransformed
+		boolean wrapNativeCalls = ( ! RecordingAgent.nativeMethodSigs.isEmpty() ) && (classBeingRedefined == null) && RecordingAgent.isApplicationMethod(className + ".");
+
+		if (( ! hasTargetMethods ) && ( ! isMainClass ) && ( ! wrapNativeCalls )) return null;
+
+		try
+		{
+			ClassReader cr = new ClassReader(classfileBuffer);
+
+			// we never add branches, and therefore we just have to update the maximal stack size
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+			ClassVisitor cv = new RecordingCV(className, isMainClass, wrapNativeCalls, cw);
+
+			cr.accept(cv, ClassReader.EXPAND_FRAMES);
+
+			return cw.toByteArray();
+		}
+		catch (Throwable ex)
+		{
+			// the class is then used without any changes
+			System.err.println("[ERROR] recording agent cannot instrument the class " + className + ": " + ex);
+
+			return null;
+		}
+	}
+
+
+	static class RecordingCV extends ClassVisitor
+	{
+		private String className;
+
+		private String internalClassName;
+
+		private boolean isMainClass;
+
+		private boolean wrapNativeCalls;
+
+		private int classVersion;
+
+		// wrapper methods for calls of native methods that we must generate at the end
+		private List<NativeCallWrapper> wrappers;
+
+
+		public RecordingCV(String clsName, boolean mainCls, boolean wrapNatives, ClassVisitor cv)
+		{
+			super(Opcodes.ASM5, cv);
+			this.className = clsName;
+			this.isMainClass = mainCls;
+			this.wrapNativeCalls = wrapNatives;
+			this.wrappers = new ArrayList<NativeCallWrapper>();
+		}
+
+		public void visit(int version, int clsAccess, String clsName, String clsSignature, String superClsName, String[] clsInterfaces)
+		{
+			cv.visit(version, clsAccess, clsName, clsSignature, superClsName, clsInterfaces);
+
+			this.internalClassName = clsName;
+
+			this.classVersion = version;
+
+			// interfaces cannot contain private static methods (in older versions of the class file format)
+			if ((clsAccess & Opcodes.ACC_INTERFACE) != 0) this.wrapNativeCalls = false;
+		}
+
+		public MethodVisitor visitMethod(int mthAccess, String mthName, String mthDesc, String mthSignature, String[] mthExceptions)
+		{
+			MethodVisitor mv = cv.visitMethod(mthAccess, mthName, mthDesc, mthSignature, mthExceptions);
+
+			if ((mthAccess & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) return mv;
+
+			String curMethodSig = className + "." + mthName + mthDesc;
+
+			boolean isTarget = RecordingAgent.targetMethodSigs.contains(curMethodSig);
+
+			boolean isMain = isMainClass && ((mthAccess & Opcodes.ACC_STATIC) != 0) && mthName.equals("main") && mthDesc.equals("([Ljava/lang/String;)V");
+
+			boolean wrapCalls = wrapNativeCalls && RecordingAgent.isApplicationMethod(curMethodSig);
+
+			if (( ! isTarget ) && ( ! isMain ) && ( ! wrapCalls )) return mv;
+
+			return new RecordingMV(mv, mthAccess, mthName, mthDesc, curMethodSig, isTarget, isMain, wrapCalls, this);
+		}
+
+		public void visitEnd()
+		{
+			for (NativeCallWrapper ncw : wrappers)
+			{
+				ncw.generate(cv);
+			}
+
+			cv.visitEnd();
+		}
+
+		public String addNativeCallWrapper(int opcode, String ownerName, String mthName, String mthDesc, boolean itf, String targetMethodSig)
+		{
+			// the same wrapper can be used for all calls of the given method with the same opcode
+			for (NativeCallWrapper ncw : wrappers)
+			{
+				if ((ncw.opcode == opcode) && ncw.targetMethodSig.equals(targetMethodSig) && ncw.ownerName.equals(ownerName)) return ncw.wrapperName;
+			}
+
+			NativeCallWrapper ncw = new NativeCallWrapper(opcode, ownerName, mthName, mthDesc, itf, targetMethodSig, "buben$native$" + wrappers.size());
+
+			wrappers.add(ncw);
+
+			return ncw.wrapperName;
+		}
+
+		public String getInternalClassName()
+		{
+			return internalClassName;
+		}
+
+		public boolean hasStackMapFrames()
+		{
+			// stack map frames are required since Java 7 and they are used since Java 6
+			return (classVersion & 0xFFFF) >= Opcodes.V1_6;
+		}
+	}
+
+	static class RecordingMV extends AdviceAdapter
+	{
+		private String methodSig;
+
+		private Type returnType;
+
+		private boolean isTarget;
+
+		private boolean isMain;
+
+		private boolean wrapCalls;
+
+		private RecordingCV classRecorder;
+
+		// in constructors, we can record field writes only after the call of the superclass constructor
+		private boolean thisInitialized;
+
+		// start of the code of "main" that is covered by the handler which calls exitMain (also when "main" terminates with an exception)
+		private Label mainBodyStart;
+
+
+		public RecordingMV(MethodVisitor mv, int mthAccess, String mthName, String mthDesc, String mthSig, boolean target, boolean main, boolean wrap, RecordingCV clsRec)
+		{
+			super(Opcodes.ASM5, mv, mthAccess, mthName, mthDesc);
+			this.methodSig = mthSig;
+			this.returnType = Type.getReturnType(mthDesc);
+			this.isTarget = target;
+			this.isMain = main;
+			this.wrapCalls = wrap;
+			this.classRecorder = clsRec;
+			this.thisInitialized = ! mthName.equals("<init>");
+		}
+
+		protected void onMethodEnter()
+		{
+			thisInitialized = true;
+
+			if (isMain)
+			{
+				invokeStatic(RUNTIME_TYPE, Method.getMethod("void enterMain()"));
+
+				mainBodyStart = new Label();
+				mv.visitLabel(mainBodyStart);
+			}
+
+			if (isTarget)
+			{
+				push(methodSig);
+				loadArgArray();
+				invokeStatic(RUNTIME_TYPE, ENTRY_HOOK);
+			}
+		}
+
+		protected void onMethodExit(int opcode)
+		{
+			// exceptions thrown from target methods are handled by the runtime
+			if (opcode == Opcodes.ATHROW) return;
+
+			if (isTarget)
+			{
+				if (opcode == Opcodes.RETURN)
+				{
+					visitInsn(Opcodes.ACONST_NULL);
+				}
+				else
+				{
+					if (returnType.getSize() == 2) dup2();
+					else dup();
+
+					box(returnType);
+				}
+
+				push(methodSig);
+				push(returnType.getDescriptor());
+				invokeStatic(RUNTIME_TYPE, EXIT_HOOK);
+			}
+
+			if (isMain) invokeStatic(RUNTIME_TYPE, Method.getMethod("void exitMain()"));
+		}
+
+		public void visitMaxs(int maxStack, int maxLocals)
+		{
+			if (isMain && (mainBodyStart != null))
+			{
+				// the handler for any exception thrown from "main" calls exitMain and throws the exception again
+				// it must be added as the last one so that handlers defined in "main" take precedence
+
+				Label handlerStart = new Label();
+
+				mv.visitLabel(handlerStart);
+
+				// we use only the parameter of "main" in the frame (other local variables are not needed by the handler)
+				if (classRecorder.hasStackMapFrames()) mv.visitFrame(Opcodes.F_NEW, 1, new Object[] { "[Ljava/lang/String;" }, 1, new Object[] { "java/lang/Throwable" });
+
+				mv.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME_CLASS, "exitMain", "()V", false);
+				mv.visitInsn(Opcodes.ATHROW);
+
+				mv.visitTryCatchBlock(mainBodyStart, handlerStart, handlerStart, null);
+			}
+
+			super.visitMaxs(maxStack, maxLocals);
+		}
+
+		public void visitFieldInsn(int opcode, String ownerName, String fieldName, String fieldDesc)
+		{
+			if (isTarget && thisInitialized && ((opcode == Opcodes.PUTFIELD) || (opcode == Opcodes.PUTSTATIC)))
+			{
+				Type fieldType = Type.getType(fieldDesc);
+
+				// we need the stack "object, object, value" (instance field) or "null, value" (static field) before the call of the hook
+				// the hook returns the value and therefore the stack is eventually the same as before
+				if (opcode == Opcodes.PUTFIELD)
+				{
+					if (fieldType.getSize() == 2)
+					{
+						mv.visitInsn(Opcodes.DUP2_X1);
+						mv.visitInsn(Opcodes.POP2);
+						mv.visitInsn(Opcodes.DUP);
+						mv.visitInsn(Opcodes.DUP2_X2);
+						mv.visitInsn(Opcodes.POP2);
+					}
+					else
+					{
+						mv.visitInsn(Opcodes.SWAP);
+						mv.visitInsn(Opcodes.DUP_X1);
+						mv.visitInsn(Opcodes.SWAP);
+					}
+				}
+				else
+				{
+					if (fieldType.getSize() == 2)
+					{
+						mv.visitInsn(Opcodes.ACONST_NULL);
+						mv.visitInsn(Opcodes.DUP_X2);
+						mv.visitInsn(Opcodes.POP);
+					}
+					else
+					{
+						mv.visitInsn(Opcodes.ACONST_NULL);
+						mv.visitInsn(Opcodes.SWAP);
+					}
+				}
+
+				Type hookValueType = getHookValueType(fieldType);
+
+				mv.visitLdcInsn(methodSig);
+				mv.visitLdcInsn(ownerName.replace('/', '.'));
+				mv.visitLdcInsn(fieldName);
+				mv.visitLdcInsn(fieldDesc);
+
+				String hookDesc = "(Ljava/lang/Object;" + hookValueType.getDescriptor() + "Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)" + hookValueType.getDescriptor();
+
+				mv.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME_CLASS, "fieldWrite", hookDesc, false);
+
+				// the reference value must have the proper type again
+				if (hookValueType.getSort() == Type.OBJECT) mv.visitTypeInsn(Opcodes.CHECKCAST, fieldType.getInternalName());
+			}
+
+			super.visitFieldInsn(opcode, ownerName, fieldName, fieldDesc);
+		}
+
+		public void visitMethodInsn(int opcode, String ownerName, String mthName, String mthDesc, boolean itf)
+		{
+			if (wrapCalls && (opcode != Opcodes.INVOKESPECIAL))
+			{
+				String calleeSig = ownerName.replace('/', '.') + "." + mthName + mthDesc;
+
+				if (RecordingAgent.nativeMethodSigs.contains(calleeSig) && RecordingAgent.targetMethodSigs.contains(calleeSig))
+				{
+					String wrapperName = classRecorder.addNativeCallWrapper(opcode, ownerName, mthName, mthDesc, itf, calleeSig);
+
+					super.visitMethodInsn(Opcodes.INVOKESTATIC, classRecorder.getInternalClassName(), wrapperName, NativeCallWrapper.getWrapperDesc(opcode, ownerName, mthDesc), false);
+
+					return;
+				}
+			}
+
+			super.visitMethodInsn(opcode, ownerName, mthName, mthDesc, itf);
+		}
+
+		private static Type getHookValueType(Type fieldType)
+		{
+			switch (fieldType.getSort())
+			{
+				case Type.BOOLEAN:
+				case Type.CHAR:
+				case Type.BYTE:
+				case Type.SHORT:
+				case Type.INT:
+					return Type.INT_TYPE;
+				case Type.LONG:
+					return Type.LONG_TYPE;
+				case Type.FLOAT:
+					return Type.FLOAT_TYPE;
+				case Type.DOUBLE:
+					return Type.DOUBLE_TYPE;
+				default:
+					return Type.getType(Object.class);
+			}
+		}
+	}
+
+	static class NativeCallWrapper
+	{
+		public int opcode;
+		public String ownerName;
+		public String methodName;
+		public String methodDesc;
+		public boolean isInterface;
+
+		public String targetMethodSig;
+
+		public String wrapperName;
+
+
+		public NativeCallWrapper(int opc, String owner, String mthName, String mthDesc, boolean itf, String tgtMthSig, String wrpName)
+		{
+			this.opcode = opc;
+			this.ownerName = owner;
+			this.methodName = mthName;
+			this.methodDesc = mthDesc;
+			this.isInterface = itf;
+			this.targetMethodSig = tgtMthSig;
+			this.wrapperName = wrpName;
+		}
+
+		public static String getWrapperDesc(int opcode, String ownerName, String mthDesc)
+		{
+			// the receiver object becomes the first parameter of the static wrapper
+			if (opcode == Opcodes.INVOKESTATIC) return mthDesc;
+
+			return "(" + Type.getObjectType(ownerName).getDescriptor() + mthDesc.substring(1);
+		}
+
+		public void generate(ClassVisitor cv)
+		{
+			String wrapperDesc = getWrapperDesc(opcode, ownerName, methodDesc);
+
+			Type[] targetArgTypes = Type.getArgumentTypes(methodDesc);
+			Type retType = Type.getReturnType(methodDesc);
+
+			// index of the first argument of the native method among the wrapper parameters
+			int firstArgIdx = (opcode == Opcodes.INVOKESTATIC) ? 0 : 1;
+
+			int access = Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC;
+
+			MethodVisitor mv = cv.visitMethod(access, wrapperName, wrapperDesc, null, null);
+
+			GeneratorAdapter ga = new GeneratorAdapter(mv, access, wrapperName, wrapperDesc);
+
+			ga.visitCode();
+
+			// record arguments at the entry
+
+			ga.push(targetMethodSig);
+			ga.push(targetArgTypes.length);
+			ga.newArray(Type.getType(Object.class));
+
+			for (int i = 0; i < targetArgTypes.length; i++)
+			{
+				ga.dup();
+				ga.push(i);
+				ga.loadArg(firstArgIdx + i);
+				ga.box(targetArgTypes[i]);
+				ga.arrayStore(Type.getType(Object.class));
+			}
+
+			ga.invokeStatic(RUNTIME_TYPE, ENTRY_HOOK);
+
+			// perform the original call
+
+			ga.loadArgs();
+			ga.visitMethodInsn(opcode, ownerName, methodName, methodDesc, isInterface);
+
+			// record the return value at the exit
+
+			if (retType.getSort() == Type.VOID)
+			{
+				ga.visitInsn(Opcodes.ACONST_NULL);
+			}
+			else
+			{
+				if (retType.getSize() == 2) ga.dup2();
+				else ga.dup();
+
+				ga.box(retType);
+			}
+
+			ga.push(targetMethodSig);
+			ga.push(retType.getDescriptor());
+			ga.invokeStatic(RUNTIME_TYPE, EXIT_HOOK);
+
+			ga.returnValue();
+			ga.endMethod();
+		}
+	}
+}
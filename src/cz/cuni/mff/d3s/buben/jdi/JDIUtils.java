@@ -21,6 +21,12 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.Collections;
+
+import java.util.concurrent.TimeUnit;
+
+import java.net.ServerSocket;
+import java.net.InetAddress;
 
 import com.sun.jdi.*;
 import com.sun.jdi.connect.Connector;
@@ -29,15 +35,16 @@ import com.sun.jdi.request.EventRequestManager;
 import com.sun.jdi.request.EventRequest;
 import com.sun.jdi.request.BreakpointRequest;
 import com.sun.jdi.request.ModificationWatchpointRequest;	
+import com.sun.jdi.request.MethodExitRequest;
+import com.sun.jdi.request.ExceptionRequest;
 import com.sun.tools.jdi.SocketAttachingConnector;
 
 import cz.cuni.mff.d3s.buben.Configuration;
 import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
-import cz.cuni.mff.d3s.buben.bytecode.symbolic.ConstantExpression;
-import cz.cuni.mff.d3s.buben.bytecode.symbolic.HeapReferenceExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.SpecialExpression;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
 import cz.cuni.mff.d3s.buben.dynamic.ReferenceID;
 import cz.cuni.mff.d3s.buben.dynamic.ArrayWriteInfo;
 
@@ -45,20 +52,40 @@ import cz.cuni.mff.d3s.buben.dynamic.ArrayWriteInfo;
 public class JDIUtils
 {
 	// cached mappings between dynamic values and symbolic expressions
+	// the map is shared by all recording sessions that may run concurrently
 	private static Map<Value, Expression> value2SymbExpr;
 
+	// ports that were already assigned to some recording session
+	private static Set<Integer> usedPorts;
+
 	static
 	{
-		value2SymbExpr = new HashMap<Value, Expression>();
+		value2SymbExpr = Collections.synchronizedMap(new HashMap<Value, Expression>());
+
+		usedPorts = new HashSet<Integer>();
 	}
 
 
-	public static String getAgentConfig()
+	public static String getAgentConfig(String port)
+	{
+		return ("-agentlib:jdwp=transport=dt_socket,address=127.0.0.1:"+port+",server=y,suspend=y");
+	}
+
+	public static synchronized String findFreePort() throws Exception
 	{
-		return ("-agentlib:jdwp=transport=dt_socket,address=127.0.0.1:"+Configuration.JDI_PORT+",server=y,suspend=y");
+		// we let the operating system pick some free port and release it immediately, so that the target JVM can use it
+		// a port is never given to two recording sessions (but another process may still take it in the meantime, and then the recording session retries with a new port)
+		while (true)
+		{
+			ServerSocket sock = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+			int port = sock.getLocalPort();
+			sock.close();
+
+			if (usedPorts.add(port)) return String.valueOf(port);
+		}
 	}
 	
-	public static VirtualMachine connectToJVM() throws Exception
+	public static VirtualMachine connectToJVM(String port, Process targetProc) throws Exception
 	{
 		VirtualMachineManager vmMgr = Bootstrap.virtualMachineManager();
 		
@@ -71,11 +98,46 @@ public class JDIUtils
 			
 		Map<String, Argument> vmArgs = socketConn.defaultArguments();
 		vmArgs.get("hostname").setValue("127.0.0.1");
-		vmArgs.get("port").setValue(Configuration.JDI_PORT);
-			
-		VirtualMachine vm = socketConn.attach(vmArgs);
+		vmArgs.get("port").setValue(port);
+
+		// the target JVM may not listen yet, so we repeat the attempts with exponentially growing delays (up to the configured limit)
+		// we cannot probe the port by other means because the JDWP agent accepts just a single connection
+		// attempts stop as soon as the target JVM exits (e.g., when it could not start or bind the port)
+
+		long startTime = System.currentTimeMillis();
+
+		long delayMS = Configuration.JDI_ATTACH_INITIAL_DELAY_MS;
+
+		while (true)
+		{
+			try
+			{
+				VirtualMachine vm = socketConn.attach(vmArgs);
 		
-		return vm;
+				return vm;
+			}
+			catch (java.io.IOException ex)
+			{
+				if ( ! targetProc.isAlive() ) throw ex;
+
+				if (System.currentTimeMillis() - startTime + delayMS > Configuration.JDI_ATTACH_TIMEOUT_MS) throw ex;
+			}
+
+			Thread.sleep(delayMS);
+
+			delayMS = Math.min(2 * delayMS, Configuration.JDI_ATTACH_MAX_DELAY_MS);
+		}
+	}
+
+	public static void waitForTermination(Process proc) throws Exception
+	{
+		// the target JVM should terminate on its own (we received the "VM death" event already)
+		if (proc.waitFor(Configuration.PROCESS_EXIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) return;
+
+		// just to be sure (there cannot remain any stale processes)
+		proc.destroyForcibly();
+
+		proc.waitFor(Configuration.PROCESS_EXIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
 	}
 	
 	public static Map<String, List<ProgramPoint>> setMethodInvokeBreakpoints(VirtualMachine vm, List<ProgramPoint> mthInvokeLocs, boolean enableNow)
@@ -221,31 +283,52 @@ public class JDIUtils
 		if (enableNow) entryBR.enable();
 	}
 		
-	public static void createInitialFieldWriteBreakpoints(VirtualMachine vm)
+	public static void createMethodExitRequests(VirtualMachine vm, Set<String> tgtClassNames, boolean enableNow)
 	{
 		EventRequestManager evReqMgr = vm.eventRequestManager();
-		
-		// for every loaded class, take all fields declared in it and create a modification watchpoint
+
+		// JDI combines multiple class filters by conjunction, so we need one request for each target class
+			// classes do not have to be loaded yet because the filter matches just class names
+		for (String clsName : tgtClassNames)
+		{
+			MethodExitRequest mthExitReq = evReqMgr.createMethodExitRequest();
+			mthExitReq.addClassFilter(clsName);
+			mthExitReq.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+
+			if (enableNow) mthExitReq.enable();
+		}
+	}
+
+	public static void createExceptionRequests(VirtualMachine vm, Set<String> tgtClassNames, boolean enableNow)
+	{
+		EventRequestManager evReqMgr = vm.eventRequestManager();
+
+		// we consider only exceptions thrown at locations inside the target classes
+		for (String clsName : tgtClassNames)
+		{
+			ExceptionRequest excReq = evReqMgr.createExceptionRequest(null, true, true);
+			excReq.addClassFilter(clsName);
+			excReq.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+
+			if (enableNow) excReq.enable();
+		}
+	}
+
+	public static void createInitialFieldWriteBreakpoints(VirtualMachine vm, Map<String, Set<String>> watchedField2WriterClasses)
+	{
+		// for every loaded class, take relevant fields declared in it and create modification watchpoints
 		for (ReferenceType clsRT : vm.allClasses())
 		{
-			String clsName = Utils.getPlainClassName(clsRT.signature());
-			
-			// we ignore fields of classes that contain only methods accessing external entities
-			if (Configuration.isExternalAccessClass(clsName)) continue;
-			
-			for (Field fld : clsRT.fields())
-			{
-				ModificationWatchpointRequest fldMwReq = evReqMgr.createModificationWatchpointRequest(fld);
-				fldMwReq.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
-			}
+			addFieldWriteBreakpoints(vm, clsRT, watchedField2WriterClasses, false);
 		}
 	}
 
-	public static void addFieldWriteBreakpoints(VirtualMachine vm, ReferenceType clsRT, boolean enableNow)
+	public static void addFieldWriteBreakpoints(VirtualMachine vm, ReferenceType clsRT, Map<String, Set<String>> watchedField2WriterClasses, boolean enableNow)
 	{
 		EventRequestManager evReqMgr = vm.eventRequestManager();
 		
-		// take all fields declared in the given class and create a modification watchpoint
+		// take fields declared in the given class and create a modification watchpoint
+			// when the map of watched fields is null, we consider all fields (we do not know which fields can be written)
 		
 		String clsName = Utils.getPlainClassName(clsRT.signature());
 			
@@ -254,9 +337,23 @@ public class JDIUtils
 			
 		for (Field fld : clsRT.fields())
 		{
+			Set<String> writerClsNames = null;
+
+			if (watchedField2WriterClasses != null)
+			{
+				writerClsNames = watchedField2WriterClasses.get(clsName + "." + fld.name());
+
+				// the field is not written directly by any intercepted method
+				if (writerClsNames == null) continue;
+			}
+
 			ModificationWatchpointRequest fldMwReq = evReqMgr.createModificationWatchpointRequest(fld);
 			fldMwReq.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
 
+			// JDI combines multiple class filters by conjunction, so we can use the filter only when there is a single writer class
+				// the filter matches the class of the method that performs the write (location of the event)
+			if ((writerClsNames != null) && (writerClsNames.size() == 1)) fldMwReq.addClassFilter(writerClsNames.iterator().next());
+
 			if (enableNow) fldMwReq.enable();
 		}
 	}
@@ -429,25 +526,25 @@ public class JDIUtils
 		}
 		else if ((val instanceof BooleanValue) || (val instanceof ByteValue) || (val instanceof CharValue) || (val instanceof IntegerValue) || (val instanceof ShortValue))
 		{
-			expr = new ConstantExpression(new Integer( ((PrimitiveValue) val).intValue() ));
+			expr = ExpressionFactory.createConstant(new Integer( ((PrimitiveValue) val).intValue() ));
 		}
 		else if (val instanceof LongValue)
 		{
-			expr = new ConstantExpression(new Long( ((LongValue) val).value() ));
+			expr = ExpressionFactory.createConstant(new Long( ((LongValue) val).value() ));
 		}
 		else if (val instanceof FloatValue)
 		{
-			expr = new ConstantExpression(new Float( ((FloatValue) val).value() ));
+			expr = ExpressionFactory.createConstant(new Float( ((FloatValue) val).value() ));
 		}
 		else if (val instanceof DoubleValue)
 		{
-			expr = new ConstantExpression(new Double( ((DoubleValue) val).value() ));
+			expr = ExpressionFactory.createConstant(new Double( ((DoubleValue) val).value() ));
 		}
 		else if (val instanceof StringReference)
 		{
 			StringReference valStr = (StringReference) val;
 			
-			expr = new ConstantExpression(valStr.value());
+			expr = ExpressionFactory.createConstant(valStr.value());
 		}
 		else if (val instanceof ArrayReference)
 		{
@@ -457,7 +554,7 @@ public class JDIUtils
 		
 			try
 			{
-				expr = new HeapReferenceExpression(valArray.uniqueID(), Utils.createArrayObjectDescriptor(valArrType.componentType().name(), valArray.length())); 
+				expr = ExpressionFactory.createHeapReference(valArray.uniqueID(), Utils.createArrayObjectDescriptor(valArrType.componentType().name(), valArray.length())); 
 			}
 			catch (com.sun.jdi.ClassNotLoadedException ex)
 			{
@@ -468,7 +565,7 @@ public class JDIUtils
 		{
 			ObjectReference valObj = (ObjectReference) val;
 
-			expr = new HeapReferenceExpression(valObj.uniqueID(), valObj.type().name());
+			expr = ExpressionFactory.createHeapReference(valObj.uniqueID(), valObj.type().name());
 		}
 		
 		// null value is used for methods that return nothing (i.e., void)
@@ -30,7 +30,9 @@ import org.objectweb.asm.Type;
 import gov.nasa.jpf.vm.MJIEnv;
 
 import cz.cuni.mff.d3s.buben.Utils;
+import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 import cz.cuni.mff.d3s.buben.transform.ASMUtils;
+import cz.cuni.mff.d3s.buben.transform.HierarchyClassWriter;
 
 
 /**
@@ -45,9 +47,9 @@ public class NativePeerGenerator
 	public static final String MJIENV_CLASS = "gov.nasa.jpf.vm.MJIEnv";
 
 
-	public static void createNativePeer(String className, Set<String> methodsPlainNameDesc, String clsFileDir) throws Exception
+	public static void createNativePeer(StaticAnalysisContext staCtx, String className, Set<String> methodsPlainNameDesc, String clsFileDir) throws Exception
 	{
-		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		ClassWriter cw = new HierarchyClassWriter(ClassWriter.COMPUTE_FRAMES, staCtx.cha);
 
 		// class header
 	
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.summaries;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
+
+/**
+ * Strongly connected components of the call graph over methods identified by integer indexes.
+ */
+public class MethodCallComponents
+{
+	/**
+	 * Returns components in the reverse topological order (callees before callers).
+	 * The list "callees" contains, for each method index, indexes of methods called from it.
+	 */
+	public static List<List<Integer>> computeBottomUp(List<List<Integer>> callees)
+	{
+		int numMethods = callees.size();
+
+		List<List<Integer>> components = new ArrayList<List<Integer>>();
+
+		// Tarjan's algorithm, implemented with an explicit stack because call chains in large libraries can be very deep
+
+		int[] dfsIndex = new int[numMethods];
+		int[] lowLink = new int[numMethods];
+		boolean[] onStack = new boolean[numMethods];
+
+		// value 0 means "not visited yet"
+		int nextDfsIndex = 1;
+
+		int[] sccStack = new int[numMethods];
+		int sccStackTop = 0;
+
+		// pairs (method index, position in the list of callees)
+		int[] dfsMethods = new int[numMethods];
+		int[] dfsCalleePos = new int[numMethods];
+
+		for (int root = 0; root < numMethods; root++)
+		{
+			if (dfsIndex[root] != 0) continue;
+
+			int dfsTop = 0;
+
+			dfsMethods[0] = root;
+			dfsCalleePos[0] = 0;
+
+			dfsIndex[root] = lowLink[root] = nextDfsIndex++;
+			sccStack[sccStackTop++] = root;
+			onStack[root] = true;
+
+			while (dfsTop >= 0)
+			{
+				int mthIdx = dfsMethods[dfsTop];
+
+				List<Integer> mthCallees = callees.get(mthIdx);
+
+				if (dfsCalleePos[dfsTop] < mthCallees.size())
+				{
+					int calleeIdx = mthCallees.get(dfsCalleePos[dfsTop]).intValue();
+					dfsCalleePos[dfsTop]++;
+
+					if (dfsIndex[calleeIdx] == 0)
+					{
+						// descend into the callee
+						dfsTop++;
+						dfsMethods[dfsTop] = calleeIdx;
+						dfsCalleePos[dfsTop] = 0;
+
+						dfsIndex[calleeIdx] = lowLink[calleeIdx] = nextDfsIndex++;
+						sccStack[sccStackTop++] = calleeIdx;
+						onStack[calleeIdx] = true;
+					}
+					else if (onStack[calleeIdx])
+					{
+						lowLink[mthIdx] = Math.min(lowLink[mthIdx], dfsIndex[calleeIdx]);
+					}
+
+					continue;
+				}
+
+				// all callees processed
+
+				if (lowLink[mthIdx] == dfsIndex[mthIdx])
+				{
+					// the method is the root of a component
+					
+					List<Integer> comp = new ArrayList<Integer>();
+
+					int memberIdx;
+					do
+					{
+						memberIdx = sccStack[--sccStackTop];
+						onStack[memberIdx] = false;
+						comp.add(memberIdx);
+					}
+					while (memberIdx != mthIdx);
+
+					// members are ordered by their indexes (e.g., to follow the order of call graph nodes)
+					Collections.sort(comp);
+
+					components.add(comp);
+				}
+
+				dfsTop--;
+
+				if (dfsTop >= 0)
+				{
+					int callerIdx = dfsMethods[dfsTop];
+					lowLink[callerIdx] = Math.min(lowLink[callerIdx], lowLink[mthIdx]);
+				}
+			}
+		}
+
+		return components;
+	}
+}
@@ -17,13 +17,25 @@ package cz.cuni.mff.d3s.buben.summaries;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.TreeSet;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Deque;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import java.security.MessageDigest;
 
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.IField;
@@ -52,6 +64,7 @@ import cz.cuni.mff.d3s.buben.Configuration;
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
 import cz.cuni.mff.d3s.buben.common.AllocationSite;
 import cz.cuni.mff.d3s.buben.common.ClassName;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.Expression;
@@ -63,10 +76,10 @@ import cz.cuni.mff.d3s.buben.bytecode.symbolic.ClassNameExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.NewObjectExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.NewArrayExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.AssignmentStatement;
-import cz.cuni.mff.d3s.buben.bytecode.symbolic.ConstantExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ReturnValueExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.ArithmeticExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.SpecialExpression;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
 import cz.cuni.mff.d3s.buben.analysis.SymbolicFieldArrayWriteAnalysis;
 import cz.cuni.mff.d3s.buben.analysis.SymbolicLocalVarWriteAnalysis;
 import cz.cuni.mff.d3s.buben.analysis.SymbolicInvokeArgumentsCollector;
@@ -80,52 +93,65 @@ import cz.cuni.mff.d3s.buben.dynamic.ArrayWriteInfo;
 import cz.cuni.mff.d3s.buben.dynamic.CallResultInfo;
 import cz.cuni.mff.d3s.buben.dynamic.DynamicInputOutputCollector;
 import cz.cuni.mff.d3s.buben.wala.WALAUtils;
+import cz.cuni.mff.d3s.buben.wala.ProgramPointTable;
 
 
 public class SideEffectSummaryGenAnalysis
 {
 	// method signature to the current summary
-	private static Map<String, MethodSideEffectSummary> mthSig2Summary;
+	private static ConcurrentMap<String, MethodSideEffectSummary> mthSig2Summary;
 	
-	// method signature to the object
-	private static Map<String, IMethod> mthSig2Obj;
+	// method ID (signature table) to the object
+	private static Map<Integer, IMethod> mthID2Obj;
 	
-	// method signature to unique reference
-	private static Map<String, MethodReference> mthSig2Ref;
+	// method ID to unique reference
+	private static Map<Integer, MethodReference> mthID2Ref;
 
-	// method signature to SSA IR
-	private static Map<String, IR> mthSig2IR;
+	// method ID to SSA IR
+	private static Map<Integer, IR> mthID2IR;
+	
+	// state of the component processed by the current thread during the fixpoint computation (null otherwise)
+	private static ThreadLocal<ComponentSummaryState> threadCompState = new ThreadLocal<ComponentSummaryState>();
 
 
 	static
 	{
-		mthSig2Summary = new HashMap<String, MethodSideEffectSummary>();
-		mthSig2Obj = new HashMap<String, IMethod>();		
-		mthSig2Ref = new HashMap<String, MethodReference>();
-		mthSig2IR = new HashMap<String, IR>();
+		// summaries are read concurrently in the parallel mode
+		mthSig2Summary = new ConcurrentHashMap<String, MethodSideEffectSummary>();
+		mthID2Obj = new HashMap<Integer, IMethod>();		
+		mthID2Ref = new HashMap<Integer, MethodReference>();
+		mthID2IR = new HashMap<Integer, IR>();
 	}
 
 	
 	public static void analyzeProgram(StaticAnalysisContext staCtx) throws Exception
 	{
-		// list elements are method signatures
-		List<String> mthWorklist = new LinkedList<String>();
+		// reachable pure Java library methods (signatures) in the order of call graph nodes
+		List<String> libMethods = new ArrayList<String>();
 		
-		// put all reachable pure Java library methods into the worklist
+		// method signature to its index in the list
+		Map<String, Integer> libMthSig2Index = new HashMap<String, Integer>();
+		
+		// put all reachable pure Java library methods into the list
 		for (Iterator<CGNode> cgnIt = staCtx.clGraph.iterator(); cgnIt.hasNext(); )
 		{
 			CGNode cgn = cgnIt.next();
 			
 			IMethod mth = cgn.getMethod();
 			
-			String methodSig = mth.getSignature();
+			int methodID = SignatureTable.getID(mth.getSignature());
+			
+			// we use the interned signature as a key in all maps
+			String methodSig = SignatureTable.getSignature(methodID);
 			
-			mthSig2Obj.put(methodSig, mth);
-			mthSig2Ref.put(methodSig, mth.getReference());
+			mthID2Obj.put(methodID, mth);
+			mthID2Ref.put(methodID, mth.getReference());
 			
 			// use results of the dynamic analysis for native methods
 			if (mth.isNative()) 
 			{
+				SignatureTable.markNativeMethod(methodID);
+				
 				MethodSideEffectSummary nativeMthSumm = extractSummaryForNativeExternMethod(methodSig, mth, staCtx);
 				
 				mthSig2Summary.put(methodSig, nativeMthSumm);
@@ -135,7 +161,7 @@ public class SideEffectSummaryGenAnalysis
 
 			// use results of the dynamic analysis for library methods that access external entities (according to configuration)
 			// initialize/bootstrap summaries for these methods
-			if (Configuration.isExternalAccessMethod(methodSig))
+			if (SignatureTable.isExternalAccessMethod(methodID))
 			{
 				MethodSideEffectSummary externMthSumm = extractSummaryForNativeExternMethod(methodSig, mth, staCtx);
 				
@@ -149,75 +175,396 @@ public class SideEffectSummaryGenAnalysis
 			if (mth.isAbstract()) continue;
 			
 			// skip methods that do not belong to any library
-			if ( ! Configuration.isLibraryMethod(methodSig) ) continue;
+			if ( ! SignatureTable.isLibraryMethod(methodID) ) continue;
+			
+			mthID2IR.put(methodID, WALAUtils.getMethodIR(staCtx, cgn));
+			
+			if ( ! libMthSig2Index.containsKey(methodSig) )
+			{
+				libMthSig2Index.put(methodSig, libMethods.size());
+				libMethods.add(methodSig);
+			}
+		}
+		
+		// call graph restricted to the library methods (edges between method indexes)
+		
+		List<List<Integer>> libCallees = new ArrayList<List<Integer>>();
+		List<List<Integer>> libCallers = new ArrayList<List<Integer>>();
+		
+		for (int i = 0; i < libMethods.size(); i++)
+		{
+			libCallees.add(new ArrayList<Integer>());
+			libCallers.add(new ArrayList<Integer>());
+		}
+		
+		for (int mthIdx = 0; mthIdx < libMethods.size(); mthIdx++)
+		{
+			Set<Integer> mthCallees = new HashSet<Integer>();
 			
-			mthSig2IR.put(methodSig, cgn.getIR());
+			for ( CGNode mthNode : staCtx.clGraph.getNodes(mthID2Ref.get(SignatureTable.getID(libMethods.get(mthIdx)))) )
+			{
+				Iterator<CGNode> calleeNodesIt = staCtx.clGraph.getSuccNodes(mthNode);
+				
+				while (calleeNodesIt.hasNext())
+				{
+					Integer calleeIdx = libMthSig2Index.get(calleeNodesIt.next().getMethod().getSignature());
+					
+					// we do not have to consider callees that are not library methods (their summaries do not change)
+					if (calleeIdx == null) continue;
+					
+					if (mthCallees.add(calleeIdx))
+					{
+						libCallees.get(mthIdx).add(calleeIdx);
+						libCallers.get(calleeIdx).add(mthIdx);
+					}
+				}
+			}
+		}
+		
+		// every callee outside of the library gets its (possibly empty) summary before the fixpoint computation starts
+			// this way the result does not depend on the order in which methods are processed
+		
+		for (int mthIdx = 0; mthIdx < libMethods.size(); mthIdx++)
+		{
+			for ( CGNode mthNode : staCtx.clGraph.getNodes(mthID2Ref.get(SignatureTable.getID(libMethods.get(mthIdx)))) )
+			{
+				Iterator<CGNode> calleeNodesIt = staCtx.clGraph.getSuccNodes(mthNode);
+				
+				while (calleeNodesIt.hasNext())
+				{
+					String calleeMthSig = calleeNodesIt.next().getMethod().getSignature();
+					
+					if ( ! libMthSig2Index.containsKey(calleeMthSig) ) getSummaryForMethod(calleeMthSig);
+				}
+			}
+		}
+		
+		// process strongly connected components of the library call graph in the reverse topological order (bottom-up)
+			// summaries of all callees outside of the current component are already final when the component is processed
+		
+		List<List<Integer>> libComponents = MethodCallComponents.computeBottomUp(libCallees);
+		
+		// index of the component for each method
+		int[] mthIdx2Comp = new int[libMethods.size()];
+		
+		for (int compIdx = 0; compIdx < libComponents.size(); compIdx++)
+		{
+			for (Integer mthIdx : libComponents.get(compIdx)) mthIdx2Comp[mthIdx] = compIdx;
+		}
+		
+		// membership of methods in the worklist (each component uses only entries for its members)
+		boolean[] inWorklist = new boolean[libMethods.size()];
+		
+		int summaryComputations = 0;
+		
+		// components at the same level (depth in the condensed call graph) do not depend on each other through call edges, so their summaries can be computed concurrently
+			// level of a component is greater than levels of all the components it calls
+		
+		int[] compLevels = new int[libComponents.size()];
+		
+		List<List<Integer>> levels = new ArrayList<List<Integer>>();
+		
+		for (int compIdx = 0; compIdx < libComponents.size(); compIdx++)
+		{
+			int level = 0;
 			
-			if ( ! mthWorklist.contains(methodSig) ) mthWorklist.add(methodSig);
+			for (Integer mthIdx : libComponents.get(compIdx))
+			{
+				for (Integer calleeIdx : libCallees.get(mthIdx))
+				{
+					int calleeCompIdx = mthIdx2Comp[calleeIdx];
+					
+					if (calleeCompIdx != compIdx) level = Math.max(level, compLevels[calleeCompIdx] + 1);
+				}
+			}
+			
+			compLevels[compIdx] = level;
+			
+			while (levels.size() <= level) levels.add(new ArrayList<Integer>());
+			
+			levels.get(level).add(compIdx);
+		}
+		
+		// components of one level may still read summaries of each other (expanded return values), and therefore we process every level in rounds
+			// in each round, components read only summaries published before the round and keep their own new summaries private
+			// new summaries are published after the round in the order of components, and components that read some changed summary are processed again
+			// this way the result does not depend on the number of threads and on timing
+		
+		ForkJoinPool workers = null;
+		
+		if (Configuration.analysisThreads > 1) workers = new ForkJoinPool(Configuration.analysisThreads);
+		
+		int rounds = 0;
+		
+		try
+		{
+			for (List<Integer> levelComps : levels)
+			{
+				List<Integer> roundComps = levelComps;
+				
+				while ( ! roundComps.isEmpty() )
+				{
+					rounds++;
+					
+					List<ComponentSummaryState> roundStates = new ArrayList<ComponentSummaryState>();
+					
+					if (workers != null)
+					{
+						List<Future<ComponentSummaryState>> results = new ArrayList<Future<ComponentSummaryState>>();
+						
+						for (Integer compIdx : roundComps)
+						{
+							results.add(workers.submit(new ComponentSummaryTask(compIdx, libComponents.get(compIdx), mthIdx2Comp, inWorklist, libMethods, libCallers, staCtx)));
+						}
+						
+						// wait for the whole round before publishing the new summaries
+						for (Future<ComponentSummaryState> res : results)
+						{
+							try
+							{
+								roundStates.add(res.get());
+							}
+							catch (ExecutionException ex)
+							{
+								if (ex.getCause() instanceof Exception) throw (Exception) ex.getCause();
+								throw ex;
+							}
+						}
+					}
+					else
+					{
+						for (Integer compIdx : roundComps)
+						{
+							roundStates.add(new ComponentSummaryTask(compIdx, libComponents.get(compIdx), mthIdx2Comp, inWorklist, libMethods, libCallers, staCtx).call());
+						}
+					}
+					
+					// publish new summaries and find those that changed in this round
+					
+					Set<String> changedSigs = new HashSet<String>();
+					
+					for (ComponentSummaryState compState : roundStates)
+					{
+						summaryComputations += compState.computations;
+						
+						for (Map.Entry<String, MethodSideEffectSummary> me : compState.summaries.entrySet())
+						{
+							MethodSideEffectSummary prevSumm = mthSig2Summary.put(me.getKey(), me.getValue());
+							
+							if ((prevSumm == null) || ( ! prevSumm.equals(me.getValue()) )) changedSigs.add(me.getKey());
+						}
+					}
+					
+					List<Integer> nextRoundComps = new ArrayList<Integer>();
+					
+					for (ComponentSummaryState compState : roundStates)
+					{
+						for (String readSig : compState.foreignReads)
+						{
+							if (changedSigs.contains(readSig))
+							{
+								nextRoundComps.add(compState.compIdx);
+								break;
+							}
+						}
+					}
+					
+					roundComps = nextRoundComps;
+				}
+			}
+		}
+		finally
+		{
+			if (workers != null) workers.shutdownNow();
+		}
+		
+		if (Configuration.DEBUG)
+		{
+			System.out.println("[DEBUG] summaries: levels = " + levels.size() + ", rounds = " + rounds);
+		}
+		
+		if (Configuration.DEBUG)
+		{
+			System.out.println("[DEBUG] summaries: library methods = " + libMethods.size() + ", components = " + libComponents.size() + ", computations = " + summaryComputations);
+		}
+	}
+	
+	private static ComponentSummaryState computeSummariesForComponent(int compIdx, List<Integer> comp, int[] mthIdx2Comp, boolean[] inWorklist, List<String> libMethods, List<List<Integer>> libCallers, StaticAnalysisContext staCtx) throws Exception
+	{
+		ComponentSummaryState compState = new ComponentSummaryState(compIdx);
+		
+		// summaries are accessed through the component state by the current thread
+		threadCompState.set(compState);
+		
+		try
+		{
+			computeSummariesForComponent(compState, comp, mthIdx2Comp, inWorklist, libMethods, libCallers, staCtx);
+		}
+		finally
+		{
+			threadCompState.remove();
+		}
+		
+		return compState;
+	}
+	
+	private static void computeSummariesForComponent(ComponentSummaryState compState, List<Integer> comp, int[] mthIdx2Comp, boolean[] inWorklist, List<String> libMethods, List<List<Integer>> libCallers, StaticAnalysisContext staCtx) throws Exception
+	{
+		int compIdx = compState.compIdx;
+		
+		// worklist algorithm over the methods in the component
+		
+		Deque<Integer> mthWorklist = new ArrayDeque<Integer>();
+		
+		for (Integer mthIdx : comp)
+		{
+			inWorklist[mthIdx] = true;
+			mthWorklist.addLast(mthIdx);
 		}
 		
-		// perform worklist algorithm over the method signatures
 		while ( ! mthWorklist.isEmpty() )
 		{
-			String curMthSig = mthWorklist.remove(0);
+			int curMthIdx = mthWorklist.removeFirst().intValue();
+			inWorklist[curMthIdx] = false;
+			
+			String curMthSig = libMethods.get(curMthIdx);
 			
-			IMethod curMth = mthSig2Obj.get(curMthSig);
-			IR curMthIR = mthSig2IR.get(curMthSig);
+			int curMthID = SignatureTable.getID(curMthSig);
 			
-			MethodSideEffectSummary curMthOrigSumm = getSummaryForMethod(curMthSig);
+			IMethod curMth = mthID2Obj.get(curMthID);
+			IR curMthIR = mthID2IR.get(curMthID);
+			
+			// reading the previous summary of the current method does not make the component depend on it
+			MethodSideEffectSummary curMthOrigSumm = lookupSummary(curMthSig, false);
+			if (curMthOrigSumm == null) curMthOrigSumm = createEmptySummary(curMthSig);
 
 			// perform simple intra-procedural analysis of the given method to compute its summary 
 				// find all side effects (field write, array element update, newly allocated objects, returned parameters)
 				// when processing a given method consider also nested calls (available summaries for them) transitively
 			MethodSideEffectSummary curMthNewSumm = computeSummaryForMethod(curMthSig, curMth, curMthIR, staCtx);
+			
+			compState.computations++;
 		
 			if ( ! curMthOrigSumm.equals(curMthNewSumm) )
 			{
 				// summary for the method changed in this iteration
 				
-				// add callers into the worklist to ensure that we soundly recompute their summaries				
-				for ( CGNode curMthNode : staCtx.clGraph.getNodes(mthSig2Ref.get(curMthSig)) )
+				// add callers from the same component into the worklist to ensure that we soundly recompute their summaries
+					// callers in other components are processed later
+				for (Integer callerIdx : libCallers.get(curMthIdx))
 				{
-					Iterator<CGNode> callerNodesIt = staCtx.clGraph.getPredNodes(curMthNode);
-				
-					while (callerNodesIt.hasNext())
+					if (mthIdx2Comp[callerIdx] != compIdx) continue;
+					
+					if ( ! inWorklist[callerIdx] )
 					{
-						CGNode callerNode = callerNodesIt.next();
-						
-						String callerMthSig = callerNode.getMethod().getSignature();
-						
-						// ignore synthetic methods (fake root)
-						if (callerNode.getMethod().isSynthetic()) continue;
-
-						// ignore abstract methods
-						if (callerNode.getMethod().isAbstract()) continue;
-						
-						// ignore methods that do not belong to any library
-						// we do not have to compute summaries for callers that are not library methods
-						if ( ! Configuration.isLibraryMethod(callerMthSig) ) continue;
-												
-						if ( ! mthWorklist.contains(callerMthSig) ) mthWorklist.add(callerMthSig);
+						inWorklist[callerIdx] = true;
+						mthWorklist.addLast(callerIdx);
 					}
 				}
 			}
 			
-			mthSig2Summary.put(curMthSig, curMthNewSumm);
+			// other components see the new summary only after it is published at the end of the round
+			compState.summaries.put(curMthSig, curMthNewSumm);
 		}
 	}
 
 	public static MethodSideEffectSummary getSummaryForMethod(String mthSig)
 	{
-		MethodSideEffectSummary mthSumm = mthSig2Summary.get(mthSig);
+		MethodSideEffectSummary mthSumm = lookupSummary(mthSig, true);
 		
 		if (mthSumm == null)
 		{
-			mthSumm = new MethodSideEffectSummary(mthSig, new HashMap<FieldAccessExpression, Set<Expression>>(), new HashMap<ArrayAccessExpression, Set<Expression>>(), new HashSet<NewObjectExpression>(), new HashSet<NewArrayExpression>(), new HashSet<Integer>(), new HashSet<Expression>(), new HashSet<FieldAccessExpression>(), new HashSet<ArrayAccessExpression>());
-			mthSig2Summary.put(mthSig, mthSumm);
+			mthSumm = createEmptySummary(mthSig);
+			
+			// the summary keeps a reference to the signature, so we store only its interned copy
+			mthSig = mthSumm.methodSig;
+			
+			ComponentSummaryState compState = threadCompState.get();
+			
+			if (compState != null)
+			{
+				// the new summary becomes visible to other components when it is published
+				compState.summaries.put(mthSig, mthSumm);
+			}
+			else
+			{
+				// another thread may have stored the summary in the meantime
+				MethodSideEffectSummary prevSumm = mthSig2Summary.putIfAbsent(mthSig, mthSumm);
+				if (prevSumm != null) mthSumm = prevSumm;
+			}
 		}
 		
 		return mthSumm;
 	}
 	
+	private static MethodSideEffectSummary createEmptySummary(String mthSig)
+	{
+		return new MethodSideEffectSummary(SignatureTable.intern(mthSig), new HashMap<FieldAccessExpression, Set<Expression>>(), new HashMap<ArrayAccessExpression, Set<Expression>>(), new HashSet<NewObjectExpression>(), new HashSet<NewArrayExpression>(), new HashSet<Integer>(), new HashSet<Expression>(), new HashSet<FieldAccessExpression>(), new HashSet<ArrayAccessExpression>());
+	}
+	
+	private static MethodSideEffectSummary lookupSummary(String mthSig, boolean recordRead)
+	{
+		ComponentSummaryState compState = threadCompState.get();
+		
+		// outside of the fixpoint computation
+		if (compState == null) return mthSig2Summary.get(mthSig);
+		
+		MethodSideEffectSummary mthSumm = compState.summaries.get(mthSig);
+		
+		if (mthSumm != null) return mthSumm;
+		
+		// the component must be processed again if this summary changes in the current round
+		if (recordRead) compState.foreignReads.add(mthSig);
+		
+		return mthSig2Summary.get(mthSig);
+	}
+	
+	public static String computeSummariesDigest() throws Exception
+	{
+		// the digest does not depend on the iteration order of hash-based sets, so runs with different numbers of threads can be compared
+		
+		MessageDigest md = MessageDigest.getInstance("SHA-1");
+		
+		Set<String> methodSigs = new TreeSet<String>();
+		methodSigs.addAll(mthSig2Summary.keySet());
+		
+		for (String mthSig : methodSigs)
+		{
+			MethodSideEffectSummary mthSumm = mthSig2Summary.get(mthSig);
+			
+			List<String> summLines = new ArrayList<String>();
+			
+			for (Map.Entry<FieldAccessExpression, Set<Expression>> meF2V : mthSumm.updatedFields2Values.entrySet())
+			{
+				for (Expression nVal : meF2V.getValue()) summLines.add("field " + meF2V.getKey() + " = " + nVal);
+			}
+			
+			for (Map.Entry<ArrayAccessExpression, Set<Expression>> meA2V : mthSumm.updatedArrays2Values.entrySet())
+			{
+				for (Expression nVal : meA2V.getValue()) summLines.add("array " + meA2V.getKey() + " = " + nVal);
+			}
+			
+			for (NewObjectExpression newObj : mthSumm.newObjects) summLines.add("new object " + newObj);
+			for (NewArrayExpression newArray : mthSumm.newArrays) summLines.add("new array " + newArray);
+			for (Integer paramIdx : mthSumm.returnedParams) summLines.add("returned param " + paramIdx);
+			for (Expression retVal : mthSumm.returnValues) summLines.add("return value " + retVal);
+			for (FieldAccessExpression fieldExpr : mthSumm.unsynchFields) summLines.add("unsynch field " + fieldExpr);
+			for (ArrayAccessExpression arrayExpr : mthSumm.unsynchArrays) summLines.add("unsynch array " + arrayExpr);
+			
+			Collections.sort(summLines);
+			
+			md.update((mthSig + "\n").getBytes("UTF-8"));
+			
+			for (String line : summLines) md.update(("\t" + line + "\n").getBytes("UTF-8"));
+		}
+		
+		StringBuffer digestStr = new StringBuffer();
+		
+		for (byte b : md.digest()) digestStr.append(String.format("%02x", b));
+		
+		return digestStr.toString();
+	}
+	
 	public static void printMethodSummaries()
 	{
 		System.out.println("METHOD SUMMARIES");
@@ -311,6 +658,8 @@ public class SideEffectSummaryGenAnalysis
 		Set<ArrayAccessExpression> mthUnsynchArrays = new HashSet<ArrayAccessExpression>();
 		
 		SSAInstruction[] instructions = mthIR.getInstructions();
+
+		ProgramPointTable mthProgPoints = ProgramPointTable.getForMethod(mth, mthSig);
 		
 		Set<ProgramPoint> mthLockedPoints = SynchronizedAccessAnalysis.getLockedPointsForMethod(mthSig);
 		
@@ -326,9 +675,7 @@ public class SideEffectSummaryGenAnalysis
 			
 			if (insn == null) continue;
 			
-			int insnPos = WALAUtils.getInsnBytecodePos(mth, insnIndex);
-			
-			ProgramPoint insnPP = new ProgramPoint(mthSig, insnIndex, insnPos);
+			ProgramPoint insnPP = mthProgPoints.getProgramPoint(insnIndex);
 			
 			// collect field write accesses
 			if (insn instanceof SSAPutInstruction)
@@ -546,7 +893,7 @@ public class SideEffectSummaryGenAnalysis
 				SSAInvokeInstruction invokeInsn = (SSAInvokeInstruction) insn;
 						
 				// process callees for this invoke
-				for ( CGNode mthNode : staCtx.clGraph.getNodes(mthSig2Ref.get(mthSig)) )
+				for ( CGNode mthNode : staCtx.clGraph.getNodes(mthID2Ref.get(insnPP.methodID)) )
 				{
 					for ( CGNode calleeNode : staCtx.clGraph.getPossibleTargets(mthNode, invokeInsn.getCallSite()) )
 					{
@@ -874,7 +1221,7 @@ public class SideEffectSummaryGenAnalysis
 				// populate summary for the current return variable based on all the possibly called methods
 				
 				// process callees for this invoke
-				for ( CGNode mthNode : staCtx.clGraph.getNodes(mthSig2Ref.get(mthSig)) )
+				for ( CGNode mthNode : staCtx.clGraph.getNodes(mthID2Ref.get(retInsnPP.methodID)) )
 				{
 					for ( CGNode tgtNode : staCtx.clGraph.getPossibleTargets(mthNode, invokeInsn.getCallSite()) )
 					{
@@ -966,7 +1313,7 @@ public class SideEffectSummaryGenAnalysis
 				
 				for (Integer slot : paramTypeSlots)
 				{
-					FieldAccessExpression instanceFieldExpr = new FieldAccessExpression(new LocalVarExpression(slot, "local"+slot, fwInfo.className, true), fwInfo.className, fwInfo.fieldName, fwInfo.fieldType, false);
+					FieldAccessExpression instanceFieldExpr = ExpressionFactory.createFieldAccess(ExpressionFactory.createLocalVar(slot, "local"+slot, fwInfo.className, true), fwInfo.className, fwInfo.fieldName, fwInfo.fieldType, false);
 			
 					Set<Expression> feNewValues = new HashSet<Expression>();
 					feNewValues.add(fwInfo.newValue);
@@ -976,7 +1323,7 @@ public class SideEffectSummaryGenAnalysis
 			}
 			else // static field
 			{
-				FieldAccessExpression staticFieldExpr = new FieldAccessExpression(new ClassNameExpression(fwInfo.className), fwInfo.className, fwInfo.fieldName, fwInfo.fieldType, true);
+				FieldAccessExpression staticFieldExpr = ExpressionFactory.createFieldAccess(ExpressionFactory.createClassName(fwInfo.className), fwInfo.className, fwInfo.fieldName, fwInfo.fieldType, true);
 			
 				Set<Expression> feNewValues = new HashSet<Expression>();
 				feNewValues.add(fwInfo.newValue);
@@ -998,7 +1345,7 @@ public class SideEffectSummaryGenAnalysis
 
 			for (Integer slot : paramTypeSlots)
 			{
-				ArrayAccessExpression arrayExpr = new ArrayAccessExpression(new LocalVarExpression(slot, "local"+slot, awInfo.className, true), awInfo.className, new ConstantExpression(awInfo.elementIndex), awInfo.elementType);
+				ArrayAccessExpression arrayExpr = ExpressionFactory.createArrayAccess(ExpressionFactory.createLocalVar(slot, "local"+slot, awInfo.className, true), awInfo.className, ExpressionFactory.createConstant(awInfo.elementIndex), awInfo.elementType);
 			
 				Set<Expression> aeNewValues = new HashSet<Expression>();
 				aeNewValues.add(awInfo.newValue);
@@ -1037,7 +1384,7 @@ public class SideEffectSummaryGenAnalysis
 
 				// use currently known return values from the summary of target callee method
 
-				MethodSideEffectSummary calleeMthSumm = mthSig2Summary.get(retExpr.methodSig);
+				MethodSideEffectSummary calleeMthSumm = lookupSummary(retExpr.methodSig, true);
 
 				// summary not yet available (postpone replacement to some future iteration of the worklist algorithm)
 				if (calleeMthSumm == null) continue;
@@ -1173,4 +1520,52 @@ public class SideEffectSummaryGenAnalysis
 			return hc;	
 		}
 	}
+
+	static class ComponentSummaryState
+	{
+		public int compIdx;
+		
+		// new summaries computed for methods of the component (not yet published)
+		public Map<String, MethodSideEffectSummary> summaries;
+		
+		// methods whose published summaries were read during the computation
+		public Set<String> foreignReads;
+		
+		public int computations;
+		
+		public ComponentSummaryState(int cidx)
+		{
+			this.compIdx = cidx;
+			this.summaries = new LinkedHashMap<String, MethodSideEffectSummary>();
+			this.foreignReads = new HashSet<String>();
+			this.computations = 0;
+		}
+	}
+	
+	static class ComponentSummaryTask implements Callable<ComponentSummaryState>
+	{
+		private int compIdx;
+		private List<Integer> comp;
+		private int[] mthIdx2Comp;
+		private boolean[] inWorklist;
+		private List<String> libMethods;
+		private List<List<Integer>> libCallers;
+		private StaticAnalysisContext staCtx;
+
+		public ComponentSummaryTask(int cidx, List<Integer> c, int[] m2c, boolean[] inwl, List<String> lm, List<List<Integer>> lc, StaticAnalysisContext ctx)
+		{
+			this.compIdx = cidx;
+			this.comp = c;
+			this.mthIdx2Comp = m2c;
+			this.inWorklist = inwl;
+			this.libMethods = lm;
+			this.libCallers = lc;
+			this.staCtx = ctx;
+		}
+
+		public ComponentSummaryState call() throws Exception
+		{
+			return computeSummariesForComponent(compIdx, comp, mthIdx2Comp, inWorklist, libMethods, libCallers, staCtx);
+		}
+	}
 }
@@ -26,6 +26,7 @@ import org.objectweb.asm.Type;
 import cz.cuni.mff.d3s.buben.Configuration;
 import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.*;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
 import cz.cuni.mff.d3s.buben.summaries.*;
 
 
@@ -163,7 +164,7 @@ public class ASMUtils implements Opcodes
 		{
 			String elementTypeName = Utils.getElementTypeFromArrayClassName(Utils.getPlainTypeName(type.getInternalName()));
 				
-			generateNewArray(mv, elementTypeName, new ConstantExpression(new Integer(0)));
+			generateNewArray(mv, elementTypeName, ExpressionFactory.createConstant(new Integer(0)));
 
 			return;
 		}
@@ -383,7 +384,7 @@ public class ASMUtils implements Opcodes
 				String elementTypeName = Utils.getElementTypeFromArrayObjectDescriptor(heapExpr.descriptor);
 				
 				int arrayLengthNum = Utils.getLengthFromArrayObjectDescriptor(heapExpr.descriptor);
-				Expression arrayLengthExpr = new ConstantExpression(new Integer(arrayLengthNum));
+				Expression arrayLengthExpr = ExpressionFactory.createConstant(new Integer(arrayLengthNum));
 				
 				generateNewArray(mv, elementTypeName, arrayLengthExpr);
 
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.transform;
+
+
+/**
+ * Records whether some bytecode instruction in the current class was actually replaced by a method visitor.
+ */
+public class ClassChangeTracker
+{
+	private boolean changed;
+
+
+	public ClassChangeTracker()
+	{
+		this.changed = false;
+	}
+
+	public void markChanged()
+	{
+		changed = true;
+	}
+
+	public boolean isChanged()
+	{
+		return changed;
+	}
+}
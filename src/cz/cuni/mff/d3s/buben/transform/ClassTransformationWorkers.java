@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.transform;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.HashSet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+
+import java.nio.file.Files;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cz.cuni.mff.d3s.buben.Configuration;
+
+
+/**
+ * Runs transformations of individual class files, possibly concurrently.
+ * Each task reads, transforms, and writes one class file, so that tasks in a single batch are independent.
+ * We also collect statistics about written and untouched class files.
+ * Transformed classes are saved either in place (over the original class files) or into a separate overlay directory.
+ */
+public class ClassTransformationWorkers
+{
+	// classes whose bytecode was modified and saved
+	private static AtomicInteger rewrittenClasses;
+
+	// classes where no statement had to be replaced (their files are not written at all)
+	private static AtomicInteger untouchedClasses;
+
+	// classes whose transformed bytecode is identical to the original one
+	private static AtomicInteger identicalClasses;
+
+	private static AtomicLong bytesWritten;
+
+	// file in the output directory that lists class files written by the last run (relative paths)
+	private static final String WRITTEN_FILES_MANIFEST = ".buben-written";
+
+	// class files already listed in the manifest
+	private static Set<String> writtenClassFiles;
+
+	static
+	{
+		rewrittenClasses = new AtomicInteger(0);
+		untouchedClasses = new AtomicInteger(0);
+		identicalClasses = new AtomicInteger(0);
+		bytesWritten = new AtomicLong(0);
+
+		writtenClassFiles = new HashSet<String>();
+	}
+
+
+	public static void executeTasks(List<? extends Callable<Void>> clsTasks) throws Exception
+	{
+		// we use a single thread in the debug mode because generators share the ASMifier that prints bytecode of the current method
+		if ((Configuration.transformThreads <= 1) || Configuration.DEBUG)
+		{
+			for (Callable<Void> task : clsTasks) task.call();
+
+			return;
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(Configuration.transformThreads);
+
+		try
+		{
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+
+			for (Callable<Void> task : clsTasks)
+			{
+				results.add(workers.submit(task));
+			}
+
+			for (Future<Void> res : results)
+			{
+				try
+				{
+					res.get();
+				}
+				catch (ExecutionException ex)
+				{
+					if (ex.getCause() instanceof Exception) throw (Exception) ex.getCause();
+					throw ex;
+				}
+			}
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+	}
+
+	public static void checkOutputDirectory() throws Exception
+	{
+		if (Configuration.transformOutputPath == null) return;
+
+		// we compare canonical paths so that symbolic links and relative paths ("..") cannot hide the overlap
+		File outputDir = new File(Configuration.transformOutputPath).getCanonicalFile();
+		File classPathDir = new File(Configuration.targetClassPath).getCanonicalFile();
+
+		// transformed classes would be taken as inputs (or the original class files overwritten)
+		if (isSameOrNested(outputDir, classPathDir) || isSameOrNested(classPathDir, outputDir))
+		{
+			throw new Exception("output directory " + outputDir.getPath() + " and class path " + classPathDir.getPath() + " must not contain each other");
+		}
+	}
+
+	private static boolean isSameOrNested(File innerDir, File outerDir)
+	{
+		for (File dir = innerDir; dir != null; dir = dir.getParentFile())
+		{
+			if (dir.equals(outerDir)) return true;
+		}
+
+		return false;
+	}
+
+	public static void prepareOutputDirectory() throws Exception
+	{
+		if (Configuration.transformOutputPath == null) return;
+
+		File outputDir = new File(Configuration.transformOutputPath);
+
+		// class files left by previous runs would be taken as inputs of the transformation
+		// we delete only files listed in the manifest (i.e., written by some previous run), so that other content of the directory is never lost
+		File manifestFile = new File(outputDir, WRITTEN_FILES_MANIFEST);
+
+		if (manifestFile.exists())
+		{
+			for (String clsFileName : Files.readAllLines(manifestFile.toPath()))
+			{
+				if (clsFileName.isEmpty()) continue;
+
+				new File(outputDir, clsFileName).delete();
+			}
+
+			manifestFile.delete();
+		}
+
+		outputDir.mkdirs();
+	}
+
+	private static synchronized void recordWrittenFile(String clsFileName) throws Exception
+	{
+		// some classes are written by several stages
+		if ( ! writtenClassFiles.add(clsFileName) ) return;
+
+		// the manifest is updated before the class file is written, so that files of interrupted runs are also deleted next time
+		FileWriter manifestOut = new FileWriter(new File(Configuration.transformOutputPath, WRITTEN_FILES_MANIFEST), true);
+		manifestOut.write(clsFileName + "\n");
+		manifestOut.close();
+	}
+
+	public static String getInputClassFilePath(String clsName)
+	{
+		String clsFileName = clsName.replace('.', '/') + ".class";
+
+		// the class may have been already transformed by some previous stage
+		if (Configuration.transformOutputPath != null)
+		{
+			File overlayClsFile = new File(Configuration.transformOutputPath, clsFileName);
+
+			if (overlayClsFile.exists()) return overlayClsFile.getPath();
+		}
+
+		return Configuration.targetClassPath + File.separator + clsFileName;
+	}
+
+	public static String getOutputClassFilePath(String clsName) throws Exception
+	{
+		String clsFileName = clsName.replace('.', '/') + ".class";
+
+		if (Configuration.transformOutputPath == null) return Configuration.targetClassPath + File.separator + clsFileName;
+
+		File overlayClsFile = new File(Configuration.transformOutputPath, clsFileName);
+
+		// directories for packages
+		overlayClsFile.getParentFile().mkdirs();
+
+		recordWrittenFile(clsFileName);
+
+		return overlayClsFile.getPath();
+	}
+
+	public static void writeClassFile(String clsName, byte[] origBytes, byte[] newBytes) throws Exception
+	{
+		// we do not have to write the file if its content would be the same as the input
+		if (Arrays.equals(origBytes, newBytes))
+		{
+			identicalClasses.incrementAndGet();
+			return;
+		}
+
+		FileOutputStream outf = new FileOutputStream(getOutputClassFilePath(clsName));
+		outf.write(newBytes);
+		outf.close();
+
+		rewrittenClasses.incrementAndGet();
+		bytesWritten.addAndGet(newBytes.length);
+	}
+
+	public static void recordUntouchedClass()
+	{
+		untouchedClasses.incrementAndGet();
+	}
+
+	public static void printStatistics()
+	{
+		System.out.println("[INFO] transformed classes: rewritten = " + rewrittenClasses.get() + ", untouched = " + untouchedClasses.get() + ", identical = " + identicalClasses.get() + ", bytes written = " + bytesWritten.get());
+	}
+}
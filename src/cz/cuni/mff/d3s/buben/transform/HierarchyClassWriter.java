@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.transform;
+
+import java.util.Map;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.TypeName;
+
+
+/**
+ * Class writer that computes common superclasses (needed for stack map frames) using the class hierarchy from WALA.
+ * The default implementation in ASM loads the classes into the running JVM, and it fails for classes that are not on the classpath of the tool.
+ * Classes missing in the class hierarchy are resolved by reading their class files (they are never loaded).
+ */
+public class HierarchyClassWriter extends ClassWriter
+{
+	private static final String OBJECT_INTERNAL_NAME = "java/lang/Object";
+
+	// map from a pair of internal class names (separated by ";") to the internal name of their common superclass
+	// results are shared by all writers because there is just one class hierarchy for the whole program
+	private static Map<String, String> types2CommonSuperClass;
+
+	// map from the internal class name to information read from the class file (for classes missing in the class hierarchy)
+	private static Map<String, ClassFileInfo> clsName2FileInfo;
+
+	static
+	{
+		types2CommonSuperClass = new ConcurrentHashMap<String, String>();
+
+		clsName2FileInfo = new ConcurrentHashMap<String, ClassFileInfo>();
+	}
+
+	private IClassHierarchy cha;
+
+
+	public HierarchyClassWriter(int flags, IClassHierarchy cha)
+	{
+		super(flags);
+
+		this.cha = cha;
+	}
+
+	protected String getCommonSuperClass(String type1, String type2)
+	{
+		String typesKey = type1 + ";" + type2;
+
+		String superClsName = types2CommonSuperClass.get(typesKey);
+
+		if (superClsName == null)
+		{
+			superClsName = computeCommonSuperClass(type1, type2);
+
+			types2CommonSuperClass.put(typesKey, superClsName);
+		}
+
+		return superClsName;
+	}
+
+	private String computeCommonSuperClass(String type1, String type2)
+	{
+		IClass cls1 = lookupClass(type1);
+		IClass cls2 = lookupClass(type2);
+
+		// some classes may be missing in the class hierarchy (for example, classes excluded from the static analysis)
+		if ((cls1 == null) || (cls2 == null)) return computeCommonSuperClassFromFiles(type1, type2);
+
+		// we follow the algorithm used by ASM
+
+		if (cha.isAssignableFrom(cls1, cls2)) return type1;
+		if (cha.isAssignableFrom(cls2, cls1)) return type2;
+
+		if (cls1.isInterface() || cls2.isInterface()) return OBJECT_INTERNAL_NAME;
+
+		IClass superCls = cls1.getSuperclass();
+
+		while ((superCls != null) && ( ! cha.isAssignableFrom(superCls, cls2) ))
+		{
+			superCls = superCls.getSuperclass();
+		}
+
+		if (superCls == null) return OBJECT_INTERNAL_NAME;
+
+		// the WALA type name has the form "Lpkg/Cls" (without the final semicolon)
+		return superCls.getName().toString().substring(1);
+	}
+
+	private String computeCommonSuperClassFromFiles(String type1, String type2)
+	{
+		// the same algorithm as above, but the supertypes are taken from the class hierarchy or from class files
+
+		if (isAssignableFrom(type1, type2)) return type1;
+		if (isAssignableFrom(type2, type1)) return type2;
+
+		if (getClassInfo(type1).isInterface || getClassInfo(type2).isInterface) return OBJECT_INTERNAL_NAME;
+
+		String superClsName = getClassInfo(type1).superName;
+
+		while ((superClsName != null) && ( ! isAssignableFrom(superClsName, type2) ))
+		{
+			superClsName = getClassInfo(superClsName).superName;
+		}
+
+		if (superClsName == null) return OBJECT_INTERNAL_NAME;
+
+		return superClsName;
+	}
+
+	private boolean isAssignableFrom(String superType, String subType)
+	{
+		if (superType.equals(subType)) return true;
+
+		ClassFileInfo subInfo = getClassInfo(subType);
+
+		if ((subInfo.superName != null) && isAssignableFrom(superType, subInfo.superName)) return true;
+
+		for (String ifaceName : subInfo.interfaces)
+		{
+			if (isAssignableFrom(superType, ifaceName)) return true;
+		}
+
+		return false;
+	}
+
+	private ClassFileInfo getClassInfo(String internalClsName)
+	{
+		ClassFileInfo clsInfo = clsName2FileInfo.get(internalClsName);
+
+		if (clsInfo != null) return clsInfo;
+
+		IClass cls = lookupClass(internalClsName);
+
+		if (cls != null) clsInfo = new ClassFileInfo(cls);
+		else clsInfo = readClassInfo(internalClsName);
+
+		clsName2FileInfo.put(internalClsName, clsInfo);
+
+		return clsInfo;
+	}
+
+	private static ClassFileInfo readClassInfo(String internalClsName)
+	{
+		InputStream clsStream = null;
+
+		// classes of the target program (possibly transformed by some previous stage)
+		File clsFile = new File(ClassTransformationWorkers.getInputClassFilePath(internalClsName.replace('/', '.')));
+
+		try
+		{
+			if (clsFile.exists()) clsStream = new FileInputStream(clsFile);
+			else clsStream = ClassLoader.getSystemResourceAsStream(internalClsName + ".class"); // library classes are read as resources, which does not load them
+
+			// returning some default (e.g., java/lang/Object) would produce invalid stack map frames
+			if (clsStream == null) throw new RuntimeException("class " + internalClsName + " not found in the class hierarchy nor on the class path");
+
+			return new ClassFileInfo(new ClassReader(clsStream));
+		}
+		catch (IOException ex)
+		{
+			throw new RuntimeException("cannot read the class file of " + internalClsName, ex);
+		}
+		finally
+		{
+			try
+			{
+				if (clsStream != null) clsStream.close();
+			}
+			catch (IOException ex) {}
+		}
+	}
+
+	private IClass lookupClass(String internalClsName)
+	{
+		// arrays are handled by ASM itself
+		if (internalClsName.startsWith("[")) return null;
+
+		TypeName clsTypeName = TypeName.string2TypeName("L" + internalClsName);
+
+		for (IClassLoader clsLoader : cha.getLoaders())
+		{
+			IClass cls = clsLoader.lookupClass(clsTypeName);
+
+			if (cls != null) return cls;
+		}
+
+		return null;
+	}
+
+
+	static class ClassFileInfo
+	{
+		// internal names (null for java/lang/Object)
+		public String superName;
+		public String[] interfaces;
+
+		public boolean isInterface;
+
+
+		public ClassFileInfo(ClassReader cr)
+		{
+			this.superName = cr.getSuperName();
+			this.interfaces = cr.getInterfaces();
+			this.isInterface = ((cr.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+		}
+
+		public ClassFileInfo(IClass cls)
+		{
+			// WALA type names have the form "Lpkg/Cls" (without the final semicolon)
+
+			IClass superCls = cls.getSuperclass();
+			this.superName = (superCls != null) ? superCls.getName().toString().substring(1) : null;
+
+			Collection<? extends IClass> ifaces = cls.getDirectInterfaces();
+			this.interfaces = new String[ifaces.size()];
+
+			int i = 0;
+			for (IClass iface : ifaces) this.interfaces[i++] = iface.getName().toString().substring(1);
+
+			this.isInterface = cls.isInterface();
+		}
+	}
+}
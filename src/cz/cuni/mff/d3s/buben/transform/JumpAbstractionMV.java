@@ -32,9 +32,23 @@ public class JumpAbstractionMV extends MethodVisitor
 	// it will be used as the target of all RET instructions
 	private Label lblAfterFirstJSR = null;
 
+	// may be null when the caller is not interested in changes
+	private ClassChangeTracker changeTracker;
+
 	public JumpAbstractionMV(MethodVisitor mv)
+	{
+		this(mv, null);
+	}
+
+	public JumpAbstractionMV(MethodVisitor mv, ClassChangeTracker tracker)
 	{
 		super(Opcodes.ASM5, mv);
+		this.changeTracker = tracker;
+	}
+
+	protected void markChanged()
+	{
+		if (changeTracker != null) changeTracker.markChanged();
 	}
 
 	public void visitJumpInsn(int insnOpcode, Label targetLabel)
@@ -42,6 +56,8 @@ public class JumpAbstractionMV extends MethodVisitor
 		// we replace the JSR instruction by GOTO with the same target label
 		if (insnOpcode == Opcodes.JSR)
 		{
+			markChanged();
+
 			// we must also put the target instruction position on the stack
 			// here we can use a dummy value (0) because it is not read later
 			ASMUtils.generateLoadIntegerConstant(this, 0);
@@ -67,6 +83,8 @@ public class JumpAbstractionMV extends MethodVisitor
 		// we replace the RET instruction by GOTO to the stored label (next after the first JSR)
 		if (insnOpcode == Opcodes.RET)
 		{
+			markChanged();
+
 			visitJumpInsn(Opcodes.GOTO, lblAfterFirstJSR);
 		}
 		else
@@ -19,12 +19,16 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ArrayList;
 import java.util.Stack;
 
-import java.io.InputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.File;
+import java.util.concurrent.Callable;
+
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import com.ibm.wala.classLoader.IClass;
 
@@ -43,58 +47,114 @@ import cz.cuni.mff.d3s.buben.Configuration;
 import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.*;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
 import cz.cuni.mff.d3s.buben.summaries.*;
 import cz.cuni.mff.d3s.buben.wala.WALAUtils;
 
 
 public class LibraryMethodAbstractionGenerator
 {
-	public static void replaceMethodBytecode(String methodSig) throws Exception
+	public static void replaceMethodBytecode(StaticAnalysisContext staCtx, String methodSig) throws Exception
 	{
-		String clsName = Utils.extractClassName(methodSig);
+		Set<String> clsMethodSigs = new HashSet<String>();
+		clsMethodSigs.add(methodSig);
 
-		String clsFileName = clsName.replace('.', '/') + ".class";
+		replaceMethodsBytecodeInClass(staCtx, Utils.extractClassName(methodSig), clsMethodSigs);
+	}
 
-		String clsFilePath = Configuration.targetClassPath + File.separator + clsFileName;
-	
-		// we use a simple algorithm (possibly very inefficient) for each method:
-		// 1) load the whole class file, 2) modify the given method (replace original bytecode), and 3) save the result into file
-		// our plan was to implement some optimizations when really needed (use caching of some kind, etc)
+	public static void replaceMethodsBytecode(StaticAnalysisContext staCtx, Set<String> methodSigs) throws Exception
+	{
+		// group the given methods by their classes, so that each class file is loaded, transformed, and saved just once
+		Map<String, Set<String>> clsName2MethodSigs = new LinkedHashMap<String, Set<String>>();
+
+		for (String methodSig : methodSigs)
+		{
+			String clsName = Utils.extractClassName(methodSig);
+
+			Set<String> clsMethodSigs = clsName2MethodSigs.get(clsName);
+			if (clsMethodSigs == null)
+			{
+				clsMethodSigs = new HashSet<String>();
+				clsName2MethodSigs.put(clsName, clsMethodSigs);
+			}
+
+			clsMethodSigs.add(methodSig);
+		}
+
+		// classes are independent and therefore they can be transformed concurrently
+		List<ClassTransformTask> clsTasks = new ArrayList<ClassTransformTask>();
+
+		for (Map.Entry<String, Set<String>> me : clsName2MethodSigs.entrySet())
+		{
+			clsTasks.add(new ClassTransformTask(staCtx, me.getKey(), me.getValue()));
+		}
+
+		ClassTransformationWorkers.executeTasks(clsTasks);
+	}
+
+	private static void replaceMethodsBytecodeInClass(StaticAnalysisContext staCtx, String clsName, Set<String> clsMethodSigs) throws Exception
+	{
+		// input is either the original class file or the output of some previous stage
+		String clsFilePath = ClassTransformationWorkers.getInputClassFilePath(clsName);
+
+		// we process all given methods of the class together:
+		// 1) load the whole class file, 2) modify the given methods (replace original bytecode), and 3) save the result into file
+
+		// load bytecode of the class
+		byte[] origBytes = Files.readAllBytes(Paths.get(clsFilePath));
 
-		// create input stream for loading bytecode of the class
-		InputStream ins = new FileInputStream(clsFilePath);
-		
 		// load the class and modify its bytecode
-		ClassReader cr = new ClassReader(ins);
-		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-		ClassVisitor cv = new MethodAbstractionCV(clsName, methodSig, cw);
+		ClassReader cr = new ClassReader(origBytes);
+		// common superclasses needed for stack map frames are computed using the class hierarchy
+		ClassWriter cw = new HierarchyClassWriter(ClassWriter.COMPUTE_FRAMES, staCtx.cha);
+		ClassVisitor cv = new MethodAbstractionCV(clsName, clsMethodSigs, cw);
 		cr.accept(cv, 0);
 
-		ins.close();
-
 		// save the class to file
-		byte[] b = cw.toByteArray();
-		FileOutputStream outf = new FileOutputStream(clsFilePath);
-		outf.write(b);
-		outf.close();
+		ClassTransformationWorkers.writeClassFile(clsName, origBytes, cw.toByteArray());
+	}
+
+	static class ClassTransformTask implements Callable<Void>
+	{
+		private StaticAnalysisContext staCtx;
+
+		private String clsName;
+
+		private Set<String> clsMethodSigs;
+
+
+		public ClassTransformTask(StaticAnalysisContext staCtx, String clsName, Set<String> clsMethodSigs)
+		{
+			this.staCtx = staCtx;
+			this.clsName = clsName;
+			this.clsMethodSigs = clsMethodSigs;
+		}
+
+		public Void call() throws Exception
+		{
+			replaceMethodsBytecodeInClass(staCtx, clsName, clsMethodSigs);
+
+			return null;
+		}
 	}
 
 	static class MethodAbstractionCV extends ClassVisitor
 	{
 		private String className;
 
-		private String targetMethodSig;
+		// signatures of all methods in the class whose bytecode we replace
+		private Set<String> targetMethodSigs;
 
 		private String superClassPlainName;
 
 		public static ASMifier debugASM;
 
 
-		public MethodAbstractionCV(String clsName, String tgtMthSig, ClassVisitor cv)
+		public MethodAbstractionCV(String clsName, Set<String> tgtMthSigs, ClassVisitor cv)
 		{
 			super(Opcodes.ASM5, cv);
 			this.className = clsName;
-			this.targetMethodSig = tgtMthSig;
+			this.targetMethodSigs = tgtMthSigs;
 		}
 
 		public void visit(int version, int clsAccess, String clsName, String clsSignature, String superClsName, String[] clsInterfaces)
@@ -110,8 +170,8 @@ public class LibraryMethodAbstractionGenerator
 
 			MethodVisitor mv = cv.visitMethod(mthAccess, mthName, mthDesc, mthSignature, mthExceptions);
 
-			// the current method is not the one we need to replace (abstract)
-			if ( ! targetMethodSig.equals(curMethodSig) ) 
+			// the current method is not one of those we need to replace (abstract)
+			if ( ! targetMethodSigs.contains(curMethodSig) ) 
 			{
 				// still we must remove the bytecode instructions JSR and RET
 				return new JumpAbstractionMV(mv);
@@ -130,7 +190,7 @@ public class LibraryMethodAbstractionGenerator
 				mv = new TraceMethodVisitor(mv, debugASM);
 			}
 
-			MethodSideEffectSummary mthSumm = SideEffectSummaryGenAnalysis.getSummaryForMethod(targetMethodSig);
+			MethodSideEffectSummary mthSumm = SideEffectSummaryGenAnalysis.getSummaryForMethod(curMethodSig);
 
 			Type[] mthParamTypes = Type.getArgumentTypes(mthDesc);
 
@@ -168,7 +228,7 @@ public class LibraryMethodAbstractionGenerator
 			// check if we have an instance method
 			if ( (mthAccess & Opcodes.ACC_STATIC) == 0 )
 			{
-				LocalVarExpression thisExpr = new LocalVarExpression(0, "local0", className, true);
+				LocalVarExpression thisExpr = ExpressionFactory.createLocalVar(0, "local0", className, true);
 
 				curLocalVarTrans.put(thisExpr, thisExpr);
 
@@ -180,7 +240,7 @@ public class LibraryMethodAbstractionGenerator
 				Type paramType = mthParamTypes[k];
 				String paramTypeStr = Utils.getPlainTypeName(paramType.getDescriptor());
 				
-				LocalVarExpression paramExpr = new LocalVarExpression(nextLocalVarSlot, "local"+nextLocalVarSlot, paramTypeStr, true);
+				LocalVarExpression paramExpr = ExpressionFactory.createLocalVar(nextLocalVarSlot, "local"+nextLocalVarSlot, paramTypeStr, true);
 
 				curLocalVarTrans.put(paramExpr, paramExpr);
 
@@ -472,7 +532,7 @@ public class LibraryMethodAbstractionGenerator
 				// not yet defined
 				if (translatedExpr == null)
 				{
-					translatedExpr = new LocalVarExpression(nextLocalVarSlot, "local"+nextLocalVarSlot, lvExpr.varType, lvExpr.isMthParam);
+					translatedExpr = ExpressionFactory.createLocalVar(nextLocalVarSlot, "local"+nextLocalVarSlot, lvExpr.varType, lvExpr.isMthParam);
 					
 					if (Utils.isTypeWithSizeTwoWords(lvExpr.varType)) nextLocalVarSlot += 2;
 					else nextLocalVarSlot += 1;
@@ -492,7 +552,7 @@ public class LibraryMethodAbstractionGenerator
 
 				Expression trTargetObj = translateLocalVars(fieldExpr.targetObj, curLocalVarTrans);
 
-				return new FieldAccessExpression(trTargetObj, fieldExpr.className, fieldExpr.fieldName, fieldExpr.fieldType, fieldExpr.isStatic);
+				return ExpressionFactory.createFieldAccess(trTargetObj, fieldExpr.className, fieldExpr.fieldName, fieldExpr.fieldType, fieldExpr.isStatic);
 			}
 
 			if (expr instanceof ArrayAccessExpression)
@@ -503,7 +563,7 @@ public class LibraryMethodAbstractionGenerator
 	
 				// array element indexes are handled in a different way
 
-				return new ArrayAccessExpression(trTargetArrayObj, arrayExpr.arrayClassName, arrayExpr.elementIndex, arrayExpr.elementType);
+				return ExpressionFactory.createArrayAccess(trTargetArrayObj, arrayExpr.arrayClassName, arrayExpr.elementIndex, arrayExpr.elementType);
 			}
 	
 			if (expr instanceof ArithmeticExpression)
@@ -514,7 +574,7 @@ public class LibraryMethodAbstractionGenerator
 			
 				Expression trValue2 = translateLocalVars(arithmExpr.value2, curLocalVarTrans);
 
-				return new ArithmeticExpression(arithmExpr.operator, trValue1, trValue2);
+				return ExpressionFactory.createArithmetic(arithmExpr.operator, trValue1, trValue2);
 			}
 
 			if (expr instanceof LocalVarExpression)
@@ -18,12 +18,14 @@ package cz.cuni.mff.d3s.buben.transform;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.List;
+import java.util.ArrayList;
 import java.util.Iterator;
 
-import java.io.InputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.File;
+import java.util.concurrent.Callable;
+
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
@@ -44,25 +46,30 @@ import com.ibm.wala.ipa.callgraph.CGNode;
 import cz.cuni.mff.d3s.buben.Configuration;
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
 import cz.cuni.mff.d3s.buben.Utils;
+import cz.cuni.mff.d3s.buben.common.PrefixMatcher;
 import cz.cuni.mff.d3s.buben.wala.WALAUtils;
 import cz.cuni.mff.d3s.buben.dynamic.*;
-import cz.cuni.mff.d3s.buben.bytecode.symbolic.ConstantExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.HeapReferenceExpression;
 import cz.cuni.mff.d3s.buben.bytecode.symbolic.SpecialExpression;
+import cz.cuni.mff.d3s.buben.bytecode.symbolic.ExpressionFactory;
 
 
 public class NativeExternAbstractionGenerator
 {
 	public static void replaceStatements(StaticAnalysisContext staCtx, Set<String> tgtMethodSignatures, List<String> tgtClassPrefixes) throws Exception
 	{
-		// we use a simple algorithm that is most probably very inefficient
 		// for each class that contains some method in the call graph, we perform the following:
 		// 1) load the whole class file, 2) modify statements in each method of the class (replace original bytecode), and 3) save the result into file
 		// abstracted statements: method invocation, new object, field access (over native/extern classes)
-		// our plan was to implement some optimizations when really needed (use caching of some kind, etc)
 
 		// class names
 		Set<String> processedClasses = new HashSet<String>();
+
+		// each class is transformed by a separate task
+		List<ClassTransformTask> clsTasks = new ArrayList<ClassTransformTask>();
+
+		// prefixes are compiled once, because they are checked for every instruction in all transformed classes
+		PrefixMatcher tgtClassMatcher = new PrefixMatcher(tgtClassPrefixes);
 				
 		// process methods reachable in the call graph
 		for (Iterator<CGNode> cgnIt = staCtx.clGraph.iterator(); cgnIt.hasNext(); )
@@ -88,34 +95,88 @@ public class NativeExternAbstractionGenerator
 			if (processedClasses.contains(clsName)) continue;
 			processedClasses.add(clsName);
 			
-			String clsFileName = clsName.replace('.', '/') + ".class";
-			
-			String clsFilePath = Configuration.targetClassPath + File.separator + clsFileName;
-			
-			// create input stream for loading bytecode of the class
-			InputStream ins = new FileInputStream(clsFilePath);
-
-			// load the class and modify its bytecode
-			ClassReader cr = new ClassReader(ins);
-			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-			ClassVisitor cv = new MethodAbstractionCV(clsName, tgtMethodSignatures, tgtClassPrefixes, cw);
-			try
+			clsTasks.add(new ClassTransformTask(staCtx, clsName, tgtMethodSignatures, tgtClassMatcher));
+		}
+
+		// classes are independent and therefore they can be transformed concurrently
+		ClassTransformationWorkers.executeTasks(clsTasks);
+	}
+
+	private static void replaceStatementsInClass(StaticAnalysisContext staCtx, String clsName, Set<String> tgtMethodSignatures, PrefixMatcher tgtClassMatcher) throws Exception
+	{
+		// input is either the original class file or the output of some previous stage
+		String clsFilePath = ClassTransformationWorkers.getInputClassFilePath(clsName);
+		
+		try
+		{
+			// load bytecode of the class
+			byte[] origBytes = Files.readAllBytes(Paths.get(clsFilePath));
+
+			ClassReader cr = new ClassReader(origBytes);
+
+			// most classes do not contain any statement that should be replaced
+			// therefore we first run all the visitors without any output (this is much cheaper than computing stack map frames)
+			// in the debug mode, we skip this step so that the generated code is printed just once
+			if ( ! Configuration.DEBUG )
 			{
-				cr.accept(cv, 0);
+				ClassChangeTracker scanTracker = new ClassChangeTracker();
 
-				ins.close();
-	
-				// save the class to file
-				byte[] b = cw.toByteArray();
-				FileOutputStream outf = new FileOutputStream(clsFilePath);
-				outf.write(b);
-				outf.close();
+				cr.accept(new MethodAbstractionCV(clsName, tgtMethodSignatures, tgtClassMatcher, scanTracker, new EmptyOutputCV()), 0);
+
+				if ( ! scanTracker.isChanged() )
+				{
+					ClassTransformationWorkers.recordUntouchedClass();
+					return;
+				}
 			}
-			catch (Exception ex)
+
+			// modify bytecode of the class
+			ClassChangeTracker changeTracker = new ClassChangeTracker();
+
+			// common superclasses needed for stack map frames are computed using the class hierarchy
+			ClassWriter cw = new HierarchyClassWriter(ClassWriter.COMPUTE_FRAMES, staCtx.cha);
+			ClassVisitor cv = new MethodAbstractionCV(clsName, tgtMethodSignatures, tgtClassMatcher, changeTracker, cw);
+			cr.accept(cv, 0);
+
+			if ( ! changeTracker.isChanged() )
 			{
-				System.err.println("Exception: " + ex.getMessage());
-				ex.printStackTrace();
+				ClassTransformationWorkers.recordUntouchedClass();
+				return;
 			}
+
+			// save the class to file
+			ClassTransformationWorkers.writeClassFile(clsName, origBytes, cw.toByteArray());
+		}
+		catch (Exception ex)
+		{
+			System.err.println("Exception: " + ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
+
+	static class ClassTransformTask implements Callable<Void>
+	{
+		private StaticAnalysisContext staCtx;
+
+		private String clsName;
+
+		private Set<String> tgtMethodSignatures;
+		private PrefixMatcher tgtClassMatcher;
+
+
+		public ClassTransformTask(StaticAnalysisContext staCtx, String clsName, Set<String> tgtMthSigs, PrefixMatcher tgtClsMatcher)
+		{
+			this.staCtx = staCtx;
+			this.clsName = clsName;
+			this.tgtMethodSignatures = tgtMthSigs;
+			this.tgtClassMatcher = tgtClsMatcher;
+		}
+
+		public Void call() throws Exception
+		{
+			replaceStatementsInClass(staCtx, clsName, tgtMethodSignatures, tgtClassMatcher);
+
+			return null;
 		}
 	}
 	
@@ -124,17 +185,20 @@ public class NativeExternAbstractionGenerator
 		private String curClassName;
 		
 		private Set<String> targetMethodSignatures;
-		private List<String> targetClassPrefixes;
+		private PrefixMatcher targetClassMatcher;
+
+		private ClassChangeTracker changeTracker;
 
 		public static ASMifier debugASM;
 		
 
-		public MethodAbstractionCV(String clsName, Set<String> tgtMthSigs, List<String> tgtClsPfxs, ClassVisitor cv)
+		public MethodAbstractionCV(String clsName, Set<String> tgtMthSigs, PrefixMatcher tgtClsMatcher, ClassChangeTracker tracker, ClassVisitor cv)
 		{
 			super(Opcodes.ASM5, cv);
 			this.curClassName = clsName;
 			this.targetMethodSignatures = tgtMthSigs;
-			this.targetClassPrefixes = tgtClsPfxs;
+			this.targetClassMatcher = tgtClsMatcher;
+			this.changeTracker = tracker;
 		}
 		
 		public MethodVisitor visitMethod(int mthAccess, String mthName, String mthDesc, String mthSignature, String[] mthExceptions)
@@ -147,11 +211,11 @@ public class NativeExternAbstractionGenerator
 
 			// we do not replace any statements in library methods
 			// still we must remove the bytecode instructions JSR and RET
-			if ( ! Configuration.isApplicationMethod(fullMthName) ) return new JumpAbstractionMV(mv);
+			if ( ! Configuration.isApplicationMethod(fullMthName) ) return new JumpAbstractionMV(mv, changeTracker);
 
 			// we also do not replace any statements in methods that access external entities
 			// still we must remove the bytecode instructions JSR and RET
-			if ( Configuration.isExternalAccessMethod(fullMthName) ) return new JumpAbstractionMV(mv);
+			if ( Configuration.isExternalAccessMethod(fullMthName) ) return new JumpAbstractionMV(mv, changeTracker);
 
 			String mthSig = curClassName + "." + mthName + mthDesc;
 	
@@ -168,32 +232,54 @@ public class NativeExternAbstractionGenerator
 				System.err.println("[DEBUG] creating new ASMifier instance: " + debugASM.hashCode());
 
 				// we have to wrap TraceMethodVisitor by StatementAbstractionMV so that delegated calls on MethodVisitor are traced 
-				return new StatementAbstractionMV(mthSig, targetMethodSignatures, targetClassPrefixes, new TraceMethodVisitor(mv, debugASM));
+				return new StatementAbstractionMV(mthSig, targetMethodSignatures, targetClassMatcher, changeTracker, new TraceMethodVisitor(mv, debugASM));
 			}
 			else
 			{
-				return new StatementAbstractionMV(mthSig, targetMethodSignatures, targetClassPrefixes, mv);
+				return new StatementAbstractionMV(mthSig, targetMethodSignatures, targetClassMatcher, changeTracker, mv);
 			}
 		}
 	}
 	
+	static class EmptyOutputCV extends ClassVisitor
+	{
+		public EmptyOutputCV()
+		{
+			super(Opcodes.ASM5);
+		}
+
+		public MethodVisitor visitMethod(int mthAccess, String mthName, String mthDesc, String mthSignature, String[] mthExceptions)
+		{
+			// visitors for statement abstraction need some method visitor as the target
+			return new EmptyOutputMV();
+		}
+	}
+
+	static class EmptyOutputMV extends MethodVisitor
+	{
+		public EmptyOutputMV()
+		{
+			super(Opcodes.ASM5);
+		}
+	}
+
 	static class StatementAbstractionMV extends JumpAbstractionMV
 	{
 		private String curMethodSig;
 
 		private Set<String> targetMethodSignatures;
-		private List<String> targetClassPrefixes;
+		private PrefixMatcher targetClassMatcher;
 	
 		// this label will point to the next instruction after the first JSR within the method code
 		// it will be used as the target of all RET instructions
 		private Label lblAfterFirstJSR = null;
 
-		public StatementAbstractionMV(String curMthSig, Set<String> tgtMthSigs, List<String> tgtClsPfxs, MethodVisitor mv)
+		public StatementAbstractionMV(String curMthSig, Set<String> tgtMthSigs, PrefixMatcher tgtClsMatcher, ClassChangeTracker tracker, MethodVisitor mv)
 		{
-			super(mv);
+			super(mv, tracker);
 			this.curMethodSig = curMthSig;
 			this.targetMethodSignatures = tgtMthSigs;
-			this.targetClassPrefixes = tgtClsPfxs;
+			this.targetClassMatcher = tgtClsMatcher;
 		}
 
 		public void visitTypeInsn(int insnOpcode, String internalTypeName)
@@ -204,7 +290,7 @@ public class NativeExternAbstractionGenerator
 	
 				// special handling of classes where all methods are native or access external entities
 
-				if (Utils.isClassNameWithPrefix(plainTypeName, targetClassPrefixes))
+				if (targetClassMatcher.matches(plainTypeName))
 				{
 					// generate the NEW bytecode instruction
 					super.visitTypeInsn(insnOpcode, internalTypeName);
@@ -235,10 +321,12 @@ public class NativeExternAbstractionGenerator
 
 			String plainClassName = Utils.getPlainClassName(ownerClsInternalName);
 	
-			if (Utils.isClassNameWithPrefix(plainClassName, targetClassPrefixes))
+			if (targetClassMatcher.matches(plainClassName))
 			{
 				if ((insnOpcode == Opcodes.GETFIELD) || (insnOpcode == Opcodes.GETSTATIC))
 				{
+					markChanged();
+
 					// remove the object reference from the stack frame
 					if (insnOpcode == Opcodes.GETFIELD) visitInsn(Opcodes.POP);
 
@@ -252,6 +340,8 @@ public class NativeExternAbstractionGenerator
 	
 				if ((insnOpcode == Opcodes.PUTFIELD) || (insnOpcode == Opcodes.PUTSTATIC))
 				{
+					markChanged();
+
 					// remove the new value from the stack frame
 					visitInsn(Opcodes.POP);
 
@@ -278,7 +368,7 @@ public class NativeExternAbstractionGenerator
 
 			// NOTE this code fragment is not needed anymore because we do not perform any special handling of instance constructors even for classes that manipulate with external entities
 			/*
-			if (Utils.isClassNameWithPrefix(ownerClsPlainName, targetClassPrefixes))
+			if (targetClassMatcher.matches(ownerClsPlainName))
 			{
 				if (mthName.startsWith("<init>"))
 				{
@@ -306,6 +396,8 @@ public class NativeExternAbstractionGenerator
 				super.visitMethodInsn(insnOpcode, ownerClsInternalName, mthName, mthDesc, isItfOwner);
 				return;
 			}
+
+			markChanged();
 		
 			// we replace also the calls of instance constructors for all classes that manipulate with external entities
 				// performing just all the side effects (updates to object fields and array elements) is apparently sufficient
@@ -491,7 +583,7 @@ public class NativeExternAbstractionGenerator
 
 					String elementTypeName = Utils.getElementTypeFromArrayClassName(retTypeStr);
 					
-					ASMUtils.generateNewArray(this, elementTypeName, new ConstantExpression(new Integer(0)));
+					ASMUtils.generateNewArray(this, elementTypeName, ExpressionFactory.createConstant(new Integer(0)));
 				}
 				else // primitive type
 				{
@@ -21,7 +21,10 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Stack;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import cz.cuni.mff.d3s.buben.Utils;
+import cz.cuni.mff.d3s.buben.wala.ClassHierarchyIndex;
 
 
 public class ObjectTypesData
@@ -29,16 +32,14 @@ public class ObjectTypesData
 	// map from class names to constructor signatures
 	private static Map<String, Set<String>> clsName2ConstructorSignatures;
 
-	private static Set<String> interfaceTypeNames;
-
-	// map from interface name to the set of implementing classes
-	private static Map<String, Set<String>> itfName2ImplementingClasses;
+	// provides interface names and implementing classes (computed lazily for interfaces that we actually need)
+	private static ClassHierarchyIndex chaIndex;
 
 	static
 	{
-		clsName2ConstructorSignatures = new HashMap<String, Set<String>>();
-		interfaceTypeNames = new HashSet<String>();
-		itfName2ImplementingClasses = new HashMap<String, Set<String>>();
+		// data are filled before transformation and then read concurrently by worker threads
+		clsName2ConstructorSignatures = new ConcurrentHashMap<String, Set<String>>();
+		chaIndex = null;
 	}
 
 
@@ -101,29 +102,27 @@ public class ObjectTypesData
 		constrSigs.add(mthInitSig);
 	}
 
-	public static void storeInterfaceTypeNames(Set<String> itfNames)
+	public static void storeClassHierarchyIndex(ClassHierarchyIndex idx)
 	{
-		interfaceTypeNames.addAll(itfNames);
+		chaIndex = idx;
 	}
 
 	public static boolean isInterfaceType(String className)
 	{
-		return interfaceTypeNames.contains(className);
-	}
+		if (chaIndex == null) return false;
 
-	public static void storeImplementingClassesForInterface(String itfName, Set<String> implClassNames)
-	{
-		itfName2ImplementingClasses.put(itfName, implClassNames);
+		return chaIndex.isInterface(className);
 	}
 
 	public static Set<String> getImplementingClassesForInterface(String itfName)
 	{
 		// returns all the class names
 
-		Set<String> implClassNames = itfName2ImplementingClasses.get(itfName);
-
 		// no information available
-		if (implClassNames == null) return null;
+		if (chaIndex == null) return null;
+
+		Set<String> implClassNames = chaIndex.getImplementingClasses(itfName);
+
 		if (implClassNames.isEmpty()) return null;
 
 		return implClassNames;
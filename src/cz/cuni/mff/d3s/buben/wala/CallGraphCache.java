@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.wala;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+import com.ibm.wala.analysis.reflection.JavaTypeContext;
+import com.ibm.wala.analysis.reflection.ReflectionContextInterpreter;
+import com.ibm.wala.analysis.typeInference.PointType;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.SyntheticClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.AbstractRootMethod;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.DefaultSSAInterpreter;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.DelegatingSSAContextInterpreter;
+import com.ibm.wala.ipa.summaries.SummarizedMethod;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSANewInstruction;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.strings.Atom;
+
+import cz.cuni.mff.d3s.buben.Configuration;
+import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
+
+
+/**
+ * Saves the call graph into a binary file and restores it in later runs, so that the expensive pointer analysis is skipped.
+ * Name of the file is a digest of all class files on the target class path, the exclusion file, the main class, the call graph algorithm, the standard library, and the version of WALA (including its XML method summaries).
+ * We save only what the pipeline uses: nodes (methods) and call edges together with program counters of call sites.
+ * A restored graph is an explicit call graph over the same class hierarchy, and therefore IR of each node is computed by WALA on demand.
+ */
+public class CallGraphCache
+{
+	// must be changed whenever the format of cache files changes
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int FILE_MAGIC = 0x42434743;
+
+	private static final byte NODE_FAKE_ROOT = 0;
+	private static final byte NODE_FAKE_WORLD_CLINIT = 1;
+	private static final byte NODE_METHOD = 2;
+
+	private static final byte CONTEXT_EVERYWHERE = 0;
+	private static final byte CONTEXT_RECEIVER_TYPE = 1;
+
+	private static final byte ROOT_STMT_NEW = 0;
+	private static final byte ROOT_STMT_INVOKE = 1;
+	private static final byte ROOT_STMT_OTHER = 2;
+
+	private static final String WALA_VERSION_RESOURCE = "META-INF/maven/com.ibm.wala/com.ibm.wala.core/pom.properties";
+
+
+	public static File getCacheFile(StaticAnalysisContext staCtx) throws Exception
+	{
+		return new File(Configuration.callGraphCachePath, computeProgramDigest(staCtx) + ".cg");
+	}
+
+	private static String computeProgramDigest(StaticAnalysisContext staCtx) throws Exception
+	{
+		MessageDigest md = MessageDigest.getInstance("SHA-1");
+
+		md.update(("version=" + FORMAT_VERSION + "\n").getBytes("UTF-8"));
+		md.update(("mainclass=" + Configuration.targetMainClassName + "\n").getBytes("UTF-8"));
+		md.update(("callgraph=" + staCtx.cgAlgorithm + "\n").getBytes("UTF-8"));
+
+		md.update(Files.readAllBytes(new File(Configuration.walaExclusionFilePath).toPath()));
+
+		// the standard library (primordial scope) is identified by paths, sizes, and timestamps of its files (reading whole jar files would be too slow)
+		for (Module mdl : staCtx.scope.getModules(staCtx.scope.getPrimordialLoader()))
+		{
+			md.update(("\n" + getModuleDescription(mdl) + "\n").getBytes("UTF-8"));
+		}
+
+		// the graph depends also on the version of WALA and on the XML method summaries (bypass logic) that it uses
+		md.update(readResource(WALA_VERSION_RESOURCE));
+		md.update(readResource(Util.getNativeSpec()));
+
+		// we need a stable order of files
+		List<String> clsFileNames = new ArrayList<String>();
+		collectFileNames(new File(Configuration.targetClassPath), "", clsFileNames);
+		Collections.sort(clsFileNames);
+
+		for (String fileName : clsFileNames)
+		{
+			md.update(("\n" + fileName + "\n").getBytes("UTF-8"));
+			md.update(Files.readAllBytes(new File(Configuration.targetClassPath, fileName).toPath()));
+		}
+
+		StringBuffer digestStr = new StringBuffer();
+
+		for (byte b : md.digest()) digestStr.append(String.format("%02x", b));
+
+		return digestStr.toString();
+	}
+
+	private static String getModuleDescription(Module mdl)
+	{
+		if (mdl instanceof JarFileModule)
+		{
+			File jarFile = new File(((JarFileModule) mdl).getAbsolutePath());
+
+			return jarFile.getAbsolutePath() + ":" + jarFile.length() + ":" + jarFile.lastModified();
+		}
+
+		return mdl.toString();
+	}
+
+	private static byte[] readResource(String resName) throws Exception
+	{
+		InputStream resStream = Util.class.getClassLoader().getResourceAsStream(resName);
+
+		// missing resource is also a valid input of the digest
+		if (resStream == null) return new byte[0];
+
+		ByteArrayOutputStream resContent = new ByteArrayOutputStream();
+
+		try
+		{
+			byte[] buf = new byte[8192];
+
+			for (int len = resStream.read(buf); len >= 0; len = resStream.read(buf)) resContent.write(buf, 0, len);
+		}
+		finally
+		{
+			resStream.close();
+		}
+
+		return resContent.toByteArray();
+	}
+
+	private static void collectFileNames(File dir, String relPathPrefix, List<String> fileNames)
+	{
+		File[] dirEntries = dir.listFiles();
+
+		if (dirEntries == null) return;
+
+		for (File entry : dirEntries)
+		{
+			if (entry.isDirectory()) collectFileNames(entry, relPathPrefix + entry.getName() + "/", fileNames);
+			else fileNames.add(relPathPrefix + entry.getName());
+		}
+	}
+
+	public static void saveCallGraph(StaticAnalysisContext staCtx, CallGraph clGraph, File cacheFile) throws Exception
+	{
+		if ( ! (clGraph instanceof ExplicitCallGraph) ) return;
+
+		ExplicitCallGraph explClGraph = (ExplicitCallGraph) clGraph;
+
+		// nodes are identified by their position in this list
+		List<CGNode> nodes = new ArrayList<CGNode>();
+
+		Map<CGNode, Integer> node2Index = new HashMap<CGNode, Integer>();
+
+		for (CGNode node : clGraph)
+		{
+			// graph with nodes that we cannot restore exactly is not saved at all (it would be rebuilt by every run anyway)
+			if (getNodeKind(explClGraph, node) < 0)
+			{
+				System.out.println("[INFO] call graph not cached: method = " + node.getMethod().getSignature() + ", context = " + node.getContext());
+				return;
+			}
+
+			node2Index.put(node, nodes.size());
+			nodes.add(node);
+		}
+
+		cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+
+		// other runs must never see an incomplete file
+		File tmpFile = new File(cacheFile.getPath() + ".tmp");
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+		try
+		{
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FORMAT_VERSION);
+
+			out.writeInt(nodes.size());
+
+			for (CGNode node : nodes)
+			{
+				byte nodeKind = getNodeKind(explClGraph, node);
+
+				out.writeByte(nodeKind);
+
+				if (nodeKind == NODE_METHOD)
+				{
+					writeMethodReference(out, node.getMethod().getReference());
+					out.writeBoolean(node.getMethod().isStatic());
+					out.writeBoolean(node.getMethod() instanceof SummarizedMethod);
+
+					if (node.getContext() instanceof JavaTypeContext)
+					{
+						out.writeByte(CONTEXT_RECEIVER_TYPE);
+						writeTypeReference(out, ((JavaTypeContext) node.getContext()).getType().getTypeReference());
+					}
+					else
+					{
+						out.writeByte(CONTEXT_EVERYWHERE);
+					}
+				}
+				else
+				{
+					// synthetic root methods get some statements (allocations, calls) during the construction of the graph, and we have to add them again
+					SSAInstruction[] rootStmts = ((AbstractRootMethod) node.getMethod()).getStatements(staCtx.options.getSSAOptions());
+
+					out.writeInt(rootStmts.length);
+
+					for (SSAInstruction stmt : rootStmts)
+					{
+						if (stmt instanceof SSANewInstruction)
+						{
+							out.writeByte(ROOT_STMT_NEW);
+							writeTypeReference(out, ((SSANewInstruction) stmt).getConcreteType());
+						}
+						else if (stmt instanceof SSAAbstractInvokeInstruction)
+						{
+							CallSiteReference site = ((SSAAbstractInvokeInstruction) stmt).getCallSite();
+
+							out.writeByte(ROOT_STMT_INVOKE);
+							writeMethodReference(out, site.getDeclaredTarget());
+							out.writeByte(((IInvokeInstruction.Dispatch) site.getInvocationCode()).ordinal());
+						}
+						else
+						{
+							out.writeByte(ROOT_STMT_OTHER);
+						}
+					}
+				}
+			}
+
+			for (CGNode node : nodes)
+			{
+				List<CallSiteReference> callSites = getCallSitesSorted(node);
+
+				out.writeInt(callSites.size());
+
+				for (CallSiteReference site : callSites)
+				{
+					Set<CGNode> targetNodes = clGraph.getPossibleTargets(node, site);
+
+					out.writeInt(site.getProgramCounter());
+					out.writeInt(targetNodes.size());
+
+					for (CGNode tgtNode : targetNodes) out.writeInt(node2Index.get(tgtNode));
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static byte getNodeKind(ExplicitCallGraph clGraph, CGNode node)
+	{
+		if (node.equals(clGraph.getFakeRootNode())) return NODE_FAKE_ROOT;
+
+		if (node.equals(clGraph.getFakeWorldClinitNode())) return NODE_FAKE_WORLD_CLINIT;
+
+		// we can restore only methods that are in the class hierarchy or summarized by WALA
+		// the only supported specific context is the concrete receiver type (used for calls of "clone")
+		if (node.getContext() instanceof JavaTypeContext)
+		{
+			if ( ! (((JavaTypeContext) node.getContext()).getType() instanceof PointType) ) return -1;
+
+			// synthetic classes are created by WALA on demand, so they do not have to exist in the class hierarchy of a later run
+			if (((JavaTypeContext) node.getContext()).getType().getType() instanceof SyntheticClass) return -1;
+		}
+		else if ( ! Everywhere.EVERYWHERE.equals(node.getContext()) )
+		{
+			return -1;
+		}
+
+		if (node.getMethod().isSynthetic() && ( ! (node.getMethod() instanceof SummarizedMethod) )) return -1;
+
+		return NODE_METHOD;
+	}
+
+	private static List<CallSiteReference> getCallSitesSorted(CGNode node)
+	{
+		List<CallSiteReference> callSites = new ArrayList<CallSiteReference>();
+
+		for (Iterator<CallSiteReference> csIt = node.iterateCallSites(); csIt.hasNext(); ) callSites.add(csIt.next());
+
+		Collections.sort(callSites, new Comparator<CallSiteReference>()
+		{
+			public int compare(CallSiteReference cs1, CallSiteReference cs2)
+			{
+				return Integer.compare(cs1.getProgramCounter(), cs2.getProgramCounter());
+			}
+		});
+
+		return callSites;
+	}
+
+	private static void writeTypeReference(DataOutputStream out, TypeReference typeRef) throws Exception
+	{
+		out.writeUTF(typeRef.getClassLoader().getName().toString());
+		out.writeUTF(typeRef.getName().toString());
+	}
+
+	private static void writeMethodReference(DataOutputStream out, MethodReference mthRef) throws Exception
+	{
+		writeTypeReference(out, mthRef.getDeclaringClass());
+		out.writeUTF(mthRef.getSelector().toString());
+	}
+
+	/**
+	 * Returns null when the file does not exist or when the saved graph does not fit the current class hierarchy.
+	 */
+	public static CallGraph loadCallGraph(StaticAnalysisContext staCtx, File cacheFile) throws Exception
+	{
+		if ( ! cacheFile.exists() ) return null;
+
+		// we need the same method summaries (bypass logic) as the builder of the original graph
+		// they are added to a copy of the options, because the builder adds them again when the saved graph cannot be used
+		AnalysisOptions origOptions = staCtx.options;
+
+		AnalysisOptions loadOptions = new AnalysisOptions(staCtx.scope, origOptions.getEntrypoints());
+		loadOptions.setHandleStaticInit(origOptions.getHandleStaticInit());
+		loadOptions.setReflectionOptions(origOptions.getReflectionOptions());
+		loadOptions.setSSAOptions(origOptions.getSSAOptions());
+
+		Util.addDefaultSelectors(loadOptions, staCtx.cha);
+		Util.addDefaultBypassLogic(loadOptions, staCtx.scope, Util.class.getClassLoader(), staCtx.cha);
+
+		// later analyses must see the same options as after the construction of a new graph (but only when the saved graph is used)
+		staCtx.options = loadOptions;
+
+		CallGraph clGraph = null;
+
+		try
+		{
+			clGraph = restoreCallGraph(staCtx, cacheFile);
+		}
+		finally
+		{
+			if (clGraph == null) staCtx.options = origOptions;
+		}
+
+		return clGraph;
+	}
+
+	private static CallGraph restoreCallGraph(StaticAnalysisContext staCtx, File cacheFile) throws Exception
+	{
+		ExplicitCallGraph clGraph = new ExplicitCallGraph(staCtx.cha, staCtx.options, staCtx.cache);
+		// the same interpreters as those used by the builder of the original graph (they compute IR for nodes with specific contexts)
+		clGraph.setInterpreter(new DelegatingSSAContextInterpreter(ReflectionContextInterpreter.createReflectionContextInterpreter(staCtx.cha, staCtx.options, staCtx.cache), new DefaultSSAInterpreter(staCtx.options, staCtx.cache)));
+		clGraph.init();
+
+		for (Entrypoint ep : staCtx.options.getEntrypoints())
+		{
+			ep.addCall((AbstractRootMethod) clGraph.getFakeRootNode().getMethod());
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+
+		try
+		{
+			if ((in.readInt() != FILE_MAGIC) || (in.readInt() != FORMAT_VERSION)) return null;
+
+			int nodeCount = in.readInt();
+
+			CGNode[] nodes = new CGNode[nodeCount];
+
+			for (int i = 0; i < nodeCount; i++)
+			{
+				byte nodeKind = in.readByte();
+
+				if (nodeKind == NODE_METHOD)
+				{
+					MethodReference mthRef = readMethodReference(in, staCtx);
+					boolean isStatic = in.readBoolean();
+					boolean isSummarized = in.readBoolean();
+
+					Context mthCtx = Everywhere.EVERYWHERE;
+
+					if (in.readByte() == CONTEXT_RECEIVER_TYPE)
+					{
+						IClass receiverCls = staCtx.cha.lookupClass(readTypeReference(in, staCtx));
+
+						if (receiverCls == null) return null;
+
+						mthCtx = new JavaTypeContext(new PointType(receiverCls));
+					}
+
+					IMethod mth = resolveMethod(staCtx, clGraph, mthRef, isStatic);
+
+					if ((mth == null) || ((mth instanceof SummarizedMethod) != isSummarized)) return null;
+
+					nodes[i] = clGraph.findOrCreateNode(mth, mthCtx);
+				}
+				else
+				{
+					if (nodeKind == NODE_FAKE_ROOT) nodes[i] = clGraph.getFakeRootNode();
+					else nodes[i] = clGraph.getFakeWorldClinitNode();
+
+					if ( ! restoreRootStatements(in, staCtx, (AbstractRootMethod) nodes[i].getMethod()) ) return null;
+				}
+			}
+
+			for (int i = 0; i < nodeCount; i++)
+			{
+				int siteCount = in.readInt();
+
+				for (int j = 0; j < siteCount; j++)
+				{
+					int sitePC = in.readInt();
+					int targetCount = in.readInt();
+
+					for (int k = 0; k < targetCount; k++)
+					{
+						// only the program counter identifies the call site in the explicit call graph
+						((ExplicitCallGraph.ExplicitNode) nodes[i]).addTarget(CallSiteReference.make(sitePC, null, IInvokeInstruction.Dispatch.STATIC), nodes[in.readInt()]);
+					}
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return clGraph;
+	}
+
+	private static TypeReference readTypeReference(DataInputStream in, StaticAnalysisContext staCtx) throws Exception
+	{
+		ClassLoaderReference clsLoaderRef = staCtx.scope.getLoader(Atom.findOrCreateUnicodeAtom(in.readUTF()));
+
+		return TypeReference.findOrCreate(clsLoaderRef, in.readUTF());
+	}
+
+	private static MethodReference readMethodReference(DataInputStream in, StaticAnalysisContext staCtx) throws Exception
+	{
+		TypeReference clsRef = readTypeReference(in, staCtx);
+
+		return MethodReference.findOrCreate(clsRef, Selector.make(in.readUTF()));
+	}
+
+	private static IMethod resolveMethod(StaticAnalysisContext staCtx, CallGraph clGraph, MethodReference mthRef, boolean isStatic)
+	{
+		IClass cls = staCtx.cha.lookupClass(mthRef.getDeclaringClass());
+
+		if (cls == null) return null;
+
+		// the method target selector returns the summarized version of a method when there is one
+		CallSiteReference site = CallSiteReference.make(0, mthRef, isStatic ? IInvokeInstruction.Dispatch.STATIC : IInvokeInstruction.Dispatch.SPECIAL);
+
+		IMethod mth = staCtx.options.getMethodTargetSelector().getCalleeTarget(clGraph.getFakeRootNode(), site, cls);
+
+		if ((mth == null) || ( ! mth.getReference().equals(mthRef) )) return null;
+
+		return mth;
+	}
+
+	private static boolean restoreRootStatements(DataInputStream in, StaticAnalysisContext staCtx, AbstractRootMethod rootMth) throws Exception
+	{
+		// statements created by the call graph initialization and entry points are already there
+		SSAInstruction[] curStmts = rootMth.getStatements(staCtx.options.getSSAOptions());
+
+		int stmtCount = in.readInt();
+
+		for (int i = 0; i < stmtCount; i++)
+		{
+			byte stmtKind = in.readByte();
+
+			// root methods assign program counters sequentially (the index of a statement is its program counter)
+
+			if (stmtKind == ROOT_STMT_NEW)
+			{
+				TypeReference newTypeRef = readTypeReference(in, staCtx);
+
+				if (i >= curStmts.length)
+				{
+					// this also adds the call of the default constructor
+					rootMth.addAllocation(newTypeRef);
+
+					curStmts = rootMth.getStatements(staCtx.options.getSSAOptions());
+				}
+
+				if ( ! (curStmts[i] instanceof SSANewInstruction) ) return false;
+				if ( ! ((SSANewInstruction) curStmts[i]).getConcreteType().equals(newTypeRef) ) return false;
+			}
+			else if (stmtKind == ROOT_STMT_INVOKE)
+			{
+				MethodReference tgtMthRef = readMethodReference(in, staCtx);
+				IInvokeInstruction.Dispatch dispatch = IInvokeInstruction.Dispatch.values()[in.readByte()];
+
+				if (i >= curStmts.length)
+				{
+					// we can add only calls without arguments (static initializers)
+					if ((dispatch != IInvokeInstruction.Dispatch.STATIC) || (tgtMthRef.getNumberOfParameters() > 0)) return false;
+
+					rootMth.addInvocation(null, CallSiteReference.make(i, tgtMthRef, dispatch));
+
+					curStmts = rootMth.getStatements(staCtx.options.getSSAOptions());
+				}
+
+				if ( ! (curStmts[i] instanceof SSAAbstractInvokeInstruction) ) return false;
+				if ( ! ((SSAAbstractInvokeInstruction) curStmts[i]).getCallSite().getDeclaredTarget().equals(tgtMthRef) ) return false;
+			}
+			else
+			{
+				if (i >= curStmts.length) return false;
+
+				if ((curStmts[i] instanceof SSANewInstruction) || (curStmts[i] instanceof SSAAbstractInvokeInstruction)) return false;
+			}
+		}
+
+		// the restored method must not have any additional statements
+		return (curStmts.length == stmtCount);
+	}
+}
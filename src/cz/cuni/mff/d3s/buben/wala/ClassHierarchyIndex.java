@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.wala;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+
+import cz.cuni.mff.d3s.buben.Configuration;
+
+
+/**
+ * Lookup tables for the class hierarchy that are built in a single pass over all classes.
+ * Sets of classes implementing a given interface are computed lazily, only for interfaces that some client asks about.
+ * The index may be used concurrently by multiple worker threads, and it is rebuilt when WALA adds new classes to the hierarchy.
+ */
+public class ClassHierarchyIndex
+{
+	private IClassHierarchy cha;
+
+	// all lookup tables are replaced together when the hierarchy changes, so that readers always see a consistent state
+	private volatile IndexState state;
+
+
+	public ClassHierarchyIndex(IClassHierarchy cha) throws Exception
+	{
+		this.cha = cha;
+
+		this.state = buildState();
+	}
+
+	private IndexState buildState() throws Exception
+	{
+		Map<String, IClass> newClsName2Obj = new HashMap<String, IClass>();
+
+		Set<String> newInterfaceNames = new HashSet<String>();
+
+		List<IClass> newConcreteClasses = new ArrayList<IClass>();
+		List<String> newConcreteClassNames = new ArrayList<String>();
+
+		int clsCount = 0;
+
+		for (IClass cls : cha)
+		{
+			clsCount++;
+
+			String clsName = WALAUtils.getClassName(cls);
+
+			// the first class with the given name wins (the same order as in the class hierarchy)
+			if ( ! newClsName2Obj.containsKey(clsName) ) newClsName2Obj.put(clsName, cls);
+
+			if (cls.isInterface()) newInterfaceNames.add(clsName);
+
+			if ( ! cls.isReferenceType() ) continue;
+			if (cls.isAbstract() || cls.isInterface() || cls.isArrayClass()) continue;
+
+			newConcreteClasses.add(cls);
+			newConcreteClassNames.add(clsName);
+		}
+
+		return new IndexState(newClsName2Obj, newInterfaceNames, newConcreteClasses, newConcreteClassNames, clsCount);
+	}
+
+	private synchronized IndexState reindexClasses() throws Exception
+	{
+		// some other thread may have already built the index for the current hierarchy
+		if (state.indexedClassesCount == cha.getNumberOfClasses()) return state;
+
+		state = buildState();
+
+		return state;
+	}
+
+	public IClassHierarchy getClassHierarchy()
+	{
+		return cha;
+	}
+
+	public IClass findClass(String className) throws Exception
+	{
+		IndexState curState = state;
+
+		IClass cls = curState.clsName2Obj.get(className);
+
+		if (cls != null) return cls;
+
+		// some classes were added to the hierarchy after we built the index (then also the remembered missing classes are not valid anymore)
+		if (cha.getNumberOfClasses() != curState.indexedClassesCount)
+		{
+			curState = reindexClasses();
+
+			cls = curState.clsName2Obj.get(className);
+
+			if (cls != null) return cls;
+		}
+		else if (curState.missingClassNames.contains(className))
+		{
+			return null;
+		}
+
+		curState.missingClassNames.add(className);
+
+		return null;
+	}
+
+	public boolean isInterface(String className)
+	{
+		return state.interfaceNames.contains(className);
+	}
+
+	public Set<String> getImplementingClasses(String itfName)
+	{
+		IndexState curState = state;
+
+		Set<String> implClassNames = curState.itfName2ImplClassNames.get(itfName);
+
+		if (implClassNames != null) return implClassNames;
+
+		implClassNames = new HashSet<String>();
+
+		IClass itfClsObj = curState.clsName2Obj.get(itfName);
+
+		if ((itfClsObj != null) && itfClsObj.isInterface())
+		{
+			for (int i = 0; i < curState.concreteClasses.size(); i++)
+			{
+				if (cha.implementsInterface(curState.concreteClasses.get(i), itfClsObj)) implClassNames.add(curState.concreteClassNames.get(i));
+			}
+		}
+
+		if (Configuration.DEBUG) System.err.println("[DEBUG] implementations of interface " + itfName + " : " + implClassNames);
+
+		// other threads may compute the same set concurrently, and therefore we use the first stored value
+		Set<String> prevImplClassNames = curState.itfName2ImplClassNames.putIfAbsent(itfName, Collections.unmodifiableSet(implClassNames));
+
+		if (prevImplClassNames != null) return prevImplClassNames;
+
+		return implClassNames;
+	}
+
+
+	static class IndexState
+	{
+		// map from class name to the class object
+		public final Map<String, IClass> clsName2Obj;
+
+		public final Set<String> interfaceNames;
+
+		// real classes that can be instantiated (not abstract, not interfaces) and their names at the same positions
+		public final List<IClass> concreteClasses;
+		public final List<String> concreteClassNames;
+
+		// number of classes in the hierarchy when the index was built (WALA may add synthetic classes later)
+		public final int indexedClassesCount;
+
+		// names of classes that are not in the class hierarchy (we remember them to avoid repeated lookups)
+		public final Set<String> missingClassNames;
+
+		// map from interface name to the set of names of implementing concrete classes
+		public final ConcurrentHashMap<String, Set<String>> itfName2ImplClassNames;
+
+
+		public IndexState(Map<String, IClass> clsName2Obj, Set<String> interfaceNames, List<IClass> concreteClasses, List<String> concreteClassNames, int indexedClassesCount)
+		{
+			// the tables are never modified after construction
+			this.clsName2Obj = Collections.unmodifiableMap(clsName2Obj);
+			this.interfaceNames = Collections.unmodifiableSet(interfaceNames);
+			this.concreteClasses = Collections.unmodifiableList(concreteClasses);
+			this.concreteClassNames = Collections.unmodifiableList(concreteClassNames);
+			this.indexedClassesCount = indexedClassesCount;
+
+			// caches of lookups are valid only for this state
+			this.missingClassNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			this.itfName2ImplClassNames = new ConcurrentHashMap<String, Set<String>>();
+		}
+	}
+}
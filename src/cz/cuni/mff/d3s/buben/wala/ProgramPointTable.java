@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2019, Charles University.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.cuni.mff.d3s.buben.wala;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.IBytecodeMethod;
+
+import cz.cuni.mff.d3s.buben.common.ProgramPoint;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
+
+
+/**
+ * Canonical program points of a single method, indexed by bytecode instruction indexes.
+ * Each program point is created only once (together with its bytecode position), and all analyses get the same object for a given instruction.
+ * Tables are shared between analyses through a global map keyed by method IDs, and they are not modified after construction.
+ * The map is cleared when the analyses are finished (see "clear"), and tables do not keep any objects of WALA.
+ */
+public class ProgramPointTable
+{
+	// map from method ID to the table of program points
+	private static ConcurrentHashMap<Integer, ProgramPointTable> mthID2Table;
+
+	static
+	{
+		mthID2Table = new ConcurrentHashMap<Integer, ProgramPointTable>();
+	}
+
+	private String mthSig;
+
+	private ProgramPoint[] insnPoints;
+
+
+	private ProgramPointTable(IMethod mth, String mthSig)
+	{
+		this.mthSig = mthSig;
+
+		int insnCount = 0;
+
+		try
+		{
+			if (mth instanceof IBytecodeMethod) insnCount = ((IBytecodeMethod) mth).getInstructions().length;
+		}
+		catch (Exception ex)
+		{
+			// no program points will be cached for this method
+			insnCount = 0;
+		}
+
+		insnPoints = new ProgramPoint[insnCount];
+
+		for (int insnIndex = 0; insnIndex < insnCount; insnIndex++)
+		{
+			int insnPos = WALAUtils.getInsnBytecodePos(mth, insnIndex);
+
+			insnPoints[insnIndex] = new ProgramPoint(mthSig, insnIndex, insnPos);
+		}
+	}
+
+	public static ProgramPointTable getForMethod(IMethod mth, String mthSig)
+	{
+		Integer mthID = SignatureTable.getID(mthSig);
+
+		ProgramPointTable ppTable = mthID2Table.get(mthID);
+
+		if (ppTable != null) return ppTable;
+
+		ppTable = new ProgramPointTable(mth, mthSig);
+
+		// we do not store empty tables (e.g., for synthetic methods) so that a bytecode method with the same signature gets proper positions
+		if (ppTable.size() == 0) return ppTable;
+
+		// other threads may create the same table concurrently, and therefore we use the first stored one
+		ProgramPointTable prevTable = mthID2Table.putIfAbsent(mthID, ppTable);
+
+		if (prevTable != null) return prevTable;
+
+		return ppTable;
+	}
+
+	public static void clear()
+	{
+		mthID2Table.clear();
+	}
+
+	public ProgramPoint getProgramPoint(int insnIndex)
+	{
+		if ((insnIndex >= 0) && (insnIndex < insnPoints.length)) return insnPoints[insnIndex];
+
+		// index outside of the method code (e.g., entry and exit blocks of a control flow graph) has no bytecode position
+		return new ProgramPoint(mthSig, insnIndex, -1);
+	}
+
+	public int size()
+	{
+		return insnPoints.length;
+	}
+}
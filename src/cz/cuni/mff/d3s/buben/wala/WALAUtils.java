@@ -16,15 +16,21 @@
 package cz.cuni.mff.d3s.buben.wala;
 
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.io.File;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.IBytecodeMethod;
@@ -38,25 +44,30 @@ import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.Util;
-import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.cha.CHACallGraph;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.ssa.SSAInvokeDynamicInstruction;
+import com.ibm.wala.ssa.SSAPutInstruction;
 import com.ibm.wala.types.TypeName;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.FieldReference;
 import com.ibm.wala.util.config.AnalysisScopeReader;
 
 import cz.cuni.mff.d3s.buben.Configuration;
 import cz.cuni.mff.d3s.buben.Utils;
 import cz.cuni.mff.d3s.buben.StaticAnalysisContext;
+import cz.cuni.mff.d3s.buben.common.SignatureTable;
+import cz.cuni.mff.d3s.buben.common.PrefixMatcher;
 
 
 public class WALAUtils
 {
-	public static Map<String, IClass> clsName2Obj;
+	// lookup tables for the current class hierarchy
+	private static volatile ClassHierarchyIndex chaIndex;
 	
 	public static Map<TypeReference, String> typeRef2Name;
 	
@@ -67,16 +78,19 @@ public class WALAUtils
 
 	public static Set<String> abstractedMethodsXML;
 
+	// names accepted by the option "callgraph" (see makeCallGraph)
+	private static final List<String> KNOWN_CALL_GRAPH_ALGORITHMS = Arrays.asList("cha", "rta", "0cfa", "01cfa", "01containercfa");
+
 
 	static
 	{
-		clsName2Obj = new HashMap<String, IClass>();
+		// caches may be accessed by multiple threads during parallel symbolic interpretation
 		
-		typeRef2Name = new HashMap<TypeReference, String>();
+		typeRef2Name = new ConcurrentHashMap<TypeReference, String>();
 		
-		clsObj2Name = new HashMap<IClass, String>();
+		clsObj2Name = new ConcurrentHashMap<IClass, String>();
 		
-		mthSig2CGNode = new HashMap<String, CGNode>();
+		mthSig2CGNode = new ConcurrentHashMap<String, CGNode>();
 
 		abstractedMethodsXML = new HashSet<String>();
 	}
@@ -101,6 +115,18 @@ public class WALAUtils
 		staCtx.cha = cha;
 		staCtx.options = options;
 		staCtx.cache = cache;
+		staCtx.cgAlgorithm = Configuration.callGraphAlgorithm;
+
+		// unknown names are replaced already here, so that the algorithm is identified uniquely (e.g., in the digest of cached call graphs)
+		if ( ! KNOWN_CALL_GRAPH_ALGORITHMS.contains(staCtx.cgAlgorithm) )
+		{
+			System.out.println("[WARNING] unknown call graph algorithm '" + staCtx.cgAlgorithm + "', using '0cfa' instead");
+
+			staCtx.cgAlgorithm = "0cfa";
+		}
+		
+		// build the index once so that lookups of classes do not traverse the whole hierarchy
+		getClassHierarchyIndex(cha);
 		
 		prepareListOfMethodsAbstractedInXML();
 
@@ -128,12 +154,52 @@ public class WALAUtils
 
 	public static void buildCallGraphPointers(StaticAnalysisContext staCtx) throws Exception
 	{
-		SSAPropagationCallGraphBuilder cgBuilder = null;
-		
-		// standard context-insensitive exhaustive pointer analysis (andersen)
-		cgBuilder = Util.makeZeroCFABuilder(staCtx.options, staCtx.cache, staCtx.cha, staCtx.scope);
-		
-		CallGraph clGraph = cgBuilder.makeCallGraph(staCtx.options, null);
+		CallGraph clGraph = null;
+
+		File cgCacheFile = null;
+
+		// we measure the peak usage of heap memory pools during the construction of the call graph
+		List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() != MemoryType.HEAP) continue;
+
+			pool.resetPeakUsage();
+			heapPools.add(pool);
+		}
+
+		long startBuildMS = System.currentTimeMillis();
+
+		// the call graph saved by some previous run for the same program can be reused
+		if (Configuration.callGraphCachePath != null)
+		{
+			cgCacheFile = CallGraphCache.getCacheFile(staCtx);
+
+			clGraph = CallGraphCache.loadCallGraph(staCtx, cgCacheFile);
+
+			if (clGraph != null) System.out.println("[INFO] call graph loaded from cache: file = " + cgCacheFile.getPath());
+			else if (cgCacheFile.exists()) System.out.println("[INFO] cached call graph does not match the class hierarchy: file = " + cgCacheFile.getPath());
+		}
+
+		if (clGraph == null)
+		{
+			clGraph = makeCallGraph(staCtx);
+
+			if (cgCacheFile != null) CallGraphCache.saveCallGraph(staCtx, clGraph, cgCacheFile);
+		}
+
+		long finishBuildMS = System.currentTimeMillis();
+
+		// peaks of individual pools may occur at different times, so their sum is just an upper bound of the real peak
+		long poolPeaksSumBytes = 0;
+		for (MemoryPoolMXBean pool : heapPools) poolPeaksSumBytes += pool.getPeakUsage().getUsed();
+
+		long heapUsedBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+		int cgEdgesCount = 0;
+		for (CGNode node : clGraph) cgEdgesCount += clGraph.getSuccNodeCount(node);
+
+		System.out.println("[INFO] call graph: algorithm = " + staCtx.cgAlgorithm + ", nodes = " + clGraph.getNumberOfNodes() + ", edges = " + cgEdgesCount + ", time = " + (finishBuildMS - startBuildMS) + " ms, heap used = " + (heapUsedBytes / (1024 * 1024)) + " MB, sum of heap pool peaks = " + (poolPeaksSumBytes / (1024 * 1024)) + " MB");
 	
 		if (Configuration.DEBUG) printCallGraph(clGraph, 5);
 		
@@ -141,9 +207,49 @@ public class WALAUtils
 
 		loadMethodNodesCache(clGraph);
 		
-		if (Configuration.DEBUG) printAllMethodsIR(clGraph);
-		
 		staCtx.clGraph = clGraph;
+
+		if (Configuration.DEBUG) printAllMethodsIR(staCtx);
+	}
+
+	private static CallGraph makeCallGraph(StaticAnalysisContext staCtx) throws Exception
+	{
+		if (staCtx.cgAlgorithm.equals("cha"))
+		{
+			// every call site targets all possible implementations in the class hierarchy
+			List<Entrypoint> entryPoints = new ArrayList<Entrypoint>();
+			for (Entrypoint ep : staCtx.options.getEntrypoints()) entryPoints.add(ep);
+
+			CHACallGraph chaClGraph = new CHACallGraph(staCtx.cha);
+			chaClGraph.init(entryPoints);
+
+			return chaClGraph;
+		}
+
+		CallGraphBuilder cgBuilder = null;
+
+		if (staCtx.cgAlgorithm.equals("rta"))
+		{
+			// rapid type analysis (only classes instantiated somewhere in reachable methods are considered)
+			cgBuilder = Util.makeRTABuilder(staCtx.options, staCtx.cache, staCtx.cha, staCtx.scope);
+		}
+		else if (staCtx.cgAlgorithm.equals("01cfa"))
+		{
+			// context-insensitive pointer analysis with allocation sites as abstract objects
+			cgBuilder = Util.makeZeroOneCFABuilder(staCtx.options, staCtx.cache, staCtx.cha, staCtx.scope);
+		}
+		else if (staCtx.cgAlgorithm.equals("01containercfa"))
+		{
+			// objects of container classes are distinguished also by the allocating context
+			cgBuilder = Util.makeVanillaZeroOneContainerCFABuilder(staCtx.options, staCtx.cache, staCtx.cha, staCtx.scope);
+		}
+		else
+		{
+			// standard context-insensitive exhaustive pointer analysis (andersen)
+			cgBuilder = Util.makeZeroCFABuilder(staCtx.options, staCtx.cache, staCtx.cha, staCtx.scope);
+		}
+
+		return cgBuilder.makeCallGraph(staCtx.options, null);
 	}
 	
 	
@@ -294,24 +400,24 @@ public class WALAUtils
 	{
 		if (className.endsWith("[]")) return null;
 		
-		if (clsName2Obj.containsKey(className)) 
-		{
-			return clsName2Obj.get(className);
-		}
+		return getClassHierarchyIndex(cha).findClass(className);
+	}
+
+	public static ClassHierarchyIndex getClassHierarchyIndex(IClassHierarchy cha) throws Exception
+	{
+		ClassHierarchyIndex curIndex = chaIndex;
 		
-		Iterator<IClass> clsIt = cha.iterator();
-		while (clsIt.hasNext())
+		if ((curIndex != null) && (curIndex.getClassHierarchy() == cha)) return curIndex;
+		
+		synchronized (WALAUtils.class)
 		{
-			IClass cls = clsIt.next();
-			
-			if (className.equals(getClassName(cls)))
+			if ((chaIndex == null) || (chaIndex.getClassHierarchy() != cha))
 			{
-				clsName2Obj.put(className, cls);
-				return cls;
+				chaIndex = new ClassHierarchyIndex(cha);
 			}
-		}
 		
-		return null;
+			return chaIndex;
+		}
 	}
 
 	public static boolean existsInstanceField(String className, String tgtFieldName, IClassHierarchy cha) throws Exception
@@ -349,7 +455,8 @@ public class WALAUtils
 	{
 		for (CGNode node : clGraph)
 		{
-			String methodSig = node.getMethod().getSignature();
+			// signatures of all reachable methods get their IDs in the order of call graph nodes
+			String methodSig = SignatureTable.intern(node.getMethod().getSignature());
 			
 			mthSig2CGNode.put(methodSig, node);
 		}
@@ -359,6 +466,21 @@ public class WALAUtils
 	{
 		return mthSig2CGNode.get(methodSig);	
 	}
+
+	public static IR getMethodIR(StaticAnalysisContext staCtx, CGNode mthNode)
+	{
+		// nodes of the CHA-based call graph do not provide IR
+		if (staCtx.clGraph instanceof CHACallGraph)
+		{
+			IMethod mth = mthNode.getMethod();
+
+			if (mth.isNative() || mth.isAbstract()) return null;
+
+			return staCtx.cache.getSSACache().findOrCreateIR(mth, mthNode.getContext(), staCtx.options.getSSAOptions());
+		}
+
+		return mthNode.getIR();
+	}
 	
 	public static Set<String> collectNativeMethods(StaticAnalysisContext staCtx)
 	{
@@ -368,6 +490,8 @@ public class WALAUtils
 	public static Set<String> collectNativeMethodsWithCallers(StaticAnalysisContext staCtx, List<String> callerClsPrefixes)
 	{
 		Set<String> nativeMethods = new HashSet<String>();
+		
+		PrefixMatcher callerClsMatcher = (callerClsPrefixes != null) ? new PrefixMatcher(callerClsPrefixes) : null;
 	
 		for (CGNode curMthNode : staCtx.clGraph)
 		{
@@ -375,7 +499,7 @@ public class WALAUtils
 		
 			if (mth.isNative())
 			{
-				if (existsCallerWithPrefix(staCtx, curMthNode, callerClsPrefixes))
+				if (existsCallerWithPrefix(staCtx, curMthNode, callerClsMatcher))
 				{
 					nativeMethods.add(mth.getSignature());
 				}
@@ -399,6 +523,10 @@ public class WALAUtils
 	public static Set<String> collectMethodsWithPrefixesCallers(StaticAnalysisContext staCtx, List<String> mthPrefixes, List<String> callerClsPrefixes)
 	{
 		Set<String> methodSigs = new HashSet<String>();
+		
+		// prefix lists are compiled once for all call graph nodes
+		PrefixMatcher mthMatcher = new PrefixMatcher(mthPrefixes);
+		PrefixMatcher callerClsMatcher = (callerClsPrefixes != null) ? new PrefixMatcher(callerClsPrefixes) : null;
 	
 		for (CGNode curMthNode : staCtx.clGraph)
 		{
@@ -406,15 +534,11 @@ public class WALAUtils
 			
 			String curMthSig = curMth.getSignature();
 		
-			for (String mthPf : mthPrefixes)
+			if (mthMatcher.matches(curMthSig))
 			{
-				if (curMthSig.startsWith(mthPf))
+				if (existsCallerWithPrefix(staCtx, curMthNode, callerClsMatcher))
 				{
-					if (existsCallerWithPrefix(staCtx, curMthNode, callerClsPrefixes))
-					{
-						methodSigs.add(curMthSig);
-						break;
-					}
+					methodSigs.add(curMthSig);
 				}
 			}
 		}
@@ -429,6 +553,13 @@ public class WALAUtils
 	{
 		if (callerClsPrefixes == null) return true;
 
+		return existsCallerWithPrefix(staCtx, curMthNode, new PrefixMatcher(callerClsPrefixes));
+	}
+
+	public static boolean existsCallerWithPrefix(StaticAnalysisContext staCtx, CGNode curMthNode, PrefixMatcher callerClsMatcher)
+	{
+		if (callerClsMatcher == null) return true;
+
 		Iterator<CGNode> callerNodesIt = staCtx.clGraph.getPredNodes(curMthNode);
 		
 		while (callerNodesIt.hasNext())
@@ -437,10 +568,7 @@ public class WALAUtils
 
 			String callerMthSig = callerNode.getMethod().getSignature();
 
-			for (String clsPf : callerClsPrefixes)
-			{
-				if (callerMthSig.startsWith(clsPf)) return true;
-			}
+			if (callerClsMatcher.matches(callerMthSig)) return true;
 		}
 
 		return false;
@@ -486,40 +614,63 @@ public class WALAUtils
 		return constructorSigs;
 	}
 	
-	public static Set<String> collectInterfaces(StaticAnalysisContext staCtx) throws Exception
+	public static Map<String, Set<String>> collectFieldsWrittenByMethods(StaticAnalysisContext staCtx, Set<String> methodSigs) throws Exception
 	{
-		Set<String> interfaceNames = new HashSet<String>();
-	
-		for (IClass cls : staCtx.cha)
+		// map from the full field name (declaring class name + "." + field name) to names of classes that contain some writing method
+		// null is returned when the writes of some method cannot be determined (then all fields must be watched)
+		Map<String, Set<String>> field2WriterClasses = new HashMap<String, Set<String>>();
+
+		for (String mthSig : methodSigs)
 		{
-			if (cls.isInterface())
+			// native methods and methods abstracted in XML do not have any bytecode
+			if (abstractedMethodsXML.contains(mthSig)) continue;
+
+			IMethod mth = findMethod(mthSig, Utils.extractClassName(mthSig), staCtx.cha);
+			if ((mth != null) && mth.isNative()) continue;
+
+			CGNode mthNode = getNodeForMethod(mthSig);
+
+			IR mthIR = null;
+			if (mthNode != null) mthIR = getMethodIR(staCtx, mthNode);
+
+			if (mthIR == null)
 			{
-				interfaceNames.add(getClassName(cls));
+				if (Configuration.DEBUG)
+				{
+					System.out.println("[DEBUG] field writes of the method " + mthSig + " are not known, watching all fields");
+				}
+
+				return null;
 			}
-		}
 
-		return interfaceNames;
-	}
+			String writerClsName = Utils.extractClassName(mthSig);
 
-	public static Set<String> findImplementingClasses(StaticAnalysisContext staCtx, String itfName) throws Exception
-	{
-		Set<String> implClassNames = new HashSet<String>();
+			for (SSAInstruction insn : mthIR.getInstructions())
+			{
+				if ( ! (insn instanceof SSAPutInstruction) ) continue;
 
-		IClass itfClsObj = findClass(itfName, staCtx.cha);
+				FieldReference fldRef = ((SSAPutInstruction) insn).getDeclaredField();
 
-		for (IClass cls : staCtx.cha)
-		{
-			// we want only real concrete classes
-			if ( ! cls.isReferenceType() ) continue;
-			if (cls.isAbstract() || cls.isInterface() || cls.isArrayClass()) continue;
+				// the field may be declared in some superclass of the class referenced by the instruction
+				String declClsName = getClassName(fldRef.getDeclaringClass());
 
-			if (staCtx.cha.implementsInterface(cls, itfClsObj))
-			{
-				implClassNames.add(getClassName(cls));
+				IField fldObj = staCtx.cha.resolveField(fldRef);
+				if (fldObj != null) declClsName = getClassName(fldObj.getDeclaringClass());
+
+				String fullFieldName = declClsName + "." + fldRef.getName().toString();
+
+				Set<String> writerClsNames = field2WriterClasses.get(fullFieldName);
+				if (writerClsNames == null)
+				{
+					writerClsNames = new HashSet<String>();
+					field2WriterClasses.put(fullFieldName, writerClsNames);
+				}
+
+				writerClsNames.add(writerClsName);
 			}
 		}
 
-		return implClassNames;
+		return field2WriterClasses;
 	}
 
 	
@@ -567,20 +718,20 @@ public class WALAUtils
 	}
 
 
-	private static void printAllMethodsIR(CallGraph clGraph)
+	private static void printAllMethodsIR(StaticAnalysisContext staCtx)
 	{
 		Set<String> printedMethods = new HashSet<String>();
 				
 		System.out.println("METHOD SSA IR");
 		System.out.println("============="); 
 		
-		for (CGNode node : clGraph) 
+		for (CGNode node : staCtx.clGraph) 
 		{
 			String methodSig = node.getMethod().getSignature();
 			
 			if (printedMethods.contains(methodSig)) continue;
 			
-			printMethodIR(node, methodSig);
+			printMethodIR(staCtx, node, methodSig);
 
 			printedMethods.add(methodSig);
 		}
@@ -588,9 +739,9 @@ public class WALAUtils
 		System.out.println("");
 	}
 	
-	private static void printMethodIR(CGNode mthNode, String mthSig)
+	private static void printMethodIR(StaticAnalysisContext staCtx, CGNode mthNode, String mthSig)
 	{
-		IR methodIR = mthNode.getIR();
+		IR methodIR = getMethodIR(staCtx, mthNode);
 					
 		if (methodIR == null) return;
 					